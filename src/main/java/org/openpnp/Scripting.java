@@ -10,12 +10,15 @@ import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
@@ -41,6 +44,11 @@ public class Scripting {
     File scriptsDirectory;
     File eventsDirectory;
     WatchService watcher;
+    /**
+     * The scripts in the events directory by event name. Replaced as a whole whenever the
+     * directory changes, so on() never has to look at the directory itself.
+     */
+    volatile Map<String, List<EventScript>> eventScripts = new HashMap<>();
 
     public Scripting() {
         // Collect all the script filename extensions we know how to handle from the list of
@@ -99,11 +107,13 @@ public class Scripting {
         if (!eventsDirectory.exists()) {
             eventsDirectory.mkdirs();
         }
+        scanEventScripts();
 
         // Add a file watcher so that we can be notified if any scripts change
         try {
             watcher = FileSystems.getDefault().newWatchService();
             watchDirectory(getScriptsDirectory());
+            watchDirectory(eventsDirectory);
             Thread thread = new Thread(() -> {
                 for (;;) {
                     try {
@@ -112,6 +122,10 @@ public class Scripting {
                         key.pollEvents();
                         key.reset();
                         // rescan
+                        if (key.watchable().equals(eventsDirectory.toPath())) {
+                            scanEventScripts();
+                            continue;
+                        }
                         synchronizeMenu(menu, getScriptsDirectory());
                     }
                     catch (Exception e) {
@@ -264,6 +278,14 @@ public class Scripting {
         ScriptEngine engine =
                 manager.getEngineByExtension(Files.getFileExtension(script.getName()));
 
+        putGlobals(engine, additionalGlobals);
+
+        try (FileReader reader = new FileReader(script)) {
+            engine.eval(reader);
+        }
+    }
+
+    private void putGlobals(ScriptEngine engine, Map<String, Object> additionalGlobals) {
         engine.put("config", Configuration.get());
         engine.put("machine", Configuration.get().getMachine());
         engine.put("gui", MainFrame.get());
@@ -274,21 +296,72 @@ public class Scripting {
                 engine.put(name, additionalGlobals.get(name));
             }
         }
+    }
 
-        try (FileReader reader = new FileReader(script)) {
-            engine.eval(reader);
+    /**
+     * Run the scripts in the events directory named after the event. Events with no scripts
+     * return right away, so it's cheap to fire events often, e.g. for every camera frame.
+     */
+    public void on(String event, Map<String, Object> globals) throws Exception {
+        List<EventScript> scripts = eventScripts.get(event);
+        if (scripts == null) {
+            return;
+        }
+        for (EventScript script : scripts) {
+            Logger.trace("Scripting.on {} running {}", event, script.file.getName());
+            script.execute(globals);
         }
     }
 
-    public void on(String event, Map<String, Object> globals) throws Exception {
-        Logger.trace("Scripting.on " + event);
+    private void scanEventScripts() {
+        Map<String, List<EventScript>> eventScripts = new HashMap<>();
         for (File script : FileUtils.listFiles(eventsDirectory, extensions, false)) {
             if (!script.isFile()) {
                 continue;
             }
-            if (FilenameUtils.getBaseName(script.getName()).equals(event)) {
-                Logger.trace("Scripting.on found " + script.getName());
-                execute(script, globals);
+            eventScripts.computeIfAbsent(FilenameUtils.getBaseName(script.getName()),
+                    name -> new ArrayList<>()).add(new EventScript(script));
+        }
+        this.eventScripts = eventScripts;
+        Logger.debug("Found event scripts {}", eventScripts.keySet());
+    }
+
+    /**
+     * An event script along with the engine that runs it. The script is read and compiled the
+     * first time the event fires and then reused, until the events directory changes and the
+     * scripts are scanned again.
+     */
+    class EventScript {
+        final File file;
+        ScriptEngine engine;
+        CompiledScript compiledScript;
+        String source;
+
+        EventScript(File file) {
+            this.file = file;
+        }
+
+        synchronized void execute(Map<String, Object> globals) throws Exception {
+            if (engine == null) {
+                ScriptEngine engine =
+                        manager.getEngineByExtension(Files.getFileExtension(file.getName()));
+                String source = FileUtils.readFileToString(file);
+                if (engine instanceof Compilable) {
+                    compiledScript = ((Compilable) engine).compile(source);
+                }
+                else {
+                    this.source = source;
+                }
+                this.engine = engine;
+            }
+
+            putGlobals(engine, globals);
+
+            if (compiledScript != null) {
+                compiledScript.eval();
+            }
+            else {
+                engine.eval(source);
             }
         }
     }
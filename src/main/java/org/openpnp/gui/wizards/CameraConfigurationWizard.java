@@ -27,6 +27,7 @@ import java.util.Locale;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -39,6 +40,7 @@ import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.components.CameraView;
 import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.DoubleConverter;
 import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.gui.support.LongConverter;
 import org.openpnp.gui.support.MutableLocationProxy;
@@ -155,7 +157,9 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         panelVision.setLayout(new FormLayout(
                 new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
-                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
         lblSettleTimems = new JLabel("Settle Time (ms)");
         panelVision.add(lblSettleTimems, "2, 2, right, default");
@@ -163,12 +167,26 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         textFieldSettleTime = new JTextField();
         panelVision.add(textFieldSettleTime, "4, 2, fill, default");
         textFieldSettleTime.setColumns(10);
+
+        lblAutoSettle = new JLabel("Auto Settle");
+        panelVision.add(lblAutoSettle, "2, 4, right, default");
+
+        chckbxAutoSettle = new JCheckBox("");
+        panelVision.add(chckbxAutoSettle, "4, 4");
+
+        lblAutoSettlePsnr = new JLabel("Auto Settle PSNR (dB)");
+        panelVision.add(lblAutoSettlePsnr, "2, 6, right, default");
+
+        textFieldAutoSettlePsnr = new JTextField();
+        panelVision.add(textFieldAutoSettlePsnr, "4, 6, fill, default");
+        textFieldAutoSettlePsnr.setColumns(10);
     }
 
     @Override
     public void createBindings() {
         LengthConverter lengthConverter = new LengthConverter(uppFormat);
         LongConverter longConverter = new LongConverter();
+        DoubleConverter doubleConverter = new DoubleConverter("%.1f");
 
         addWrappedBinding(camera, "name", nameTf, "text");
         addWrappedBinding(camera, "looking", lookingCb, "selectedItem");
@@ -179,6 +197,9 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         addWrappedBinding(unitsPerPixel, "lengthY", textFieldUppY, "text", lengthConverter);
 
         addWrappedBinding(camera, "settleTimeMs", textFieldSettleTime, "text", longConverter);
+        addWrappedBinding(camera, "autoSettle", chckbxAutoSettle, "selected");
+        addWrappedBinding(camera, "autoSettlePsnr", textFieldAutoSettlePsnr, "text",
+                doubleConverter);
 
         ComponentDecorators.decorateWithAutoSelect(textFieldUppX);
         ComponentDecorators.decorateWithAutoSelect(textFieldUppY);
@@ -189,6 +210,7 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         ComponentDecorators.decorateWithAutoSelect(textFieldWidth);
         ComponentDecorators.decorateWithAutoSelect(textFieldHeight);
         ComponentDecorators.decorateWithAutoSelect(textFieldSettleTime);
+        ComponentDecorators.decorateWithAutoSelect(textFieldAutoSettlePsnr);
     }
 
     private Action measureAction = new AbstractAction("Measure") {
@@ -237,6 +259,10 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
     private JPanel panelVision;
     private JLabel lblSettleTimems;
     private JTextField textFieldSettleTime;
+    private JLabel lblAutoSettle;
+    private JCheckBox chckbxAutoSettle;
+    private JLabel lblAutoSettlePsnr;
+    private JTextField textFieldAutoSettlePsnr;
     private JPanel panel;
     private JLabel lblName;
     private JLabel lblLooking;
@@ -458,9 +458,17 @@ public class OpenBuildsDriver extends AbstractSerialPortDriver implements Runnab
 
     public void run() {
         while (!disconnectRequested) {
-            String line;
             try {
-                line = readLine().trim();
+                readLines(line -> {
+                    Logger.debug("<< {}", line);
+                    responseQueue.offer(line);
+                    if (line.startsWith("ok") || line.startsWith("error: ")) {
+                        // This is the end of processing for a command
+                        synchronized (commandLock) {
+                            commandLock.notify();
+                        }
+                    }
+                });
             }
             catch (TimeoutException ex) {
                 continue;
@@ -469,15 +477,6 @@ public class OpenBuildsDriver extends AbstractSerialPortDriver implements Runnab
                 Logger.error("Read error", e);
                 return;
             }
-            line = line.trim();
-            Logger.debug("<< " + line);
-            responseQueue.offer(line);
-            if (line.startsWith("ok") || line.startsWith("error: ")) {
-                // This is the end of processing for a command
-                synchronized (commandLock) {
-                    commandLock.notify();
-                }
-            }
         }
     }
 
@@ -24,14 +24,15 @@ import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JOptionPane;
 
-import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
@@ -43,6 +44,7 @@ import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.support.Icons;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.wizards.CameraConfigurationWizard;
+import org.openpnp.machine.reference.camera.FrameBuffer;
 import org.openpnp.model.AbstractModelObject;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Length;
@@ -66,6 +68,13 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     }
 
     private static final int CAPTURE_RETRY_COUNT = 10;
+
+    private static final int FRAME_BUFFER_SIZE = 4;
+
+    /**
+     * How long to wait for the capture thread to deliver a frame before grabbing one directly.
+     */
+    private static final long FRAME_TIMEOUT_MS = 1000;
     
     private static BufferedImage CAPTURE_ERROR_IMAGE = null;
     
@@ -115,34 +124,200 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     private Mat undistortionMap1;
     private Mat undistortionMap2;
 
+    /**
+     * The combined transform maps and the settings they were built for. See transformMat().
+     */
+    private Mat transformMapX;
+    private Mat transformMapY;
+    private List<Object> transformMapsKey;
+
+    /**
+     * The camera's own destination for the remap in transformMat(), reused for every frame.
+     */
+    private Mat transformedMat = new Mat();
+
+    private Mat cropMat;
+
     private LensCalibration lensCalibration;
+
+    /**
+     * The latest frames from the capture thread of cameras that have one. See captureFrame().
+     */
+    protected final FrameBuffer frameBuffer = new FrameBuffer(FRAME_BUFFER_SIZE);
     
     public ReferenceCamera() {
     }
     
+    /**
+     * If the capture thread is running, settles and then waits for the first frame it starts after
+     * that, instead of grabbing a frame separately.
+     */
     @Override
-    public BufferedImage capture() {
+    public BufferedImage settleAndCapture() {
+        if (!isAutoSettle() && isCapturing()) {
+            settle();
+            return captureAfter(System.currentTimeMillis());
+        }
+        waitForDriver();
+        return super.settleAndCapture();
+    }
+
+    /**
+     * The frame buffer holds the BufferedImages the capture thread makes for the camera view, so
+     * the frame is converted here. That is a single copy, which is cheaper than grabbing another
+     * frame as a Mat and waiting for it; keeping a Mat of every frame as well would cost the
+     * capture thread a copy per frame whether or not vision uses it.
+     */
+    @Override
+    public Mat settleAndCaptureMat() {
+        if (!isAutoSettle() && isCapturing()) {
+            settle();
+            return OpenCvUtils.toMat(captureAfter(System.currentTimeMillis()));
+        }
+        waitForDriver();
+        return super.settleAndCaptureMat();
+    }
+
+    @Override
+    public void settle() {
+        waitForDriver();
+        super.settle();
+    }
+
+    /**
+     * Fire Camera.BeforeCapture and Camera.AfterCapture once around the whole settle, rather
+     * than around every frame it compares, so that whatever the scripts switch on is there for
+     * all of them.
+     */
+    @Override
+    protected Mat autoSettle() {
+        fireCaptureEvent("Camera.BeforeCapture");
         try {
-            Map<String, Object> globals = new HashMap<>();
-            globals.put("camera", this);
-            Configuration.get().getScripting().on("Camera.BeforeCapture", globals);
+            return super.autoSettle();
+        }
+        finally {
+            fireCaptureEvent("Camera.AfterCapture");
+        }
+    }
+
+    @Override
+    protected Mat captureSettleFrame() {
+        return safeInternalCaptureMat();
+    }
+
+    /**
+     * Make sure whatever the camera is looking at has stopped moving before settling.
+     */
+    private void waitForDriver() {
+        try {
+            getDriver().waitForCompletion();
         }
         catch (Exception e) {
             Logger.warn(e);
         }
+    }
+
+    @Override
+    public BufferedImage capture() {
+        fireCaptureEvent("Camera.BeforeCapture");
         BufferedImage image = safeInternalCapture();
+        fireCaptureEvent("Camera.AfterCapture");
+        return image;
+    }
+
+    @Override
+    public Mat captureMat() {
+        fireCaptureEvent("Camera.BeforeCapture");
+        Mat mat = safeInternalCaptureMat();
+        fireCaptureEvent("Camera.AfterCapture");
+        return mat;
+    }
+
+    /**
+     * Get the first frame from the capture thread whose capture started at or after time, such as
+     * when the last move completed, and after Camera.BeforeCapture was fired, so that whatever
+     * the script changes is in the frame. If the capture thread isn't running, or no frame
+     * arrives in time, a frame is captured directly.
+     * 
+     * @param time System.currentTimeMillis() at the instant.
+     * @return
+     */
+    public BufferedImage captureAfter(long time) {
+        if (!isCapturing()) {
+            return capture();
+        }
+        fireCaptureEvent("Camera.BeforeCapture");
+        time = Math.max(time, System.currentTimeMillis());
+        FrameBuffer.Frame frame = null;
+        try {
+            frame = frameBuffer.getFirstFrameAfter(time, FRAME_TIMEOUT_MS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        BufferedImage image;
+        if (frame == null) {
+            Logger.debug("{} no frame from the capture thread, capturing directly.", getName());
+            image = safeInternalCapture();
+        }
+        else {
+            Logger.trace("{} frame started {} ms after requested.", getName(), frame.time - time);
+            image = frame.image;
+        }
+        fireCaptureEvent("Camera.AfterCapture");
+        return image;
+    }
+
+    /**
+     * True if the capture thread has delivered a frame recently.
+     */
+    protected boolean isCapturing() {
+        FrameBuffer.Frame frame = frameBuffer.getLatest();
+        return frame != null && System.currentTimeMillis() - frame.time < FRAME_TIMEOUT_MS;
+    }
+
+    /**
+     * Capture a frame with internalCapture() and keep it in the frame buffer with the time the
+     * capture started. Capture threads should use this rather than internalCapture().
+     * 
+     * @return
+     */
+    protected BufferedImage captureFrame() {
+        long time = System.currentTimeMillis();
+        BufferedImage image = internalCapture();
+        if (image != null) {
+            frameBuffer.add(time, image);
+        }
+        return image;
+    }
+
+    protected void fireCaptureEvent(String event) {
         try {
             Map<String, Object> globals = new HashMap<>();
             globals.put("camera", this);
-            Configuration.get().getScripting().on("Camera.AfterCapture", globals);
+            Configuration.get().getScripting().on(event, globals);
         }
         catch (Exception e) {
             Logger.warn(e);
         }
-        return image;
     }
     
     protected abstract BufferedImage internalCapture();
+
+    /**
+     * Capture a transformed frame as a Mat, which belongs to the caller. Cameras that grab
+     * frames as Mats should override this so that no BufferedImage is created for vision. The
+     * default converts the result of internalCapture().
+     * 
+     * @return
+     */
+    protected Mat internalCaptureMat() {
+        BufferedImage image = internalCapture();
+        if (image == null) {
+            return null;
+        }
+        return OpenCvUtils.toMat(image);
+    }
     
     /**
      * Wraps internalCapture() to ensure that a null image is never returned. Attempts to
@@ -160,6 +335,27 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
             }
             Logger.trace("Camera {} failed to return an image. Retrying.", this);
         }
+        Logger.warn("Camera {} failed to return an image after {} tries.", this, CAPTURE_RETRY_COUNT);
+        return getCaptureErrorImage();
+    }
+
+    /**
+     * The Mat version of safeInternalCapture().
+     * @return
+     */
+    protected synchronized Mat safeInternalCaptureMat() {
+        for (int i = 0; i < CAPTURE_RETRY_COUNT; i++) {
+            Mat mat = internalCaptureMat();
+            if (mat != null) {
+                return mat;
+            }
+            Logger.trace("Camera {} failed to return an image. Retrying.", this);
+        }
+        Logger.warn("Camera {} failed to return an image after {} tries.", this, CAPTURE_RETRY_COUNT);
+        return OpenCvUtils.toMat(getCaptureErrorImage());
+    }
+
+    private static synchronized BufferedImage getCaptureErrorImage() {
         if (CAPTURE_ERROR_IMAGE == null) {
             CAPTURE_ERROR_IMAGE = new BufferedImage(640, 480, BufferedImage.TYPE_INT_ARGB);
             Graphics2D g = (Graphics2D) CAPTURE_ERROR_IMAGE.createGraphics();
@@ -170,7 +366,6 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
             g.drawLine(640, 0, 0, 480);
             g.dispose();
         }
-        Logger.warn("Camera {} failed to return an image after {} tries.", this, CAPTURE_RETRY_COUNT);
         return CAPTURE_ERROR_IMAGE;
     }
     
@@ -208,6 +403,8 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     public void moveTo(Location location, double speed) throws Exception {
         Logger.debug("moveTo({}, {})", location, speed);
         getDriver().moveTo(this, location, speed);
+        // The camera is moved to look at something, so it has to actually be there.
+        getDriver().waitForCompletion();
         getMachine().fireMachineHeadActivity(head);
     }
 
@@ -301,38 +498,50 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
         this.deinterlace = deinterlace;
     }
 
-    protected BufferedImage transformImage(BufferedImage image) {
+    /**
+     * Transforms the image into a new one that belongs to the caller. The result of transformMat()
+     * is converted while the camera's lock is still held, so that a capture on another thread
+     * can't overwrite or release it first.
+     */
+    protected synchronized BufferedImage transformImage(BufferedImage image) {
         Mat mat = OpenCvUtils.toMat(image);
+        image = OpenCvUtils.toBufferedImage(transformMat(mat));
+        mat.release();
+        return image;
+    }
+
+    /**
+     * Apply the camera's transforms to the frame. Lens undistortion, scale, rotation, offset,
+     * deinterlace and flip are combined into a single pair of remap maps, which are only rebuilt
+     * when one of the transform settings, the calibration or the frame size changes. Each frame
+     * then costs one remap into a Mat the camera keeps for the purpose, so nothing is allocated
+     * per frame. Without any transforms the frame, or a cropped view of it, is returned as is.
+     * 
+     * The returned Mat belongs to the camera and is only valid until the next call, and until the
+     * frame is released or overwritten. Callers must not release it, and must clone or convert it
+     * while they still hold the camera's lock to keep it, as transformImage() does. The frame
+     * itself is not released.
+     * 
+     * @param mat
+     * @return
+     */
+    protected synchronized Mat transformMat(Mat mat) {
+        if (cropMat != null) {
+            // Don't hold on to the previous frame the view was made from.
+            cropMat.release();
+            cropMat = null;
+        }
 
         mat = crop(mat);
 
         mat = calibrate(mat);
 
-        mat = undistort(mat);
-
-        // apply affine transformations
-        mat = scale(mat, scaleWidth, scaleHeight);
-        
-        mat = rotate(mat, rotation);
-
-        mat = offset(mat, offsetX, offsetY);
-        
-        mat = deinterlace(mat);
-
-        if (flipX || flipY) {
-            int flipCode;
-            if (flipX && flipY) {
-                flipCode = -1;
-            }
-            else {
-                flipCode = flipX ? 0 : 1;
-            }
-            Core.flip(mat, mat, flipCode);
+        if (!isTransformed()) {
+            return mat;
         }
-
-        image = OpenCvUtils.toBufferedImage(mat);
-        mat.release();
-        return image;
+        updateTransformMaps(mat.size());
+        Imgproc.remap(mat, transformedMat, transformMapX, transformMapY, Imgproc.INTER_LINEAR);
+        return transformedMat;
     }
 
     private Mat crop(Mat mat) {
@@ -344,107 +553,169 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
                     (int) ((mat.size().height / 2) - (ch / 2)),
                     cw,
                     ch);
-            Mat tmp = new Mat(mat, roi);
-            tmp.copyTo(mat);
-            tmp.release();
+            // A view of the region, the pixels are not copied.
+            cropMat = new Mat(mat, roi);
+            return cropMat;
         }
         return mat;
     }
-    
-    private Mat deinterlace(Mat mat) {
-        if (!deinterlace) {
-            return mat;
-        }
-        Mat dst = new Mat(mat.size(), mat.type());
-        for (int i = 0; i < mat.rows() / 2; i++) {
-            mat.row(i).copyTo(dst.row(i * 2));
-            mat.row(i + mat.rows() / 2).copyTo(dst.row(i * 2 + 1));
-        }
-        mat.release();
-        return dst;
-    }
-
-    private static Mat rotate(Mat mat, double rotation) {
-        if (rotation == 0D) {
-            return mat;
-        }
-
-        // See:
-        // http://stackoverflow.com/questions/22041699/rotate-an-image-without-cropping-in-opencv-in-c
-        Point center = new Point(mat.width() / 2D, mat.height() / 2D);
-        Mat mapMatrix = Imgproc.getRotationMatrix2D(center, rotation, 1.0);
-
-        // determine bounding rectangle
-        Rect bbox = new RotatedRect(center, mat.size(), rotation).boundingRect();
-        // adjust transformation matrix
-        double[] cx = mapMatrix.get(0, 2);
-        double[] cy = mapMatrix.get(1, 2);
-        cx[0] += bbox.width / 2D - center.x;
-        cy[0] += bbox.height / 2D - center.y;
-        mapMatrix.put(0, 2, cx);
-        mapMatrix.put(1, 2, cy);
-
-        Mat dst = new Mat(bbox.width, bbox.height, mat.type());
-        Imgproc.warpAffine(mat, dst, mapMatrix, bbox.size(), Imgproc.INTER_LINEAR);
-        mat.release();
-
-        mapMatrix.release();
-
-        return dst;
-    }
 
-    private static Mat offset(Mat mat, int offsetX, int offsetY) {
-        if (offsetX == 0D && offsetY == 0D) {
-            return mat;
-        }
-
-        Mat mapMatrix = new Mat(2, 3, CvType.CV_32F) {
-            {
-                put(0, 0, 1, 0, offsetX);
-                put(1, 0, 0, 1, offsetY);
-            }
-        };
-
-        Mat dst = mat.clone();
-        Imgproc.warpAffine(mat, dst, mapMatrix, mat.size(), Imgproc.INTER_LINEAR);
-        mat.release();
-
-        mapMatrix.release();
-
-        return dst;
-    }
-    
-    private static Mat scale(Mat mat, int scaleWidth, int scaleHeight) {
-        if (scaleWidth == 0 || scaleHeight == 0) {
-            return mat;
-        }
-        Mat dst = new Mat();
-        Imgproc.resize(mat, dst, new Size(scaleWidth, scaleHeight));
-        mat.release();
-        return dst;
+    private boolean isTransformed() {
+        return calibration.isEnabled() || (scaleWidth != 0 && scaleHeight != 0)
+                || rotation != 0D || offsetX != 0 || offsetY != 0 || deinterlace || flipX
+                || flipY;
     }
 
-    private Mat undistort(Mat mat) {
-        if (!calibration.isEnabled()) {
-            return mat;
-        }
-
-        if (undistortionMap1 == null || undistortionMap2 == null) {
+    /**
+     * Rebuild the transform maps if anything they depend on has changed since they were built.
+     */
+    private void updateTransformMaps(Size size) {
+        List<Object> key = Arrays.asList(size.width, size.height, calibration.isEnabled(),
+                undistortionMap1, scaleWidth, scaleHeight, rotation, offsetX, offsetY,
+                deinterlace, flipX, flipY);
+        if (transformMapX != null && key.equals(transformMapsKey)) {
+            return;
+        }
+        if (transformMapX != null) {
+            transformMapX.release();
+            transformMapY.release();
+        }
+        if (calibration.isEnabled() && undistortionMap1 == null) {
             undistortionMap1 = new Mat();
             undistortionMap2 = new Mat();
             Mat rectification = Mat.eye(3, 3, CvType.CV_32F);
             Imgproc.initUndistortRectifyMap(calibration.getCameraMatrixMat(),
                     calibration.getDistortionCoefficientsMat(), rectification,
-                    calibration.getCameraMatrixMat(), mat.size(), CvType.CV_32FC1, undistortionMap1,
+                    calibration.getCameraMatrixMat(), size, CvType.CV_32FC1, undistortionMap1,
                     undistortionMap2);
             rectification.release();
+            key.set(3, undistortionMap1);
         }
+        buildTransformMaps(size);
+        transformMapsKey = key;
+        Logger.debug("{} rebuilt transform maps for {}x{} frames.", getName(), (int) size.width,
+                (int) size.height);
+    }
 
-        Mat dst = mat.clone();
-        Imgproc.remap(mat, dst, undistortionMap1, undistortionMap2, Imgproc.INTER_LINEAR);
-        mat.release();
+    /**
+     * For every pixel of the output find the pixel of the frame it comes from, by running the
+     * transforms backwards: flip, deinterlace, offset, rotate, scale and then the lens
+     * undistortion map.
+     */
+    private void buildTransformMaps(Size size) {
+        int width = (int) size.width;
+        int height = (int) size.height;
+
+        // Forward pass to get the size after each transform.
+        Size scaledSize = size;
+        if (scaleWidth != 0 && scaleHeight != 0) {
+            scaledSize = new Size(scaleWidth, scaleHeight);
+        }
+        Size rotatedSize = scaledSize;
+        double[] inverseRotation = null;
+        if (rotation != 0D) {
+            // See:
+            // http://stackoverflow.com/questions/22041699/rotate-an-image-without-cropping-in-opencv-in-c
+            Point center = new Point(scaledSize.width / 2D, scaledSize.height / 2D);
+            Mat mapMatrix = Imgproc.getRotationMatrix2D(center, rotation, 1.0);
+            Rect bbox = new RotatedRect(center, scaledSize, rotation).boundingRect();
+            double[] m = new double[6];
+            mapMatrix.get(0, 0, m);
+            mapMatrix.release();
+            m[2] += bbox.width / 2D - center.x;
+            m[5] += bbox.height / 2D - center.y;
+            double det = m[0] * m[4] - m[1] * m[3];
+            inverseRotation = new double[] {m[4] / det, -m[1] / det,
+                    (m[1] * m[5] - m[4] * m[2]) / det, -m[3] / det, m[0] / det,
+                    (m[3] * m[2] - m[0] * m[5]) / det};
+            rotatedSize = bbox.size();
+        }
+        int outputWidth = (int) rotatedSize.width;
+        int outputHeight = (int) rotatedSize.height;
+
+        float[] undistortX = null;
+        float[] undistortY = null;
+        if (calibration.isEnabled()) {
+            undistortX = new float[width * height];
+            undistortY = new float[width * height];
+            undistortionMap1.get(0, 0, undistortX);
+            undistortionMap2.get(0, 0, undistortY);
+        }
+
+        float[] mapX = new float[outputWidth * outputHeight];
+        float[] mapY = new float[outputWidth * outputHeight];
+        int half = outputHeight / 2;
+        for (int row = 0; row < outputHeight; row++) {
+            for (int col = 0; col < outputWidth; col++) {
+                double x = col;
+                double y = row;
+                if (flipX) {
+                    y = outputHeight - 1 - y;
+                }
+                if (flipY) {
+                    x = outputWidth - 1 - x;
+                }
+                if (deinterlace && y < half * 2) {
+                    y = ((int) y % 2 == 0) ? (int) y / 2 : (int) y / 2 + half;
+                }
+                x -= offsetX;
+                y -= offsetY;
+                if (inverseRotation != null) {
+                    double rx = inverseRotation[0] * x + inverseRotation[1] * y
+                            + inverseRotation[2];
+                    double ry = inverseRotation[3] * x + inverseRotation[4] * y
+                            + inverseRotation[5];
+                    x = rx;
+                    y = ry;
+                }
+                if (scaledSize != size) {
+                    x = (x + 0.5) * size.width / scaledSize.width - 0.5;
+                    y = (y + 0.5) * size.height / scaledSize.height - 0.5;
+                }
+                if (undistortX != null) {
+                    if (x < -0.5 || y < -0.5 || x > width - 0.5 || y > height - 0.5) {
+                        // Outside of the undistorted image, so outside of the frame too.
+                        x = -width;
+                        y = -height;
+                    }
+                    else {
+                        double[] xy = interpolate(undistortX, undistortY, width, height, x, y);
+                        x = xy[0];
+                        y = xy[1];
+                    }
+                }
+                mapX[row * outputWidth + col] = (float) x;
+                mapY[row * outputWidth + col] = (float) y;
+            }
+        }
+        transformMapX = new Mat(outputHeight, outputWidth, CvType.CV_32FC1);
+        transformMapY = new Mat(outputHeight, outputWidth, CvType.CV_32FC1);
+        transformMapX.put(0, 0, mapX);
+        transformMapY.put(0, 0, mapY);
+    }
 
-        return dst;
+    /**
+     * Bilinear interpolation of a pair of maps at x, y, clamped to the edges.
+     */
+    private static double[] interpolate(float[] mapX, float[] mapY, int width, int height,
+            double x, double y) {
+        x = Math.max(0, Math.min(width - 1, x));
+        y = Math.max(0, Math.min(height - 1, y));
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        double fx = x - x0;
+        double fy = y - y0;
+        int i00 = y0 * width + x0;
+        int i01 = y0 * width + x1;
+        int i10 = y1 * width + x0;
+        int i11 = y1 * width + x1;
+        return new double[] {
+                (mapX[i00] * (1 - fx) + mapX[i01] * fx) * (1 - fy)
+                        + (mapX[i10] * (1 - fx) + mapX[i11] * fx) * fy,
+                (mapY[i00] * (1 - fx) + mapY[i01] * fx) * (1 - fy)
+                        + (mapY[i10] * (1 - fx) + mapY[i11] * fx) * fy};
     }
 
     private Mat calibrate(Mat mat) {
@@ -20,6 +20,10 @@
 package org.openpnp.machine.reference;
 
 import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.openpnp.model.Location;
 import org.openpnp.spi.PropertySheetHolder;
@@ -36,6 +40,12 @@ import org.openpnp.spi.WizardConfigurable;
  * Nozzles, Cameras, Actuators. For this reason, all movements on the driver are specified as
  * movements by one of these objects. This allows the driver to make decisions as to what axes
  * should be moved to accomplish a specific task.
+ * 
+ * The Async methods are an optional, non-blocking version of the same operations. They return as
+ * soon as the operation has been sent and the returned future completes when the machine has
+ * confirmed it. Operations are performed in the order they are issued, so a caller that needs a
+ * move to be finished before the next operation should wait for its future. Drivers that don't
+ * implement them natively perform the blocking operation and return a completed future.
  */
 public interface ReferenceDriver extends WizardConfigurable, PropertySheetHolder, Closeable {
     /**
@@ -60,6 +70,22 @@ public interface ReferenceDriver extends WizardConfigurable, PropertySheetHolder
      */
     public void moveTo(ReferenceHeadMountable hm, Location location, double speed) throws Exception;
 
+    /**
+     * Moves several HeadMountables at the same speed. Drivers that can should send the moves
+     * together rather than waiting for each one in turn. The default moves them one after
+     * another, in the iteration order of the Map.
+     * 
+     * @param locations
+     * @param speed
+     * @throws Exception
+     */
+    public default void moveTo(Map<ReferenceHeadMountable, Location> locations, double speed)
+            throws Exception {
+        for (Map.Entry<ReferenceHeadMountable, Location> entry : locations.entrySet()) {
+            moveTo(entry.getKey(), entry.getValue(), speed);
+        }
+    }
+
     /**
      * Returns a clone of the HeadMountable's current location. It's important that the returned
      * object is a clone, since the caller may modify the returned Location.
@@ -116,6 +142,96 @@ public interface ReferenceDriver extends WizardConfigurable, PropertySheetHolder
         return null;
     }
 
+    /**
+     * Blocks until all previously commanded movement has completed. Drivers that return from
+     * moveTo() before the move is finished must implement this. It is called before anything
+     * that needs the machine to actually be at the commanded location, such as a camera capture.
+     * 
+     * @throws Exception
+     */
+    public default void waitForCompletion() throws Exception {
+    }
+
+    public default CompletableFuture<Void> moveToAsync(ReferenceHeadMountable hm,
+            Location location, double speed) {
+        return callBlocking(() -> {
+            moveTo(hm, location, speed);
+            return null;
+        });
+    }
+
+    public default CompletableFuture<Void> pickAsync(ReferenceNozzle nozzle) {
+        return callBlocking(() -> {
+            pick(nozzle);
+            return null;
+        });
+    }
+
+    public default CompletableFuture<Void> placeAsync(ReferenceNozzle nozzle) {
+        return callBlocking(() -> {
+            place(nozzle);
+            return null;
+        });
+    }
+
+    public default CompletableFuture<Void> actuateAsync(ReferenceActuator actuator, boolean on) {
+        return callBlocking(() -> {
+            actuate(actuator, on);
+            return null;
+        });
+    }
+
+    public default CompletableFuture<Void> actuateAsync(ReferenceActuator actuator,
+            double value) {
+        return callBlocking(() -> {
+            actuate(actuator, value);
+            return null;
+        });
+    }
+
+    public default CompletableFuture<String> actuatorReadAsync(ReferenceActuator actuator) {
+        return callBlocking(() -> actuatorRead(actuator));
+    }
+
+    /**
+     * Wait for a future returned by one of the Async methods and return its result, or throw the
+     * Exception it failed with. Drivers whose futures may never complete on their own, because
+     * the machine stops answering, must bound the wait.
+     * 
+     * @param future
+     * @return
+     * @throws Exception
+     */
+    public default <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run a blocking operation on the calling thread and return its result, or the Exception it
+     * threw, as a completed future. Used by the default Async methods.
+     * 
+     * @param callable
+     * @return
+     */
+    public static <T> CompletableFuture<T> callBlocking(Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(callable.call());
+        }
+        catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Attempts to enable the Driver, turning on all outputs.
      * 
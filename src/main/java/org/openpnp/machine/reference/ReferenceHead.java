@@ -20,6 +20,10 @@
 package org.openpnp.machine.reference;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.Action;
 
@@ -31,6 +35,11 @@ import org.openpnp.machine.reference.psh.CamerasPropertySheetHolder;
 import org.openpnp.machine.reference.psh.NozzlesPropertySheetHolder;
 import org.openpnp.machine.reference.wizards.ReferenceHeadConfigurationWizard;
 import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.base.AbstractHead;
 import org.openpnp.spi.base.SimplePropertySheetHolder;
@@ -42,6 +51,12 @@ public class ReferenceHead extends AbstractHead {
     protected ReferenceMachine machine;
     protected ReferenceDriver driver;
 
+    /**
+     * The height of the tallest obstacle the head has to travel over, or null to always travel at
+     * full safe Z. Set by the job processor while a job runs. See moveToSafeZ().
+     */
+    protected Length clearanceHeight;
+
     public ReferenceHead() {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
@@ -90,10 +105,132 @@ public class ReferenceHead extends AbstractHead {
         return null;
     }
 
+    /**
+     * Gathers the safe Z moves of all of the HeadMountables and gives them to the driver in a
+     * single call, so that they can be sent together. HeadMountables that are already at or above
+     * their safe Z are left where they are. If any Nozzle is carrying a part the moves are made
+     * at that part's speed, since they share one feed rate.
+     * 
+     * If a clearance height is set the HeadMountables are only lifted to the clearance height plus
+     * the height of the tallest part on any Nozzle, or to their safe Z if that is lower.
+     */
     @Override
     public void moveToSafeZ(double speed) throws Exception {
         Logger.debug("{}.moveToSafeZ({})", getName(), speed);
-        super.moveToSafeZ(speed);
+        List<HeadMountable> hms = new ArrayList<>();
+        hms.addAll(getNozzles());
+        hms.addAll(getCameras());
+        hms.addAll(getActuators());
+        hms.addAll(getPasteDispensers());
+
+        Length clearanceZ = getClearanceZ();
+
+        Map<ReferenceHeadMountable, Location> locations = new LinkedHashMap<>();
+        double moveSpeed = speed;
+        for (HeadMountable hm : hms) {
+            ReferenceHeadMountable rhm = (ReferenceHeadMountable) hm;
+            Location location = getSafeZLocation(rhm, clearanceZ);
+            if (location == null) {
+                continue;
+            }
+            locations.put(rhm, location);
+            if (hm instanceof Nozzle && ((Nozzle) hm).getPart() != null) {
+                moveSpeed = Math.min(moveSpeed, ((Nozzle) hm).getPart().getSpeed() * speed);
+            }
+        }
+        if (locations.isEmpty()) {
+            return;
+        }
+        driver.moveTo(locations, moveSpeed);
+        machine.fireMachineHeadActivity(this);
+    }
+
+    /**
+     * Lift a single HeadMountable the same way moveToSafeZ(double) lifts all of them: to its safe
+     * Z, or only to the clearance height if one is set. The others are left where they are.
+     * 
+     * @param hm
+     * @param speed
+     * @throws Exception
+     */
+    public void moveToSafeZ(ReferenceHeadMountable hm, double speed) throws Exception {
+        Logger.debug("{}.moveToSafeZ({}, {})", getName(), hm, speed);
+        Location location = getSafeZLocation(hm, getClearanceZ());
+        if (location == null) {
+            return;
+        }
+        driver.moveTo(hm, location, getSafeZSpeed(hm, speed));
+        machine.fireMachineHeadActivity(this);
+    }
+
+    /**
+     * The same move as moveToSafeZ(ReferenceHeadMountable, double), sent with the driver's
+     * moveToAsync(). The caller waits for the future and fires the head activity.
+     * 
+     * @param hm
+     * @param speed
+     * @return
+     */
+    public CompletableFuture<Void> moveToSafeZAsync(ReferenceHeadMountable hm, double speed) {
+        Logger.debug("{}.moveToSafeZAsync({}, {})", getName(), hm, speed);
+        Location location = getSafeZLocation(hm, getClearanceZ());
+        if (location == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return driver.moveToAsync(hm, location, getSafeZSpeed(hm, speed));
+    }
+
+    /**
+     * If there is a part on the nozzle the speed is a percentage of the part's speed.
+     */
+    private static double getSafeZSpeed(ReferenceHeadMountable hm, double speed) {
+        if (hm instanceof Nozzle && ((Nozzle) hm).getPart() != null) {
+            speed = ((Nozzle) hm).getPart().getSpeed() * speed;
+        }
+        return speed;
+    }
+
+    /**
+     * The location that lifts the HeadMountable to its safe Z, or to clearanceZ if that is lower,
+     * or null if it is already at or above that height.
+     */
+    protected Location getSafeZLocation(ReferenceHeadMountable hm, Length clearanceZ) {
+        Location location = hm.getLocation();
+        double z = hm.getSafeZ().convertToUnits(location.getUnits()).getValue();
+        if (clearanceZ != null) {
+            z = Math.min(z, clearanceZ.convertToUnits(location.getUnits()).getValue());
+        }
+        if (location.getZ() >= z) {
+            return null;
+        }
+        return new Location(location.getUnits(), Double.NaN, Double.NaN, z, Double.NaN);
+    }
+
+    /**
+     * The lowest Z that clears the clearance height with the tallest part on any Nozzle, or null
+     * if no clearance height is set.
+     */
+    protected Length getClearanceZ() {
+        if (clearanceHeight == null) {
+            return null;
+        }
+        double z = clearanceHeight.convertToUnits(LengthUnit.Millimeters).getValue();
+        double partHeight = 0;
+        for (Nozzle nozzle : getNozzles()) {
+            if (nozzle.getPart() != null) {
+                partHeight = Math.max(partHeight, nozzle.getPart().getHeight()
+                        .convertToUnits(LengthUnit.Millimeters).getValue());
+            }
+        }
+        return new Length(z + partHeight, LengthUnit.Millimeters);
+    }
+
+    public Length getClearanceHeight() {
+        return clearanceHeight;
+    }
+
+    public void setClearanceHeight(Length clearanceHeight) {
+        this.clearanceHeight = clearanceHeight;
     }
 
     @Override
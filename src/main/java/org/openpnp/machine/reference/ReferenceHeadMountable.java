@@ -1,5 +1,6 @@
 package org.openpnp.machine.reference;
 
+import org.openpnp.model.Length;
 import org.openpnp.model.Location;
 import org.openpnp.spi.HeadMountable;
 
@@ -7,4 +8,6 @@ public interface ReferenceHeadMountable extends HeadMountable {
     public Location getHeadOffsets();
 
     public void setHeadOffsets(Location headOffsets);
+
+    public Length getSafeZ();
 }
@@ -264,6 +264,10 @@ public class ReferenceMachine extends AbstractMachine {
         return partAlignment;
     }
 
+    public void setPartAlignment(PartAlignment partAlignment) {
+        this.partAlignment = partAlignment;
+    }
+
     @Override
     public FiducialLocator getFiducialLocator() {
         return fiducialLocator;
@@ -2,6 +2,8 @@ package org.openpnp.machine.reference;
 
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -128,6 +130,20 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
 
     @Override
     public void pick(Part part) throws Exception {
+        pick(part, null);
+    }
+
+    /**
+     * Pick the part, then send the retract along with the vacuum sense read instead of after it.
+     * With a driver that queues commands, such as GcodeDriver, the nozzle starts to rise as soon
+     * as the controller has taken the reading, without a round trip to the host in between. If
+     * the pick failed the nozzle has already been lifted when the failure is thrown.
+     * 
+     * @param part
+     * @param retract Sends the retract move and returns its future, or null to not retract.
+     * @throws Exception
+     */
+    public void pick(Part part, Supplier<CompletableFuture<Void>> retract) throws Exception {
         Logger.debug("{}.pick()", getName());
         if (part == null) {
             throw new Exception("Can't pick null part");
@@ -140,10 +156,9 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         getMachine().fireMachineHeadActivity(head);
         Thread.sleep(pickDwellMilliseconds);
 
-        Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
-        if (actuator != null) {
+        Double vacuumLevel = readVacuumLevel(retract);
+        if (vacuumLevel != null) {
             ReferenceNozzleTip nt = getNozzleTip();
-            double vacuumLevel = Double.parseDouble(actuator.read());
             if (invertVacuumSenseLogic) {
                 if (vacuumLevel > nt.getVacuumLevelPartOn()) {
                     throw new Exception(String.format(
@@ -163,6 +178,17 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
 
     @Override
     public void place() throws Exception {
+        place(null);
+    }
+
+    /**
+     * Place the part, then send the retract along with the vacuum sense read, as
+     * pick(Part, Supplier) does.
+     * 
+     * @param retract Sends the retract move and returns its future, or null to not retract.
+     * @throws Exception
+     */
+    public void place(Supplier<CompletableFuture<Void>> retract) throws Exception {
         Logger.debug("{}.place()", getName());
         if (nozzleTip == null) {
             throw new Exception("Can't place, no nozzle tip loaded");
@@ -172,10 +198,9 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         getMachine().fireMachineHeadActivity(head);
         Thread.sleep(placeDwellMilliseconds);
 
-        Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
-        if (actuator != null) {
+        Double vacuumLevel = readVacuumLevel(retract);
+        if (vacuumLevel != null) {
             ReferenceNozzleTip nt = getNozzleTip();
-            double vacuumLevel = Double.parseDouble(actuator.read());
             if (invertVacuumSenseLogic) {
                 if (vacuumLevel < nt.getVacuumLevelPartOff()) {
                     throw new Exception(String.format(
@@ -193,6 +218,34 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         }
     }
 
+    /**
+     * Read the vacuum sense actuator, if there is one, and send the retract, if there is one,
+     * right behind the read. Both are waited for before returning.
+     * 
+     * @return The vacuum level, or null if there is no vacuum sense actuator.
+     */
+    private Double readVacuumLevel(Supplier<CompletableFuture<Void>> retract) throws Exception {
+        Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
+        if (retract == null) {
+            return actuator == null ? null : Double.parseDouble(actuator.read());
+        }
+        CompletableFuture<String> read = null;
+        String value = null;
+        if (actuator instanceof ReferenceActuator) {
+            read = getDriver().actuatorReadAsync((ReferenceActuator) actuator);
+        }
+        else if (actuator != null) {
+            value = actuator.read();
+        }
+        getDriver().await(retract.get());
+        getMachine().fireMachineHeadActivity(head);
+        if (read != null) {
+            value = getDriver().await(read);
+            Logger.debug("{}.read(): {}", actuator.getName(), value);
+        }
+        return value == null ? null : Double.parseDouble(value);
+    }
+
     @Override
     public void moveTo(Location location, double speed) throws Exception {
         // Shortcut Double.NaN. Sending Double.NaN in a Location is an old API that should no
@@ -3,6 +3,7 @@ package org.openpnp.machine.reference;
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -380,7 +381,7 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
         private Location findCircle() throws Exception {
             Camera camera = VisionUtils.getBottomVisionCamera();
             pipeline.setCamera(camera);
-            pipeline.process();
+            pipeline.process(Collections.emptySet());
             Location location;
             Object result = pipeline.getResult("result").model;
             if (result instanceof List) {
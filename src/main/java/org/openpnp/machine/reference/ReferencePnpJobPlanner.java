@@ -0,0 +1,280 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Camera;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.base.AbstractPnpJobProcessor;
+import org.openpnp.util.Utils2D;
+
+/**
+ * Plans an entire job ahead of time as a sequence of cycles and estimates how long the plan will
+ * take to run.
+ *
+ * Without look ahead the plan is the same one ReferencePnpJobProcessor.planCycle() produces one
+ * cycle at a time, with placements taken in part height order. With look ahead, the candidates
+ * for each cycle are ordered by the gantry travel they add, starting from the feeder closest to
+ * where the previous cycle ended, and when a nozzle tip change can't be avoided the tip that can
+ * handle the most remaining placements is loaded instead of the first compatible one.
+ *
+ * The time estimate is deliberately simple: travel from feeder to feeder, to the bottom camera and
+ * from placement to placement at a constant speed, plus a fixed time per nozzle tip change. It is
+ * meant for comparing plans, not for predicting the exact job time.
+ */
+public class ReferencePnpJobPlanner {
+    public static class Cycle {
+        /**
+         * The JobPlacement for each Nozzle, in Nozzle order. null if the Nozzle is not used in this
+         * cycle.
+         */
+        public final List<JobPlacement> jobPlacements;
+
+        /**
+         * The NozzleTip each Nozzle should have loaded during this cycle, in Nozzle order.
+         */
+        public final List<NozzleTip> nozzleTips;
+
+        /**
+         * The estimated time for the cycle in seconds.
+         */
+        public final double estimatedTime;
+
+        public Cycle(List<JobPlacement> jobPlacements, List<NozzleTip> nozzleTips,
+                double estimatedTime) {
+            this.jobPlacements = jobPlacements;
+            this.nozzleTips = nozzleTips;
+            this.estimatedTime = estimatedTime;
+        }
+
+        @Override
+        public String toString() {
+            return jobPlacements.toString();
+        }
+    }
+
+    private final List<Nozzle> nozzles;
+    private final double travelSpeed;
+    private final double nozzleTipChangeTime;
+    private final Location upCameraLocation;
+    private final Map<JobPlacement, Location> pickLocations = new HashMap<>();
+    private final Map<JobPlacement, Location> placementLocations = new HashMap<>();
+    private final Machine machine;
+
+    /**
+     * @param machine
+     * @param head
+     * @param travelSpeed The average gantry speed used for the estimate, in mm/s.
+     * @param nozzleTipChangeTime The time a nozzle tip change takes, in seconds.
+     */
+    public ReferencePnpJobPlanner(Machine machine, Head head, double travelSpeed,
+            double nozzleTipChangeTime) {
+        this.machine = machine;
+        this.nozzles = head.getNozzles();
+        this.travelSpeed = travelSpeed;
+        this.nozzleTipChangeTime = nozzleTipChangeTime;
+
+        Location upCameraLocation = null;
+        for (Camera camera : machine.getCameras()) {
+            if (camera.getLooking() == Camera.Looking.Up) {
+                upCameraLocation = camera.getLocation().convertToUnits(LengthUnit.Millimeters);
+                break;
+            }
+        }
+        this.upCameraLocation = upCameraLocation;
+    }
+
+    /**
+     * Plan the given JobPlacements into cycles.
+     *
+     * @param jobPlacements The JobPlacements to plan, in order of preference.
+     * @param startLocation Where the head is when the job starts. May be null.
+     * @param lookAhead
+     * @return
+     * @throws Exception If some of the JobPlacements can't be handled by any Nozzle.
+     */
+    public List<Cycle> planCycles(List<JobPlacement> jobPlacements, Location startLocation,
+            boolean lookAhead) throws Exception {
+        List<Cycle> cycles = new ArrayList<>();
+        List<JobPlacement> remaining = new ArrayList<>(jobPlacements);
+        List<NozzleTip> nozzleTips = new ArrayList<>();
+        for (Nozzle nozzle : nozzles) {
+            nozzleTips.add(nozzle.getNozzleTip());
+        }
+        Location location =
+                startLocation == null ? null : startLocation.convertToUnits(LengthUnit.Millimeters);
+
+        while (!remaining.isEmpty()) {
+            List<JobPlacement> candidates =
+                    lookAhead ? orderByTravel(remaining, location) : remaining;
+            List<JobPlacement> result =
+                    ReferencePnpJobProcessor.planCycle(nozzles, nozzleTips, candidates);
+            if (Collections.frequency(result, null) == result.size()) {
+                // Pre-flight should have caught this, but don't hand back a plan that quietly
+                // leaves placements out.
+                throw new Exception(String.format(
+                        "No nozzle can handle placements %s, unable to plan the job.", remaining));
+            }
+
+            int nozzleTipChanges = 0;
+            for (int i = 0; i < nozzles.size(); i++) {
+                JobPlacement jobPlacement = result.get(i);
+                NozzleTip nozzleTip = nozzleTips.get(i);
+                if (jobPlacement == null) {
+                    continue;
+                }
+                Part part = jobPlacement.placement.getPart();
+                if (nozzleTip == null || !nozzleTip.canHandle(part)) {
+                    nozzleTip = lookAhead ? findMostUsefulNozzleTip(nozzles.get(i), part, remaining)
+                            : AbstractPnpJobProcessor.findNozzleTip(nozzles.get(i), part);
+                    nozzleTips.set(i, nozzleTip);
+                    nozzleTipChanges++;
+                }
+            }
+            remaining.removeAll(new HashSet<>(result));
+
+            // Estimate the cycle: visit each feeder, the bottom camera and then each placement.
+            double distance = 0;
+            for (JobPlacement jobPlacement : result) {
+                if (jobPlacement != null) {
+                    Location pickLocation = getPickLocation(jobPlacement);
+                    distance += getDistance(location, pickLocation);
+                    location = pickLocation == null ? location : pickLocation;
+                }
+            }
+            if (upCameraLocation != null) {
+                distance += getDistance(location, upCameraLocation);
+                location = upCameraLocation;
+            }
+            for (JobPlacement jobPlacement : result) {
+                if (jobPlacement != null) {
+                    Location placementLocation = getPlacementLocation(jobPlacement);
+                    distance += getDistance(location, placementLocation);
+                    location = placementLocation;
+                }
+            }
+            double estimatedTime =
+                    distance / travelSpeed + nozzleTipChanges * nozzleTipChangeTime;
+
+            cycles.add(new Cycle(result, new ArrayList<>(nozzleTips), estimatedTime));
+        }
+        return cycles;
+    }
+
+    /**
+     * Get the total estimated time of the given cycles, in seconds.
+     *
+     * @param cycles
+     * @return
+     */
+    public static double getEstimatedTime(List<Cycle> cycles) {
+        double time = 0;
+        for (Cycle cycle : cycles) {
+            time += cycle.estimatedTime;
+        }
+        return time;
+    }
+
+    /**
+     * Order the remaining JobPlacements so that the one whose feeder is closest to the current
+     * location comes first, followed by the others in order of how far their feeder and placement
+     * are from that first one. The sort is stable, so ties keep their original order.
+     */
+    private List<JobPlacement> orderByTravel(List<JobPlacement> remaining, Location location) {
+        JobPlacement first = null;
+        double firstDistance = Double.MAX_VALUE;
+        for (JobPlacement jobPlacement : remaining) {
+            double distance = getDistance(location, getPickLocation(jobPlacement));
+            if (distance < firstDistance) {
+                first = jobPlacement;
+                firstDistance = distance;
+            }
+        }
+        Location firstPickLocation = getPickLocation(first);
+        Location firstPlacementLocation = getPlacementLocation(first);
+        Map<JobPlacement, Double> distances = new HashMap<>();
+        for (JobPlacement jobPlacement : remaining) {
+            distances.put(jobPlacement, jobPlacement == first ? -1
+                    : getDistance(firstPickLocation, getPickLocation(jobPlacement)) + getDistance(
+                            firstPlacementLocation, getPlacementLocation(jobPlacement)));
+        }
+        List<JobPlacement> ordered = new ArrayList<>(remaining);
+        ordered.sort(Comparator.comparing(distances::get));
+        return ordered;
+    }
+
+    /**
+     * Of the NozzleTips on the Nozzle that can handle the Part, find the one that can handle the
+     * most of the remaining JobPlacements.
+     */
+    private static NozzleTip findMostUsefulNozzleTip(Nozzle nozzle, Part part,
+            List<JobPlacement> remaining) throws Exception {
+        NozzleTip best = null;
+        int bestCount = -1;
+        for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+            if (!nozzleTip.canHandle(part)) {
+                continue;
+            }
+            int count = 0;
+            for (JobPlacement jobPlacement : remaining) {
+                if (nozzleTip.canHandle(jobPlacement.placement.getPart())) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = nozzleTip;
+                bestCount = count;
+            }
+        }
+        if (best == null) {
+            return AbstractPnpJobProcessor.findNozzleTip(nozzle, part);
+        }
+        return best;
+    }
+
+    private Location getPickLocation(JobPlacement jobPlacement) {
+        if (!pickLocations.containsKey(jobPlacement)) {
+            Location location = null;
+            try {
+                Feeder feeder = AbstractPnpJobProcessor.findFeeder(machine,
+                        jobPlacement.placement.getPart());
+                location = feeder.getPickLocation().convertToUnits(LengthUnit.Millimeters);
+            }
+            catch (Exception e) {
+                // Leave the location unknown, it will simply not count towards the estimate.
+            }
+            pickLocations.put(jobPlacement, location);
+        }
+        return pickLocations.get(jobPlacement);
+    }
+
+    private Location getPlacementLocation(JobPlacement jobPlacement) {
+        Location location = placementLocations.get(jobPlacement);
+        if (location == null) {
+            location = Utils2D.calculateBoardPlacementLocation(jobPlacement.boardLocation,
+                    jobPlacement.placement.getLocation()).convertToUnits(LengthUnit.Millimeters);
+            placementLocations.put(jobPlacement, location);
+        }
+        return location;
+    }
+
+    private static double getDistance(Location from, Location to) {
+        if (from == null || to == null) {
+            return 0;
+        }
+        return from.getLinearDistanceTo(to);
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.openpnp.machine.reference;
 
+import java.beans.PropertyChangeListener;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -27,14 +28,21 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.wizards.ReferencePnpJobProcessorConfigurationWizard;
+import org.openpnp.model.AbstractModelObject;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Job;
+import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Panel;
@@ -50,13 +58,14 @@ import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
 import org.openpnp.spi.base.AbstractJobProcessor;
 import org.openpnp.spi.base.AbstractPnpJobProcessor;
-import org.openpnp.util.Collect;
+import org.openpnp.util.Assignment;
 import org.openpnp.util.FiniteStateMachine;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 
 @Root
@@ -84,11 +93,55 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         Reset
     }
 
+    public enum PlanningMode {
+        /**
+         * Plan one cycle at a time, taking placements in part height order.
+         */
+        Greedy,
+        /**
+         * Plan the whole job before it starts, ordering the cycles to reduce gantry travel and
+         * nozzle tip changes.
+         */
+        LookAhead
+    }
+
+    public enum TravelMode {
+        /**
+         * Retract everything to full safe Z before each move.
+         */
+        SafeZ,
+        /**
+         * Only rise as high as is needed to clear the tallest feeder or placed part, plus the
+         * tallest part on a nozzle and the clearance margin.
+         */
+        Clearance
+    }
+
+    public enum FeederSelection {
+        /**
+         * Always feed from the first enabled feeder of the part.
+         */
+        First,
+        /**
+         * Feed from the enabled feeder of the part whose pick location is nearest the nozzle.
+         */
+        Nearest,
+        /**
+         * Take turns between the enabled feeders of the part.
+         */
+        RoundRobin
+    }
+
     public static class PlannedPlacement {
         public final JobPlacement jobPlacement;
         public final Nozzle nozzle;
+        public NozzleTip nozzleTip;
         public Feeder feeder;
         public PartAlignment.PartAlignmentOffset alignmentOffsets;
+        /**
+         * The alignment while it is still being worked out, see PartAlignment#startFindOffsets.
+         */
+        public CompletableFuture<PartAlignment.PartAlignmentOffset> alignmentFuture;
         public boolean fed;
         public boolean stepComplete;
 
@@ -108,6 +161,50 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     @Attribute(required = false)
     protected boolean parkWhenComplete = false;
 
+    @Attribute(required = false)
+    protected PlanningMode planningMode = PlanningMode.Greedy;
+
+    /**
+     * Average gantry speed in mm/s, used to estimate the job time.
+     */
+    @Attribute(required = false)
+    protected double planningTravelSpeed = 100;
+
+    /**
+     * Time a nozzle tip change takes in seconds, used to estimate the job time.
+     */
+    @Attribute(required = false)
+    protected double planningNozzleTipChangeTime = 10;
+
+    @Attribute(required = false)
+    protected TravelMode travelMode = TravelMode.SafeZ;
+
+    /**
+     * Added to the height of the tallest obstacle in Clearance mode.
+     */
+    @Element(required = false)
+    protected Length clearanceMargin = new Length(1, LengthUnit.Millimeters);
+
+    /**
+     * Send the retract after a pick or place right behind the vacuum sense read instead of
+     * waiting for the reading first. Only used with a ReferenceNozzle on a ReferenceHead.
+     */
+    @Attribute(required = false)
+    protected boolean retractDuringVacuumCheck = false;
+
+    /**
+     * How long to wait for an alignment that is worked out in the background before aligning the
+     * part again, in milliseconds.
+     */
+    @Attribute(required = false)
+    protected long alignmentTimeoutMilliseconds = 30000;
+
+    /**
+     * How to choose between several enabled feeders of the same part.
+     */
+    @Attribute(required = false)
+    protected FeederSelection feederSelection = FeederSelection.First;
+
     private FiniteStateMachine<State, Message> fsm = new FiniteStateMachine<>(State.Uninitialized);
 
     protected Job job;
@@ -121,10 +218,53 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     protected List<PlannedPlacement> plannedPlacements = new ArrayList<>();
 
     protected Map<BoardLocation, Location> boardLocationFiducialOverrides = new HashMap<>();
+
+    protected List<ReferencePnpJobPlanner.Cycle> plannedCycles = new ArrayList<>();
+
+    protected double estimatedJobTime;
+
+    protected double estimatedGreedyJobTime;
+
+    /**
+     * Number of feeds so far for each part, to take turns between its feeders in RoundRobin mode.
+     */
+    protected Map<Part, Integer> partFeedCounts = new HashMap<>();
+
+    /**
+     * Feeders that were fed ahead of a pick in this job and still present a part. Cleared when a
+     * job is initialized, since feeds and picks made outside of the job aren't tracked.
+     */
+    protected Set<Feeder> preFedFeeders = new HashSet<>();
+
+    /**
+     * Top of the tallest enabled board, or of the tallest part placed on one so far, in mm. NaN
+     * outside of a job.
+     */
+    protected double boardClearanceHeight = Double.NaN;
+
+    /**
+     * Top of the tallest feeder, in mm, or NaN if the pick location of a feeder can't be found.
+     * Null when it has to be worked out again because a feeder changed.
+     */
+    protected volatile Double feederClearanceHeight;
+
+    private final PropertyChangeListener feederClearanceInvalidator = e -> {
+        // Feeding along a strip or tray doesn't change the height.
+        if (!"feedCount".equals(e.getPropertyName())) {
+            feederClearanceHeight = null;
+        }
+    };
     
     long startTime;
     int totalPartsPlaced;
 
+    /**
+     * Time spent moving between feeders and placements, in the current cycle and in the whole
+     * job, in milliseconds.
+     */
+    long cycleTravelTime;
+    long totalTravelTime;
+
     public ReferencePnpJobProcessor() {
         fsm.add(State.Uninitialized, Message.Initialize, State.PreFlight, this::doInitialize);
 
@@ -180,7 +320,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     public synchronized boolean next() throws Exception {
 
         try{
-            fsm.send(Message.Next);
+            send(Message.Next);
         } catch (Exception e) {
             this.fireJobState(this.machine.getSignalers(), AbstractJobProcessor.State.ERROR);
             throw(e);
@@ -192,7 +332,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
              * If we've reached the Stopped state the process is complete. We reset the FSM and
              * return false to indicate that we're finished.
              */
-            fsm.send(Message.Reset);
+            send(Message.Reset);
             return false;
         }
         else if (fsm.getState() == State.Plan && isJobComplete()) {
@@ -200,7 +340,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
              * If we've reached the Plan state and there are no more placements to work on the job
              * is complete. We send the Complete Message to start the cleanup process.
              */
-            fsm.send(Message.Complete);
+            send(Message.Complete);
             this.fireJobState(this.machine.getSignalers(), AbstractJobProcessor.State.FINISHED);
             return false;
         }
@@ -209,11 +349,28 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     }
 
     public synchronized void abort() throws Exception {
-        fsm.send(Message.Abort);
+        send(Message.Abort);
     }
 
     public synchronized void skip() throws Exception {
-        fsm.send(Message.Skip);
+        send(Message.Skip);
+    }
+
+    /**
+     * Run the steps for the message. In Clearance mode the head only travels at the clearance
+     * height while the steps run, so that moves made between steps, such as jogging while the job
+     * is paused after an error, go to full safe Z.
+     */
+    private void send(Message message) throws Exception {
+        updateClearanceHeight();
+        try {
+            fsm.send(message);
+        }
+        finally {
+            if (head instanceof ReferenceHead) {
+                ((ReferenceHead) head).setClearanceHeight(null);
+            }
+        }
     }
 
     /*
@@ -245,6 +402,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         if (job == null) {
             throw new Exception("Can't initialize with a null Job.");
         }
+        preFedFeeders.clear();
     }
 
     /**
@@ -264,12 +422,15 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     protected void doPreFlight() throws Exception {
         startTime = System.currentTimeMillis();
         totalPartsPlaced = 0;
+        cycleTravelTime = 0;
+        totalTravelTime = 0;
         
         // Create some shortcuts for things that won't change during the run
         this.machine = Configuration.get().getMachine();
         this.head = this.machine.getDefaultHead();
         this.jobPlacements.clear();
         this.boardLocationFiducialOverrides.clear();
+        this.partFeedCounts.clear();
 
         fireTextStatus("Checking job for setup errors.");
 
@@ -314,6 +475,10 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             }
         }
 
+        fireTextStatus("Planning job.");
+
+        planJob();
+
         // Everything looks good, so prepare the machine.
         fireTextStatus("Preparing machine.");
 
@@ -321,6 +486,228 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         head.moveToSafeZ();
         // Discard any currently picked parts
         discardAll(head);
+
+        boardClearanceHeight = Double.NEGATIVE_INFINITY;
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            if (boardLocation.isEnabled()) {
+                boardClearanceHeight = Math.max(boardClearanceHeight, boardLocation.getLocation()
+                        .convertToUnits(LengthUnit.Millimeters).getZ());
+            }
+        }
+        feederClearanceHeight = null;
+        updateClearanceHeight();
+    }
+
+    /**
+     * In Clearance mode, tell the head how high the tallest obstacle it has to travel over is.
+     * That's the top of the tallest board or part placed so far, or of the tallest feeder, taken
+     * as its pick location plus the height of its part. Disabled feeders count too, they are still
+     * on the machine. The feeders are only looked at again when one of them changes. If a feeder's
+     * pick location can't be found the head travels at full safe Z.
+     */
+    protected void updateClearanceHeight() {
+        if (!(head instanceof ReferenceHead)) {
+            return;
+        }
+        ReferenceHead referenceHead = (ReferenceHead) head;
+        if (travelMode != TravelMode.Clearance || Double.isNaN(boardClearanceHeight)) {
+            referenceHead.setClearanceHeight(null);
+            return;
+        }
+        Double feederHeight = feederClearanceHeight;
+        if (feederHeight == null) {
+            feederHeight = getFeederClearanceHeight();
+            feederClearanceHeight = feederHeight;
+        }
+        double height = Math.max(boardClearanceHeight, feederHeight);
+        if (Double.isNaN(height) || height == Double.NEGATIVE_INFINITY) {
+            referenceHead.setClearanceHeight(null);
+            return;
+        }
+        height += clearanceMargin.convertToUnits(LengthUnit.Millimeters).getValue();
+        referenceHead.setClearanceHeight(new Length(height, LengthUnit.Millimeters));
+        Logger.debug("Clearance height {}", referenceHead.getClearanceHeight());
+    }
+
+    /**
+     * The top of the tallest feeder in mm, or NaN if a feeder's pick location can't be found.
+     * Listens to the feeders, and to the machine for feeders that are added or removed, so that
+     * it is worked out again when any of them changes.
+     */
+    protected double getFeederClearanceHeight() {
+        listenForFeederChanges(true);
+        double height = Double.NEGATIVE_INFINITY;
+        for (Feeder feeder : machine.getFeeders()) {
+            try {
+                double z = feeder.getPickLocation().convertToUnits(LengthUnit.Millimeters).getZ();
+                if (feeder.getPart() != null) {
+                    z += feeder.getPart().getHeight().convertToUnits(LengthUnit.Millimeters)
+                            .getValue();
+                }
+                height = Math.max(height, z);
+            }
+            catch (Exception e) {
+                Logger.warn("Can't get the pick location of {}, traveling at safe Z: {}",
+                        feeder.getName(), e.getMessage());
+                return Double.NaN;
+            }
+        }
+        return height;
+    }
+
+    private void listenForFeederChanges(boolean listen) {
+        if (machine instanceof AbstractModelObject) {
+            AbstractModelObject model = (AbstractModelObject) machine;
+            model.removePropertyChangeListener("feeders", feederClearanceInvalidator);
+            if (listen) {
+                model.addPropertyChangeListener("feeders", feederClearanceInvalidator);
+            }
+        }
+        for (Feeder feeder : machine.getFeeders()) {
+            if (feeder instanceof AbstractModelObject) {
+                AbstractModelObject model = (AbstractModelObject) feeder;
+                model.removePropertyChangeListener(feederClearanceInvalidator);
+                if (listen) {
+                    model.addPropertyChangeListener(feederClearanceInvalidator);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the nozzle to the location by way of safe Z, or the clearance height in Clearance mode,
+     * counting the time it takes as travel time.
+     */
+    protected void travelTo(Nozzle nozzle, Location location) throws Exception {
+        long t = System.currentTimeMillis();
+        MovableUtils.moveToLocationAtSafeZ(nozzle, location);
+        cycleTravelTime += System.currentTimeMillis() - t;
+    }
+
+    /**
+     * Move the nozzle in X, Y and C to above the location by way of safe Z, or the clearance
+     * height in Clearance mode, without descending. Counted as travel time.
+     */
+    protected void travelAbove(Nozzle nozzle, Location location) throws Exception {
+        long t = System.currentTimeMillis();
+        head.moveToSafeZ();
+        nozzle.moveTo(location.derive(null, null, Double.NaN, null));
+        cycleTravelTime += System.currentTimeMillis() - t;
+    }
+
+    /**
+     * Wait for the alignment of the placement to be worked out. If it failed, or isn't done
+     * within alignmentTimeoutMilliseconds, the part is aligned again, the blocking way. If that
+     * fails too the failure is thrown and the future is kept, so that the part is aligned again
+     * rather than placed unaligned on a retry. The part is still on the nozzle, above the board
+     * at safe Z.
+     */
+    protected PartAlignment.PartAlignmentOffset getAlignmentOffsets(
+            PlannedPlacement plannedPlacement) throws Exception {
+        long t = System.currentTimeMillis();
+        try {
+            PartAlignment.PartAlignmentOffset offsets;
+            try {
+                offsets = plannedPlacement.alignmentFuture.get(alignmentTimeoutMilliseconds,
+                        TimeUnit.MILLISECONDS);
+            }
+            catch (ExecutionException | TimeoutException | CancellationException e) {
+                // Cancelled if this is a retry after aligning again failed.
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                Logger.warn("Alignment of {} failed, aligning again: {}", plannedPlacement,
+                        cause);
+                plannedPlacement.alignmentFuture.cancel(false);
+                JobPlacement jobPlacement = plannedPlacement.jobPlacement;
+                Placement placement = jobPlacement.placement;
+                fireTextStatus("Aligning %s for %s again.", placement.getPart().getId(),
+                        placement.getId());
+                offsets = VisionUtils.findPartAlignmentOffsets(machine.getPartAlignment(),
+                        placement.getPart(), jobPlacement.boardLocation, placement.getLocation(),
+                        plannedPlacement.nozzle);
+            }
+            plannedPlacement.alignmentFuture = null;
+            return offsets;
+        }
+        finally {
+            Logger.debug("Waited {} ms for the alignment of {}.", System.currentTimeMillis() - t,
+                    plannedPlacement);
+        }
+    }
+
+    /**
+     * Lift the nozzle after a pick or place. In Clearance mode it only rises to the clearance
+     * height. The other head mountables are not moved.
+     */
+    protected void retract(Nozzle nozzle) throws Exception {
+        long t = System.currentTimeMillis();
+        if (travelMode == TravelMode.Clearance && head instanceof ReferenceHead
+                && nozzle instanceof ReferenceHeadMountable) {
+            ((ReferenceHead) head).moveToSafeZ((ReferenceHeadMountable) nozzle,
+                    machine.getSpeed());
+        }
+        else {
+            nozzle.moveToSafeZ();
+        }
+        cycleTravelTime += System.currentTimeMillis() - t;
+    }
+
+    /**
+     * The same move as retract(), sent asynchronously so that it can go out along with the
+     * vacuum sense read. Outside of Clearance mode the head has no clearance height, so the
+     * nozzle rises to its safe Z.
+     */
+    protected CompletableFuture<Void> retractAsync(ReferenceNozzle nozzle) {
+        return ((ReferenceHead) head).moveToSafeZAsync(nozzle, machine.getSpeed());
+    }
+
+    protected boolean canRetractDuringVacuumCheck(Nozzle nozzle) {
+        return retractDuringVacuumCheck && nozzle instanceof ReferenceNozzle
+                && head instanceof ReferenceHead;
+    }
+
+    /**
+     * Plan the whole job and estimate how long it will take. The greedy plan is always estimated
+     * so that it can be compared with the look ahead plan. In LookAhead mode the look ahead plan,
+     * or the greedy plan if that is estimated to be faster, is kept and handed out by doPlan().
+     * 
+     * @throws Exception
+     */
+    protected void planJob() throws Exception {
+        plannedCycles.clear();
+
+        ReferencePnpJobPlanner planner = new ReferencePnpJobPlanner(machine, head,
+                planningTravelSpeed, planningNozzleTipChangeTime);
+        List<JobPlacement> jobPlacements = getPendingJobPlacements().stream()
+                .sorted(Comparator.comparing(JobPlacement::getPartHeight))
+                .collect(Collectors.toList());
+        Location startLocation = head.getDefaultNozzle().getLocation();
+
+        List<ReferencePnpJobPlanner.Cycle> greedyCycles =
+                planner.planCycles(jobPlacements, startLocation, false);
+        estimatedGreedyJobTime = ReferencePnpJobPlanner.getEstimatedTime(greedyCycles);
+        estimatedJobTime = estimatedGreedyJobTime;
+
+        if (planningMode == PlanningMode.LookAhead) {
+            List<ReferencePnpJobPlanner.Cycle> lookAheadCycles =
+                    planner.planCycles(jobPlacements, startLocation, true);
+            // Never run a plan that is estimated to be slower than the greedy one.
+            double lookAheadJobTime = ReferencePnpJobPlanner.getEstimatedTime(lookAheadCycles);
+            if (lookAheadJobTime <= estimatedGreedyJobTime) {
+                plannedCycles.addAll(lookAheadCycles);
+            }
+            else {
+                plannedCycles.addAll(greedyCycles);
+            }
+            estimatedJobTime = ReferencePnpJobPlanner.getEstimatedTime(plannedCycles);
+            Logger.info(
+                    "Planned {} cycles, estimated job time {} sec. Greedy plan is {} cycles, {} sec.",
+                    plannedCycles.size(), String.format("%.1f", estimatedJobTime),
+                    greedyCycles.size(), String.format("%.1f", estimatedGreedyJobTime));
+        }
+        else {
+            Logger.info("Planned {} cycles, estimated job time {} sec.", greedyCycles.size(),
+                    String.format("%.1f", estimatedJobTime));
+        }
     }
 
     protected void doFiducialCheck() throws Exception {
@@ -364,27 +751,22 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     /**
      * Description of the planner:
      * 
-     * 1. Create a List<List<JobPlacement>> where each List<JobPlacement> is a List of JobPlacements
-     * that the corresponding (in order) Nozzle can handle in Nozzle order.
-     * 
-     * In addition, each List<JobPlacement> contains one instance of null which represents a
-     * solution where that Nozzle does not perform a placement.
+     * 1. Sort the pending JobPlacements by part height. This order is used to break ties between
+     * otherwise equal solutions.
      * 
-     * 2. Create the Cartesian product of all of the List<JobPlacement>. The resulting List<List
-     * <JobPlacement>> represents possible solutions for a single cycle with each JobPlacement
-     * corresponding to a Nozzle.
+     * 2. For each Nozzle, collect the candidate JobPlacements it can handle. Only the first N
+     * placements (N being the number of Nozzles) that can be handled by the currently loaded
+     * NozzleTip and the first N that require a nozzle change can ever be part of the best
+     * solution, since at most N - 1 of them can be taken by other Nozzles. This keeps the size of
+     * the problem independent of the number of placements in the job.
      * 
-     * 3. Filter out any solutions where the same JobPlacement is represented more than once. We
-     * don't want more than one Nozzle trying to place the same Placement.
+     * 3. Solve a min-cost assignment of Nozzles to candidates, where leaving a Nozzle empty costs
+     * more than any number of nozzle changes. The result is that we prefer solutions that use more
+     * nozzles in a cycle and require fewer nozzle changes.
      * 
-     * 4. Sort the solutions by fewest nulls followed by fewest nozzle changes. The result is that
-     * we prefer solutions that use more nozzles in a cycle and require fewer nozzle changes.
-     * 
-     * Note: TODO: Originally planned to have this sort by part height but that went out the window
-     * during development. Need to think about how to best combine the height requirement with the
-     * want to fill all nozzles and perform minimal nozzle changes. Based on IRC discussion, the
-     * part height thing might be a red herring - most machines will have enough Z to place all
-     * parts regardless of height order.
+     * 4. Among the solutions with the best cost, pick the one that assigns each Nozzle, in Nozzle
+     * order, the earliest JobPlacement in the sorted list. This matches the ordering of the
+     * previous cartesian product based planner.
      */
     protected void doPlan() throws Exception {
         plannedPlacements.clear();
@@ -400,57 +782,188 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             return;
         }
 
-        // Create a List of Lists of JobPlacements that each Nozzle can handle, including
-        // one instance of null per Nozzle. The null indicates a possible "no solution"
-        // for that Nozzle.
-        List<List<JobPlacement>> solutions = head.getNozzles().stream().map(nozzle -> {
-            return Stream.concat(jobPlacements.stream().filter(jobPlacement -> {
-                return nozzleCanHandle(nozzle, jobPlacement.placement.getPart());
-            }), Stream.of((JobPlacement) null)).collect(Collectors.toList());
-        }).collect(Collectors.toList());
+        // In LookAhead mode take the next cycle from the job plan that still has work to do.
+        // Placements that were skipped since the job was planned are left out. If the plan runs
+        // out before the job is complete we fall back to planning the cycle here.
+        ReferencePnpJobPlanner.Cycle cycle = null;
+        while (planningMode == PlanningMode.LookAhead && cycle == null
+                && !plannedCycles.isEmpty()) {
+            ReferencePnpJobPlanner.Cycle next = plannedCycles.remove(0);
+            if (next.jobPlacements.stream().anyMatch(jobPlacement -> {
+                return jobPlacement != null && jobPlacement.status == Status.Pending;
+            })) {
+                cycle = next;
+            }
+        }
 
-        // Get the cartesian product of those Lists
-        List<JobPlacement> result = Collect.cartesianProduct(solutions).stream()
-                // Filter out any results that contains the same JobPlacement more than once
-                .filter(list -> {
-                    // Note: A previous version of this code just dumped everything into a
-                    // set and compared the size. This worked for two nozzles since there would
-                    // never be more than two nulls, but for > 2 nozzles there will always be a
-                    // solution that has > 2 nulls, which means the size will never match.
-                    // This version of the code ignores the nulls (since they are valid
-                    // solutions) and instead only checks for duplicate valid JobPlacements.
-                    // There is probably a more clever way to do this, but it isn't coming
-                    // to me at the moment.
-                    HashSet<JobPlacement> set = new HashSet<>();
-                    for (JobPlacement jp : list) {
-                        if (jp == null) {
-                            continue;
-                        }
-                        if (set.contains(jp)) {
-                            return false;
-                        }
-                        set.add(jp);
-                    }
-                    return true;
-                })
-                // Sort by the solutions that contain the fewest nulls followed by the
-                // solutions that require the fewest nozzle changes.
-                .sorted(byFewestNulls.thenComparing(byFewestNozzleChanges))
-                // And return the top result.
-                .findFirst().orElse(null);
+        List<JobPlacement> result;
+        List<NozzleTip> nozzleTips;
+        if (cycle != null) {
+            result = new ArrayList<>(cycle.jobPlacements);
+            nozzleTips = new ArrayList<>(cycle.nozzleTips);
+        }
+        else {
+            result = planCycle(head.getNozzles(), jobPlacements);
+            nozzleTips = new ArrayList<>(Collections.nCopies(result.size(), (NozzleTip) null));
+        }
 
         // Now we have a solution, so apply it to the nozzles and plan the placements.
         for (Nozzle nozzle : head.getNozzles()) {
             // The solution is in Nozzle order, so grab the next one.
             JobPlacement jobPlacement = result.remove(0);
-            if (jobPlacement == null) {
+            NozzleTip nozzleTip = nozzleTips.remove(0);
+            if (jobPlacement == null || jobPlacement.status != Status.Pending) {
                 continue;
             }
             jobPlacement.status = Status.Processing;
-            plannedPlacements.add(new PlannedPlacement(nozzle, jobPlacement));
+            PlannedPlacement plannedPlacement = new PlannedPlacement(nozzle, jobPlacement);
+            plannedPlacement.nozzleTip = nozzleTip;
+            plannedPlacements.add(plannedPlacement);
+        }
+
+        if (cycle != null) {
+            Logger.debug("Planned placements {}, estimated cycle time {} sec", plannedPlacements,
+                    String.format("%.1f", cycle.estimatedTime));
         }
+        else {
+            Logger.debug("Planned placements {}", plannedPlacements);
+        }
+    }
 
-        Logger.debug("Planned placements {}", plannedPlacements);
+    /**
+     * Plan a single cycle. Returns a List with one entry per Nozzle, in Nozzle order, containing
+     * the JobPlacement that Nozzle should perform or null if the Nozzle should sit this cycle out.
+     * The solution has the fewest nulls, followed by the fewest nozzle changes, followed by the
+     * earliest JobPlacements in the given order. See doPlan() for a description.
+     * 
+     * @param nozzles
+     * @param jobPlacements The JobPlacements to consider, in order of preference.
+     * @return
+     */
+    public static List<JobPlacement> planCycle(List<Nozzle> nozzles,
+            List<JobPlacement> jobPlacements) {
+        List<NozzleTip> nozzleTips = new ArrayList<>();
+        for (Nozzle nozzle : nozzles) {
+            nozzleTips.add(nozzle.getNozzleTip());
+        }
+        return planCycle(nozzles, nozzleTips, jobPlacements);
+    }
+
+    /**
+     * Plan a single cycle as if each Nozzle had the corresponding NozzleTip in nozzleTips loaded.
+     * This allows planning cycles ahead of time, before the nozzle tips are actually changed.
+     * 
+     * @param nozzles
+     * @param nozzleTips The NozzleTip loaded on each Nozzle, in Nozzle order. May contain nulls.
+     * @param jobPlacements The JobPlacements to consider, in order of preference.
+     * @return
+     */
+    public static List<JobPlacement> planCycle(List<Nozzle> nozzles, List<NozzleTip> nozzleTips,
+            List<JobPlacement> jobPlacements) {
+        int nozzleCount = nozzles.size();
+
+        // Collect the candidate JobPlacements for each Nozzle. Once a Nozzle has enough
+        // candidates that don't need a nozzle change there is no reason to look further, since
+        // a candidate that does need one can never be better. The candidates are kept in
+        // JobPlacement order so that the column index doubles as the tie breaker.
+        Map<JobPlacement, Integer> order = new HashMap<>();
+        for (int i = 0; i < nozzleCount; i++) {
+            Nozzle nozzle = nozzles.get(i);
+            NozzleTip nozzleTip = nozzleTips.get(i);
+            int loaded = 0, unloaded = 0;
+            boolean hasNozzleTip = nozzleTip != null;
+            for (int index = 0; index < jobPlacements.size() && loaded < nozzleCount
+                    && (hasNozzleTip || unloaded < nozzleCount); index++) {
+                JobPlacement jobPlacement = jobPlacements.get(index);
+                Part part = jobPlacement.placement.getPart();
+                if (!nozzleCanHandle(nozzle, part)) {
+                    continue;
+                }
+                if (hasNozzleTip && nozzleTip.canHandle(part)) {
+                    loaded++;
+                }
+                else if (unloaded++ >= nozzleCount) {
+                    continue;
+                }
+                order.put(jobPlacement, index);
+            }
+        }
+        List<JobPlacement> candidates = new ArrayList<>(order.keySet());
+        candidates.sort(Comparator.comparing(order::get));
+
+        // Build the cost matrix. Columns are the candidates followed by one "no placement" column
+        // per Nozzle. A nozzle change costs 1, an empty Nozzle costs more than changing every
+        // Nozzle and an impossible assignment costs more than any possible solution. A Nozzle
+        // without a NozzleTip always counts as a nozzle change, even if it is left empty.
+        long changeCost = 1;
+        long nullCost = nozzleCount + 1;
+        long impossibleCost = nozzleCount * (nullCost + changeCost) + 1;
+        int columnCount = candidates.size() + nozzleCount;
+        long[][] costs = new long[nozzleCount][columnCount];
+        for (int i = 0; i < nozzleCount; i++) {
+            Nozzle nozzle = nozzles.get(i);
+            NozzleTip nozzleTip = nozzleTips.get(i);
+            for (int j = 0; j < candidates.size(); j++) {
+                Part part = candidates.get(j).placement.getPart();
+                if (!nozzleCanHandle(nozzle, part)) {
+                    costs[i][j] = impossibleCost;
+                }
+                else if (nozzleTip == null || !nozzleTip.canHandle(part)) {
+                    costs[i][j] = changeCost;
+                }
+            }
+            for (int j = candidates.size(); j < columnCount; j++) {
+                costs[i][j] = nozzleTip == null ? nullCost + changeCost : nullCost;
+            }
+        }
+
+        long best = Assignment.cost(costs, Assignment.solve(costs));
+
+        // Fix each Nozzle in turn to the earliest column that still allows the best cost. The
+        // "no placement" columns are interchangeable so they are tried together, last.
+        List<JobPlacement> result = new ArrayList<>();
+        for (int i = 0; i < nozzleCount; i++) {
+            long[] row = costs[i];
+            Integer fixed = null;
+            for (int j = 0; j <= candidates.size() && fixed == null; j++) {
+                if (j < candidates.size() && row[j] == impossibleCost) {
+                    continue;
+                }
+                long[][] trial = fix(costs, i, j, candidates.size(), impossibleCost);
+                if (Assignment.cost(trial, Assignment.solve(trial)) == best) {
+                    fixed = j;
+                    costs = trial;
+                }
+            }
+            result.add(fixed < candidates.size() ? candidates.get(fixed) : null);
+        }
+        return result;
+    }
+
+    /**
+     * Return a copy of costs where row is only allowed to use column, and no other row is allowed
+     * to use column. If column is the first of the interchangeable "no placement" columns, row is
+     * allowed to use any of them.
+     */
+    private static long[][] fix(long[][] costs, int row, int column, int nullColumn,
+            long impossibleCost) {
+        long[][] trial = new long[costs.length][];
+        for (int i = 0; i < costs.length; i++) {
+            trial[i] = costs[i].clone();
+        }
+        for (int j = 0; j < trial[row].length; j++) {
+            if (column == nullColumn ? j < nullColumn : j != column) {
+                trial[row][j] = impossibleCost;
+            }
+        }
+        if (column != nullColumn) {
+            for (int i = 0; i < trial.length; i++) {
+                if (i != row) {
+                    trial[i][column] = impossibleCost;
+                }
+            }
+        }
+        return trial;
     }
 
     protected void doChangeNozzleTip() throws Exception {
@@ -473,8 +986,11 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
             fireTextStatus("Changing nozzle tip on nozzle %s.", nozzle.getId());
 
-            // Otherwise find a compatible tip and load it
-            NozzleTip nozzleTip = findNozzleTip(nozzle, part);
+            // Otherwise use the tip chosen by the planner, or find a compatible tip, and load it
+            NozzleTip nozzleTip = plannedPlacement.nozzleTip;
+            if (nozzleTip == null || !nozzleTip.canHandle(part)) {
+                nozzleTip = findNozzleTip(nozzle, part);
+            }
             Logger.debug("Change nozzle tip on {} from {} to {}",
                     new Object[] {nozzle, nozzle.getNozzleTip(), nozzleTip});
             nozzle.unloadNozzleTip();
@@ -516,6 +1032,20 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             Placement placement = jobPlacement.placement;
             Part part = placement.getPart();
 
+            // If the feeder was already fed while the previous cycle was being placed there is
+            // a part waiting, so don't feed it again.
+            if (!plannedPlacement.fed) {
+                for (Feeder feeder : machine.getFeeders(part)) {
+                    if (feeder.isEnabled() && preFedFeeders.remove(feeder)) {
+                        Logger.debug("Using pre-fed {} from {} for {}.",
+                                new Object[] {part, feeder, nozzle});
+                        plannedPlacement.feeder = feeder;
+                        plannedPlacement.fed = true;
+                        break;
+                    }
+                }
+            }
+
             if (!plannedPlacement.fed) {
                 Exception lastError = null;
                 Feeder lastErrorFeeder = null;
@@ -523,7 +1053,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     // Find a compatible, enabled feeder
                     Feeder feeder;
                     try {
-                        feeder = findFeeder(machine, part);
+                        feeder = selectFeeder(part, nozzle);
                     }
                     catch (Exception e) {
                         if (lastError != null) {
@@ -555,6 +1085,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                             Logger.debug("Fed {} from {} with {}.",
                                     new Object[] {part, feeder, nozzle});
                         });
+                        partFeedCounts.merge(part, 1, Integer::sum);
 
                         break;
                     }
@@ -562,7 +1093,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                         Logger.debug("Feed {} from {} with {} failed!",
                                 new Object[] {part, feeder, nozzle});
                         // If the feed fails, disable the feeder and continue. If there are no
-                        // more valid feeders the findFeeder() call above will throw and exit the
+                        // more valid feeders the selectFeeder() call above will throw and exit the
                         // loop.
                         feeder.setEnabled(false);
                         lastErrorFeeder = feeder;
@@ -576,18 +1107,22 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             Feeder feeder = plannedPlacement.feeder;
 
             // Move to the pick location
-            MovableUtils.moveToLocationAtSafeZ(nozzle, feeder.getPickLocation());
+            travelTo(nozzle, feeder.getPickLocation());
 
             fireTextStatus("Picking %s from %s for %s.", part.getId(), feeder.getName(),
                     placement.getId());
             
             ++totalPartsPlaced;
 
-            // Pick
-            nozzle.pick(part);
-
-            // Retract
-            nozzle.moveToSafeZ();
+            // Pick and retract
+            if (canRetractDuringVacuumCheck(nozzle)) {
+                ReferenceNozzle referenceNozzle = (ReferenceNozzle) nozzle;
+                referenceNozzle.pick(part, () -> retractAsync(referenceNozzle));
+            }
+            else {
+                nozzle.pick(part);
+                retract(nozzle);
+            }
 
             Logger.debug("Pick {} from {} with {}", part, feeder, nozzle);
 
@@ -602,6 +1137,38 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     }
 
     protected void doAlign() throws Exception {
+        // Every part of this cycle has been picked, so start feeding the next cycle while the
+        // parts are aligned and placed.
+        doPreFeed();
+
+        // If the part alignment can do all the parts at once, such as from a single camera frame,
+        // let it.
+        List<PlannedPlacement> toAlign = new ArrayList<>();
+        List<PartAlignment.PartAlignmentRequest> requests = new ArrayList<>();
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            if (plannedPlacement.stepComplete) {
+                continue;
+            }
+            JobPlacement jobPlacement = plannedPlacement.jobPlacement;
+            toAlign.add(plannedPlacement);
+            requests.add(new PartAlignment.PartAlignmentRequest(jobPlacement.placement.getPart(),
+                    jobPlacement.boardLocation, jobPlacement.placement.getLocation(),
+                    plannedPlacement.nozzle));
+        }
+        PartAlignment partAlignment = machine.getPartAlignment();
+        if (requests.size() > 1 && partAlignment.canAlignTogether(requests)) {
+            fireTextStatus("Aligning %d parts.", requests.size());
+            List<PartAlignment.PartAlignmentOffset> offsets =
+                    VisionUtils.findPartAlignmentOffsets(partAlignment, requests);
+            for (int i = 0; i < toAlign.size(); i++) {
+                PlannedPlacement plannedPlacement = toAlign.get(i);
+                plannedPlacement.alignmentOffsets = offsets.get(i);
+                Logger.debug("Align {} with {}", requests.get(i).getPart(),
+                        plannedPlacement.nozzle);
+                plannedPlacement.stepComplete = true;
+            }
+        }
+
         for (PlannedPlacement plannedPlacement : plannedPlacements) {
             if (plannedPlacement.stepComplete) {
                 continue;
@@ -611,7 +1178,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             Placement placement = jobPlacement.placement;
             Part part = placement.getPart();
             fireTextStatus("Aligning %s for %s.", part.getId(), placement.getId());
-            plannedPlacement.alignmentOffsets = VisionUtils.findPartAlignmentOffsets(
+            plannedPlacement.alignmentFuture = VisionUtils.startPartAlignmentOffsets(
                     machine.getPartAlignment(), 
                     part, 
                     jobPlacement.boardLocation, 
@@ -649,6 +1216,15 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             Location placementLocation =
                     Utils2D.calculateBoardPlacementLocation(boardLocation, placement.getLocation());
 
+            // If the alignment is still being worked out, start traveling to the placement
+            // while it is, and apply it before the final approach.
+            if (plannedPlacement.alignmentFuture != null) {
+                if (!plannedPlacement.alignmentFuture.isDone()) {
+                    travelAbove(nozzle, placementLocation);
+                }
+                plannedPlacement.alignmentOffsets = getAlignmentOffsets(plannedPlacement);
+            }
+
             // If there are alignment offsets update the placement location with them
             if (plannedPlacement.alignmentOffsets != null) {
 
@@ -699,30 +1275,176 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     0, part.getHeight().getValue(), 0));
 
             // Move to the placement location
-            MovableUtils.moveToLocationAtSafeZ(nozzle, placementLocation);
+            travelTo(nozzle, placementLocation);
 
             fireTextStatus("Placing %s for %s.", part.getId(), placement.getId());
 
-            // Place the part
-            nozzle.place();
-
-            // Retract
-            nozzle.moveToSafeZ();
+            // Place the part and retract
+            if (canRetractDuringVacuumCheck(nozzle)) {
+                ReferenceNozzle referenceNozzle = (ReferenceNozzle) nozzle;
+                referenceNozzle.place(() -> retractAsync(referenceNozzle));
+            }
+            else {
+                nozzle.place();
+                retract(nozzle);
+            }
 
             // Mark the placement as finished
             jobPlacement.status = Status.Complete;
 
+            // The part just placed may now be the tallest thing on the board.
+            boardClearanceHeight = Math.max(boardClearanceHeight,
+                    jobPlacement.boardLocation.getLocation().convertToUnits(LengthUnit.Millimeters)
+                            .getZ() + jobPlacement.getPartHeight());
+            updateClearanceHeight();
+
             plannedPlacement.stepComplete = true;
 
             Logger.debug("Place {} with {}", part, nozzle.getName());
         }
 
         clearStepComplete();
+
+        Logger.info("Cycle travel time {} ms ({}).", cycleTravelTime, travelMode);
+        totalTravelTime += cycleTravelTime;
+        cycleTravelTime = 0;
+    }
+
+    /**
+     * Feed the feeders the next cycle will pick from, for the feeders that can be fed without
+     * the head present. Each feeder is fed at most once, since it can't present another part
+     * until the first one has been picked. The fed feeders are remembered in preFedFeeders so
+     * that doFeedAndPick() doesn't feed them again, also after the placement is skipped. A failed
+     * pre-feed is only logged, the feeder is then fed as usual right before the pick.
+     * 
+     * The feed is sent from the job thread rather than in the background because the drivers
+     * expect to be called from one thread at a time. The actuator command itself is quick, it's
+     * the feeder's mechanical advance that overlaps with the rest of the cycle.
+     */
+    protected void doPreFeed() {
+        List<Nozzle> nozzles = head.getNozzles();
+        List<JobPlacement> nextCycle = planNextCycle();
+        for (int i = 0; i < nextCycle.size() && i < nozzles.size(); i++) {
+            JobPlacement jobPlacement = nextCycle.get(i);
+            if (jobPlacement == null) {
+                continue;
+            }
+            Nozzle nozzle = nozzles.get(i);
+            Part part = jobPlacement.placement.getPart();
+            Feeder feeder;
+            try {
+                feeder = selectFeeder(part, nozzle);
+            }
+            catch (Exception e) {
+                continue;
+            }
+            if (!feeder.canPreFeed() || preFedFeeders.contains(feeder)) {
+                continue;
+            }
+            try {
+                fireTextStatus("Feeding %s from %s ahead for %s.", part.getId(), feeder.getName(),
+                        jobPlacement.placement.getId());
+                feeder.feed(nozzle);
+                preFedFeeders.add(feeder);
+                partFeedCounts.merge(part, 1, Integer::sum);
+                Logger.debug("Pre-fed {} from {} with {}.", new Object[] {part, feeder, nozzle});
+            }
+            catch (Exception e) {
+                Logger.warn("Pre-feed {} from {} failed, will feed before the pick: {}", part,
+                        feeder, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Choose the enabled Feeder to feed the Part from, according to the feederSelection. The
+     * Feeders of the Part come from the Machine's index, so this doesn't scan every feeder.
+     * 
+     * @param part
+     * @param nozzle
+     * @return
+     * @throws Exception If no Feeder is found that is both enabled and is serving the Part.
+     */
+    protected Feeder selectFeeder(Part part, Nozzle nozzle) throws Exception {
+        if (feederSelection == FeederSelection.First) {
+            return findFeeder(machine, part);
+        }
+        List<Feeder> feeders = new ArrayList<>();
+        for (Feeder feeder : machine.getFeeders(part)) {
+            if (feeder.isEnabled()) {
+                feeders.add(feeder);
+            }
+        }
+        if (feeders.isEmpty()) {
+            throw new Exception("No compatible, enabled feeder found for part " + part.getId());
+        }
+        if (feederSelection == FeederSelection.RoundRobin) {
+            return feeders.get(partFeedCounts.getOrDefault(part, 0) % feeders.size());
+        }
+        Location nozzleLocation = nozzle.getLocation();
+        Feeder nearest = feeders.get(0);
+        double nearestDistance = Double.MAX_VALUE;
+        for (Feeder feeder : feeders) {
+            double distance;
+            try {
+                distance = feeder.getPickLocation().getLinearDistanceTo(nozzleLocation);
+            }
+            catch (Exception e) {
+                continue;
+            }
+            if (distance < nearestDistance) {
+                nearest = feeder;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Predict the JobPlacements doPlan() will choose for the next cycle, in Nozzle order, with
+     * null for unused Nozzles. Since the nozzle tips don't change until the next cycle starts
+     * this is the same plan doPlan() will make, unless placements are skipped in the meantime.
+     * 
+     * @return
+     */
+    protected List<JobPlacement> planNextCycle() {
+        List<JobPlacement> jobPlacements = getPendingJobPlacements().stream()
+                .sorted(Comparator.comparing(JobPlacement::getPartHeight))
+                .collect(Collectors.toList());
+        if (jobPlacements.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (planningMode == PlanningMode.LookAhead) {
+            for (ReferencePnpJobPlanner.Cycle cycle : plannedCycles) {
+                if (cycle.jobPlacements.stream().anyMatch(jobPlacement -> {
+                    return jobPlacement != null && jobPlacement.status == Status.Pending;
+                })) {
+                    return cycle.jobPlacements.stream().map(jobPlacement -> {
+                        return jobPlacement != null && jobPlacement.status == Status.Pending
+                                ? jobPlacement : null;
+                    }).collect(Collectors.toList());
+                }
+            }
+        }
+        return planCycle(head.getNozzles(), jobPlacements);
     }
 
     protected void doCleanup() throws Exception {
         fireTextStatus("Cleaning up.");
 
+        // The next job feeds these again, the parts they present may be picked or cleared by
+        // hand in the meantime.
+        if (!preFedFeeders.isEmpty()) {
+            Logger.info("Feeders {} were fed ahead but not picked.", preFedFeeders);
+        }
+
+        // Back to full safe Z outside of the job
+        if (head instanceof ReferenceHead) {
+            ((ReferenceHead) head).setClearanceHeight(null);
+        }
+        boardClearanceHeight = Double.NaN;
+        listenForFeederChanges(false);
+
         // Safe Z the machine
         head.moveToSafeZ();
         
@@ -741,6 +1463,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         DecimalFormat df = new DecimalFormat("###,###.0");
         
         Logger.info("Job finished {} parts in {} sec. This is {} pph", totalPartsPlaced, df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
+        Logger.info("Travel time {} sec ({}).", df.format(totalTravelTime / 1000.0), travelMode);
     }
 
     protected void doReset() throws Exception {
@@ -792,6 +1515,86 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     public void setParkWhenComplete(boolean parkWhenComplete) {
         this.parkWhenComplete = parkWhenComplete;
     }
+
+    public PlanningMode getPlanningMode() {
+        return planningMode;
+    }
+
+    public void setPlanningMode(PlanningMode planningMode) {
+        this.planningMode = planningMode;
+    }
+
+    public double getPlanningTravelSpeed() {
+        return planningTravelSpeed;
+    }
+
+    public void setPlanningTravelSpeed(double planningTravelSpeed) {
+        this.planningTravelSpeed = planningTravelSpeed;
+    }
+
+    public TravelMode getTravelMode() {
+        return travelMode;
+    }
+
+    public void setTravelMode(TravelMode travelMode) {
+        this.travelMode = travelMode;
+    }
+
+    public FeederSelection getFeederSelection() {
+        return feederSelection;
+    }
+
+    public void setFeederSelection(FeederSelection feederSelection) {
+        this.feederSelection = feederSelection;
+    }
+
+    public Length getClearanceMargin() {
+        return clearanceMargin;
+    }
+
+    public void setClearanceMargin(Length clearanceMargin) {
+        this.clearanceMargin = clearanceMargin;
+    }
+
+    public long getAlignmentTimeoutMilliseconds() {
+        return alignmentTimeoutMilliseconds;
+    }
+
+    public void setAlignmentTimeoutMilliseconds(long alignmentTimeoutMilliseconds) {
+        this.alignmentTimeoutMilliseconds = alignmentTimeoutMilliseconds;
+    }
+
+    public boolean isRetractDuringVacuumCheck() {
+        return retractDuringVacuumCheck;
+    }
+
+    public void setRetractDuringVacuumCheck(boolean retractDuringVacuumCheck) {
+        this.retractDuringVacuumCheck = retractDuringVacuumCheck;
+    }
+
+    public double getPlanningNozzleTipChangeTime() {
+        return planningNozzleTipChangeTime;
+    }
+
+    public void setPlanningNozzleTipChangeTime(double planningNozzleTipChangeTime) {
+        this.planningNozzleTipChangeTime = planningNozzleTipChangeTime;
+    }
+
+    @Override
+    public double getEstimatedJobTime() {
+        return estimatedJobTime;
+    }
+
+    /**
+     * Get the estimated time, in seconds, of the greedy cycle by cycle plan for the current job.
+     * In Greedy mode this is the same as getEstimatedJobTime(). In LookAhead mode it can be used
+     * to compare the two plans.
+     * 
+     * @return
+     */
+    public double getEstimatedGreedyJobTime() {
+        return estimatedGreedyJobTime;
+    }
     
     public List<JobPlacement> getJobPlacementsById(String id) { 
         return jobPlacements.stream().filter((jobPlacement) -> {
@@ -804,33 +1607,4 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             return jobPlacement.toString() == id && jobPlacement.status == status;
         }).collect(Collectors.toList());
     }
-
-    // Sort a List<JobPlacement> by the number of nulls it contains in ascending order.
-    Comparator<List<JobPlacement>> byFewestNulls = (a, b) -> {
-        return Collections.frequency(a, null) - Collections.frequency(b, null);
-    };
-
-    // Sort a List<JobPlacement> by the number of nozzle changes it will require in
-    // descending order.
-    Comparator<List<JobPlacement>> byFewestNozzleChanges = (a, b) -> {
-        int countA = 0, countB = 0;
-        for (int i = 0; i < head.getNozzles().size(); i++) {
-            Nozzle nozzle = head.getNozzles().get(i);
-            JobPlacement jpA = a.get(i);
-            JobPlacement jpB = b.get(i);
-            if (nozzle.getNozzleTip() == null) {
-                countA++;
-                countB++;
-                continue;
-            }
-            if (jpA != null && !nozzle.getNozzleTip().canHandle(jpA.placement.getPart())) {
-                countA++;
-            }
-            if (jpB != null && !nozzle.getNozzleTip().canHandle(jpB.placement.getPart())) {
-                countB++;
-            }
-        }
-        return countA - countB;
-    };
-
 }
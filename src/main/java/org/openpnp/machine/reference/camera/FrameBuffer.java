@@ -0,0 +1,90 @@
+package org.openpnp.machine.reference.camera;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A small ring buffer of the most recent frames from a camera's capture thread, each with the time
+ * its capture started. Vision can then wait for the first frame that was started after some
+ * instant, such as the end of a move, instead of grabbing a new frame itself.
+ */
+public class FrameBuffer {
+    public static class Frame {
+        /**
+         * System.currentTimeMillis() when the capture of this frame started.
+         */
+        public final long time;
+        public final BufferedImage image;
+
+        public Frame(long time, BufferedImage image) {
+            this.time = time;
+            this.image = image;
+        }
+    }
+
+    private final Frame[] frames;
+
+    /**
+     * Index of the slot the next frame goes in. The newest frame is the one before it.
+     */
+    private int next;
+
+    private int count;
+
+    public FrameBuffer(int size) {
+        frames = new Frame[size];
+    }
+
+    public synchronized void add(long time, BufferedImage image) {
+        frames[next] = new Frame(time, image);
+        next = (next + 1) % frames.length;
+        count = Math.min(count + 1, frames.length);
+        notifyAll();
+    }
+
+    /**
+     * Get the newest frame, or null if there are none.
+     *
+     * @return
+     */
+    public synchronized Frame getLatest() {
+        if (count == 0) {
+            return null;
+        }
+        return frames[(next - 1 + frames.length) % frames.length];
+    }
+
+    /**
+     * Get the oldest frame whose capture started at or after time, waiting up to timeoutMs for
+     * one to arrive. Returns null if none arrives in time.
+     *
+     * @param time
+     * @param timeoutMs
+     * @return
+     * @throws InterruptedException
+     */
+    public synchronized Frame getFirstFrameAfter(long time, long timeoutMs)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            for (int i = 0; i < count; i++) {
+                Frame frame = frames[(next - count + i + frames.length) % frames.length];
+                if (frame.time >= time) {
+                    return frame;
+                }
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = null;
+        }
+        next = 0;
+        count = 0;
+    }
+}
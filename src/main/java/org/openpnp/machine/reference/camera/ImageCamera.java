@@ -166,7 +166,7 @@ public class ImageCamera extends ReferenceCamera implements Runnable {
 
     public void run() {
         while (!Thread.interrupted()) {
-            BufferedImage frame = internalCapture();
+            BufferedImage frame = captureFrame();
             broadcastCapture(frame);
             try {
                 Thread.sleep(1000 / fps);
@@ -134,7 +134,7 @@ public class OnvifIPCamera extends ReferenceCamera implements Runnable {
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
+                BufferedImage image = captureFrame();
                 if (image != null) {
                     broadcastCapture(image);
                 }
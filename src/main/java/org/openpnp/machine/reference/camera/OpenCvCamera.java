@@ -60,6 +60,7 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
     private List<OpenCvCapturePropertyValue> properties = new ArrayList<>();
 
     private VideoCapture fg = new VideoCapture();
+    private Mat frame = new Mat();
     private Thread thread;
     private boolean dirty = false;
 
@@ -67,23 +68,43 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
 
     @Override
     public synchronized BufferedImage internalCapture() {
+        Mat mat = grabAndTransform();
+        if (mat == null) {
+            return null;
+        }
+        return OpenCvUtils.toBufferedImage(mat);
+    }
+
+    /**
+     * Transforms the frame without a BufferedImage. The result is a copy that belongs to the
+     * caller.
+     */
+    @Override
+    protected synchronized Mat internalCaptureMat() {
+        Mat mat = grabAndTransform();
+        if (mat == null) {
+            return null;
+        }
+        return mat.clone();
+    }
+
+    /**
+     * Grabs into the same frame buffer every time and transforms it. The result belongs to the
+     * camera, see transformMat().
+     */
+    private Mat grabAndTransform() {
         if (thread == null) {
             initCamera();
         }
-        Mat mat = new Mat();
         try {
-            if (!fg.read(mat)) {
+            if (!fg.read(frame)) {
                 return null;
             }
-            BufferedImage img = OpenCvUtils.toBufferedImage(mat);
-            return transformImage(img);
+            return transformMat(frame);
         }
         catch (Exception e) {
             return null;
         }
-        finally {
-            mat.release();
-        }
     }
 
     @Override
@@ -97,7 +118,7 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
+                BufferedImage image = captureFrame();
                 if (image != null) {
                     broadcastCapture(image);
                 }
@@ -191,7 +191,7 @@ public class SimulatedUpCamera extends ReferenceCamera implements Runnable {
 
     public void run() {
         while (!Thread.interrupted()) {
-            BufferedImage frame = internalCapture();
+            BufferedImage frame = captureFrame();
             broadcastCapture(frame);
             try {
                 Thread.sleep(1000 / fps);
@@ -104,7 +104,7 @@ public class Webcams extends ReferenceCamera implements Runnable, WebcamImageTra
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
+                BufferedImage image = captureFrame();
                 if (image == null) {
                     image = redImage;
                 }
@@ -4,7 +4,10 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -108,6 +111,19 @@ public abstract class AbstractSerialPortDriver extends AbstractModelObject imple
     protected SerialInputStream input;
     protected OutputStream output;
 
+    /**
+     * The bytes of the last bulk read from the port, consumed from readPosition up to readLimit.
+     */
+    private byte[] readBuffer = new byte[0];
+    private int readPosition;
+    private int readLimit;
+
+    /**
+     * The bytes of the line being received. Reused for every line and grown as needed.
+     */
+    private byte[] lineBuffer = new byte[256];
+    private int lineLength;
+
     protected synchronized void connect() throws Exception {
         disconnect();
         serialPort = new SerialPort(portName);
@@ -116,6 +132,7 @@ public abstract class AbstractSerialPortDriver extends AbstractModelObject imple
         serialPort.setFlowControlMode(flowControl.mask);
         input = new SerialInputStream(serialPort);
         input.setTimeout(500);
+        readPosition = readLimit = lineLength = 0;
         output = new SerialOutputStream(serialPort);
     }
 
@@ -143,33 +160,111 @@ public abstract class AbstractSerialPortDriver extends AbstractModelObject imple
      * Read a line from the serial port. Blocks for the default timeout. If the read times out a
      * TimeoutException is thrown. Any other failure to read results in an IOExeption;
      * 
+     * Lines are trimmed and empty lines are skipped.
+     * 
      * @return
      * @throws TimeoutException
      * @throws IOException
      */
     protected String readLine() throws TimeoutException, IOException {
-        StringBuffer line = new StringBuffer();
         while (true) {
-            try {
-                int ch = input.read();
-                if (ch == -1) {
-                    return null;
-                }
-                else if (ch == '\n' || ch == '\r') {
-                    if (line.length() > 0) {
-                        return line.toString();
-                    }
-                }
-                else {
-                    line.append((char) ch);
+            String line = nextLine();
+            if (line != null) {
+                return line;
+            }
+            fillReadBuffer();
+        }
+    }
+
+    /**
+     * Read whatever is available from the serial port, waiting up to the default timeout for
+     * something to arrive, and pass each complete line to the consumer. A partial line is kept
+     * until the rest of it arrives. Lines are trimmed and empty lines are skipped. If nothing
+     * arrives a TimeoutException is thrown. Any other failure to read results in an IOExeption.
+     * 
+     * This is meant for reader threads: the port is read in bulk and the bytes are framed in
+     * reused buffers, so the only allocation per line is the line itself.
+     * 
+     * @param consumer
+     * @throws TimeoutException
+     * @throws IOException
+     */
+    protected void readLines(Consumer<String> consumer) throws TimeoutException, IOException {
+        // Deliver anything left over from a previous readLine() first.
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            consumer.accept(line);
+        }
+        fillReadBuffer();
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            consumer.accept(line);
+        }
+    }
+
+    /**
+     * Frame the next complete line from the buffered bytes, or return null if the buffered bytes
+     * run out first.
+     */
+    private String nextLine() {
+        while (readPosition < readLimit) {
+            byte b = readBuffer[readPosition++];
+            if (b == '\n' || b == '\r') {
+                String line = takeLine();
+                if (line != null) {
+                    return line;
                 }
             }
-            catch (IOException ex) {
-                if (ex.getCause() instanceof SerialPortTimeoutException) {
-                    throw new TimeoutException(ex.getMessage());
+            else {
+                if (lineLength == lineBuffer.length) {
+                    lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
                 }
-                throw ex;
+                lineBuffer[lineLength++] = b;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the trimmed contents of the line buffer, or null if it's blank, and clear it.
+     */
+    private String takeLine() {
+        int start = 0;
+        int end = lineLength;
+        lineLength = 0;
+        while (start < end && (lineBuffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (lineBuffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        return new String(lineBuffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Replace the read buffer with everything that is available on the port, waiting up to the
+     * default timeout for at least one byte.
+     */
+    private void fillReadBuffer() throws TimeoutException, IOException {
+        readBuffer = readAvailable();
+        readPosition = 0;
+        readLimit = readBuffer.length;
+    }
+
+    /**
+     * Read everything that is available on the port, waiting up to the default timeout for at
+     * least one byte. If nothing arrives a TimeoutException is thrown.
+     */
+    protected byte[] readAvailable() throws TimeoutException, IOException {
+        try {
+            return input.readAvailable();
+        }
+        catch (IOException ex) {
+            if (ex.getCause() instanceof SerialPortTimeoutException) {
+                throw new TimeoutException(ex.getMessage());
             }
+            throw ex;
         }
     }
 
@@ -338,15 +433,39 @@ public abstract class AbstractSerialPortDriver extends AbstractModelObject imple
          * @throws IOException On serial port error or timeout
          */
         public int read(int timeout) throws IOException {
-            byte[] buf = new byte[1];
             try {
+                byte[] buf;
                 if (timeout > 0) {
                     buf = serialPort.readBytes(1, timeout);
                 }
                 else {
                     buf = serialPort.readBytes(1);
                 }
-                return buf[0];
+                return buf[0] & 0xff;
+            }
+            catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Read everything that is currently available on the port in one call. If nothing is
+         * available, blocks until at least one byte arrives or the default timeout is hit, as
+         * {@link #read()} does.
+         * 
+         * @return The bytes read, at least one.
+         * @throws IOException On serial port error or timeout
+         */
+        public byte[] readAvailable() throws IOException {
+            try {
+                int available = serialPort.getInputBufferBytesCount();
+                if (available > 0) {
+                    return serialPort.readBytes(available);
+                }
+                if (defaultTimeout > 0) {
+                    return serialPort.readBytes(1, defaultTimeout);
+                }
+                return serialPort.readBytes(1);
             }
             catch (Exception e) {
                 throw new IOException(e);
@@ -2,12 +2,20 @@ package org.openpnp.machine.reference.driver;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -64,6 +72,7 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         PUMP_OFF_COMMAND,
         MOVE_TO_COMMAND(true, "Id", "Name", "FeedRate", "X", "Y", "Z", "Rotation"),
         MOVE_TO_COMPLETE_REGEX(true),
+        MOVE_TO_COMPLETE_COMMAND,
         PICK_COMMAND(true, "Id", "Name", "VacuumLevelPartOn", "VacuumLevelPartOff"),
         PLACE_COMMAND(true, "Id", "Name"),
         ACTUATE_BOOLEAN_COMMAND(true, "Id", "Name", "Index", "BooleanValue", "True", "False"),
@@ -109,6 +118,17 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         @ElementList(required = false, inline = true, entry = "text", data = true)
         public ArrayList<String> commands = new ArrayList<>();
 
+        /**
+         * The parsed command, created when first needed and cleared by setCommand().
+         */
+        private GcodeTemplate template;
+
+        /**
+         * The compiled regex, for the regex command types. Created when first needed and cleared
+         * by setCommand().
+         */
+        private Pattern pattern;
+
         public Command(String headMountableId, CommandType type, String text) {
             this.headMountableId = headMountableId;
             this.type = type;
@@ -116,6 +136,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         }
 
         public void setCommand(String text) {
+            this.template = null;
+            this.pattern = null;
             this.commands.clear();
             if (text != null) {
                 text = text.trim();
@@ -129,6 +151,20 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             return Joiner.on('\n').join(commands);
         }
 
+        public GcodeTemplate getTemplate() {
+            if (template == null) {
+                template = new GcodeTemplate(getCommand());
+            }
+            return template;
+        }
+
+        public Pattern getPattern() {
+            if (pattern == null) {
+                pattern = Pattern.compile(getCommand());
+            }
+            return pattern;
+        }
+
         private Command() {
 
         }
@@ -158,6 +194,32 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     @Attribute(required = false)
     protected int connectWaitTimeMilliseconds = 1000;
 
+    /**
+     * When streaming, moves are sent without waiting for their confirmation so that the
+     * controller's planner can see several segments at once. The driver only waits for the moves
+     * to complete when something needs the machine to be in position, such as a pick, an
+     * actuator or a camera capture. MOVE_TO_COMMAND should not wait for the move to finish (no
+     * M400) when streaming; MOVE_TO_COMPLETE_COMMAND is used for that instead, and must be set.
+     * If MOVE_TO_COMPLETE_REGEX is set it is matched against the responses to
+     * MOVE_TO_COMPLETE_COMMAND.
+     */
+    @Attribute(required = false)
+    protected boolean streaming = false;
+
+    /**
+     * The maximum number of streamed commands that may be waiting for a confirmation.
+     */
+    @Attribute(required = false)
+    protected int streamingWindow = 4;
+
+    /**
+     * If greater than 0, the size of the controller's receive buffer in characters. Streamed
+     * commands are then also limited so that the unconfirmed characters fit the buffer, as
+     * required by GRBL's character counting protocol.
+     */
+    @Attribute(required = false)
+    protected int streamingBufferSize = 0;
+
     @Element(required = false)
     protected Location homingFiducialLocation = new Location(LengthUnit.Millimeters);
 
@@ -173,9 +235,21 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     private Thread readerThread;
     private boolean disconnectRequested;
     private boolean connected;
-    private LinkedBlockingQueue<String> responseQueue = new LinkedBlockingQueue<>();
+    protected LinkedBlockingQueue<String> responseQueue = new LinkedBlockingQueue<>();
     private Set<Nozzle> pickedNozzles = new HashSet<>();
     private GcodeDriver parent = null;
+    /**
+     * The length, including the line ending, of each streamed command that has not been confirmed
+     * yet. Confirmations arrive in order so the oldest is first. Guarded, along with
+     * streamedCharacters, by synchronizing on streamedCommands.
+     */
+    private final ArrayDeque<Integer> streamedCommands = new ArrayDeque<>();
+    private int streamedCharacters;
+    /**
+     * Commands sent by the Async methods that have not been confirmed yet, oldest first. The
+     * reader thread hands responses to the oldest one and completes it when it's confirmed.
+     */
+    private ConcurrentLinkedDeque<PendingCommand> pendingCommands = new ConcurrentLinkedDeque<>();
     
     @Commit
     public void commit() {
@@ -202,6 +276,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         super.connect();
 
         connected = false;
+        clearStreamedCommands();
+        failPendingCommands(new Exception("Driver connection was reset."));
         readerThread = new Thread(this);
         readerThread.setDaemon(true);
         readerThread.start();
@@ -249,12 +325,14 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
 
     @Override
     public void home(ReferenceHead head) throws Exception {
+        waitForCompletion();
+
         // Home is sent with an infinite timeout since it's tough to tell how long it will
         // take.
-        String command = getCommand(null, CommandType.HOME_COMMAND);
-        command = substituteVariable(command, "Id", head.getId());
-        command = substituteVariable(command, "Name", head.getName());
-        sendGcode(command, -1);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", head.getId());
+        variables.put("Name", head.getName());
+        sendGcode(renderCommand(null, CommandType.HOME_COMMAND, variables), -1);
 
         for (Axis axis : axes) {
             axis.setCoordinate(axis.getHomeCoordinate());
@@ -290,10 +368,10 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
                 }
             }
 
-            String g92command = getCommand(null, CommandType.POST_VISION_HOME_COMMAND);
-            g92command = substituteVariable(g92command, "X", xHomeCoordinate);
-            g92command = substituteVariable(g92command, "Y", yHomeCoordinate);
-            sendGcode(g92command, -1);
+            Map<String, Object> g92Variables = new HashMap<>();
+            g92Variables.put("X", xHomeCoordinate);
+            g92Variables.put("Y", yHomeCoordinate);
+            sendGcode(renderCommand(null, CommandType.POST_VISION_HOME_COMMAND, g92Variables), -1);
 
         }
     }
@@ -340,6 +418,31 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return c.getCommand();
     }
 
+    /**
+     * Get the compiled regex for the given regex command type, or null if it is not set. The
+     * Pattern is cached until the command is changed with setCommand().
+     */
+    public Pattern getPattern(HeadMountable hm, CommandType type) {
+        Command c = getCommand(hm, type, true);
+        if (c == null) {
+            return null;
+        }
+        return c.getPattern();
+    }
+
+    /**
+     * Render the given command type with the given variables, or return null if it is not set.
+     * See GcodeTemplate for how the variables are substituted.
+     */
+    public String renderCommand(HeadMountable hm, CommandType type,
+            Map<String, Object> variables) {
+        Command c = getCommand(hm, type, true);
+        if (c == null) {
+            return null;
+        }
+        return c.getTemplate().render(variables);
+    }
+
     public void setCommand(HeadMountable hm, CommandType type, String text) {
         Command c = getCommand(hm, type, false);
         if (text == null || text.trim().length() == 0) {
@@ -395,9 +498,165 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     @Override
     public void moveTo(ReferenceHeadMountable hm, Location location, double speed)
             throws Exception {
-        // keep copy for calling subdrivers as to not add offset on offset
-        Location locationOriginal = location;
+        Move move = createMove(hm, location, speed);
+        if (move != null) {
+            List<String> responses = new ArrayList<>();
+            for (String gcode : move.gcode) {
+                responses = sendMoveGcode(gcode);
+            }
+
+            waitForMoveToComplete(hm, responses);
+
+            // And save the final values on the axes.
+            move.apply();
+        }
+
+        // regardless of any action above the subdriver needs its actions based on original input
+        for (ReferenceDriver driver : subDrivers) {
+            driver.moveTo(hm, location, speed);
+        }
+    }
+
+    /**
+     * Writes the Gcode for all of the moves before waiting for any of them to be confirmed, so the
+     * whole set costs about one round trip to the controller instead of one per HeadMountable. If
+     * two of the HeadMountables need a shared axis in different places the moves can't be made
+     * together and are made one after another instead.
+     */
+    @Override
+    public void moveTo(Map<ReferenceHeadMountable, Location> locations, double speed)
+            throws Exception {
+        Map<ReferenceHeadMountable, Move> moves = new LinkedHashMap<>();
+        Map<Axis, Double> coordinates = new HashMap<>();
+        for (Map.Entry<ReferenceHeadMountable, Location> entry : locations.entrySet()) {
+            Move move = createMove(entry.getKey(), entry.getValue(), speed);
+            if (move == null) {
+                continue;
+            }
+            for (Map.Entry<Axis, Double> coordinate : move.coordinates.entrySet()) {
+                Double other = coordinates.put(coordinate.getKey(), coordinate.getValue());
+                if (other != null && !other.equals(coordinate.getValue())) {
+                    super.moveTo(locations, speed);
+                    return;
+                }
+            }
+            moves.put(entry.getKey(), move);
+        }
+
+        if (streaming) {
+            for (Move move : moves.values()) {
+                for (String gcode : move.gcode) {
+                    sendMoveGcode(gcode);
+                }
+            }
+        }
+        else if (!moves.isEmpty()) {
+            Map<ReferenceHeadMountable, List<CompletableFuture<List<String>>>> futures =
+                    new LinkedHashMap<>();
+            for (Map.Entry<ReferenceHeadMountable, Move> entry : moves.entrySet()) {
+                List<CompletableFuture<List<String>>> hmFutures = new ArrayList<>();
+                for (String gcode : entry.getValue().gcode) {
+                    hmFutures.add(sendGcodeAsync(gcode));
+                }
+                futures.put(entry.getKey(), hmFutures);
+            }
+            for (ReferenceHeadMountable hm : futures.keySet()) {
+                List<String> responses = new ArrayList<>();
+                for (CompletableFuture<List<String>> future : futures.get(hm)) {
+                    responses.addAll(await(future));
+                }
+                waitForMoveToComplete(hm, responses);
+            }
+        }
+
+        for (Move move : moves.values()) {
+            move.apply();
+        }
 
+        for (ReferenceDriver driver : subDrivers) {
+            driver.moveTo(locations, speed);
+        }
+    }
+
+    /**
+     * If moveToCompleteRegex is specified we need to wait until we match the regex in a response
+     * before continuing. We first search the initial responses from the command for the regex. If
+     * it's not found we then collect responses for up to timeoutMillis while searching the
+     * responses for the regex. As soon as it is matched we continue. If it's not matched within
+     * the timeout we throw an Exception. When streaming the move is not waited for here, see
+     * waitForCompletion().
+     */
+    private void waitForMoveToComplete(ReferenceHeadMountable hm, List<String> responses)
+            throws Exception {
+        if (!streaming) {
+            waitForMoveToCompleteRegex(hm, responses);
+        }
+    }
+
+    private void waitForMoveToCompleteRegex(ReferenceHeadMountable hm, List<String> responses)
+            throws Exception {
+        Pattern moveToCompleteRegex = getPattern(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
+        if (moveToCompleteRegex != null) {
+            if (!containsMatch(responses, moveToCompleteRegex)) {
+                long t = System.currentTimeMillis();
+                boolean done = false;
+                while (!done && System.currentTimeMillis() - t < timeoutMilliseconds) {
+                    done = containsMatch(sendCommand(null, 250), moveToCompleteRegex);
+                }
+                if (!done) {
+                    throw new Exception("Timed out waiting for move to complete.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the move without waiting for it to finish; MOVE_TO_COMPLETE_REGEX is not used. The
+     * axes take the new coordinates as soon as the move is sent.
+     */
+    @Override
+    public CompletableFuture<Void> moveToAsync(ReferenceHeadMountable hm, Location location,
+            double speed) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        try {
+            Move move = createMove(hm, location, speed);
+            if (move != null) {
+                for (String gcode : move.gcode) {
+                    futures.add(sendGcodeAsync(gcode));
+                }
+                move.apply();
+            }
+        }
+        catch (Exception e) {
+            futures.add(failedFuture(e));
+        }
+        for (ReferenceDriver driver : subDrivers) {
+            futures.add(driver.moveToAsync(hm, location, speed));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    /**
+     * The Gcode for a move, in the order it must be sent, and the coordinates the axes will have
+     * once it's done.
+     */
+    private static class Move {
+        final List<String> gcode = new ArrayList<>();
+        final Map<Axis, Double> coordinates = new HashMap<>();
+
+        void apply() {
+            for (Map.Entry<Axis, Double> entry : coordinates.entrySet()) {
+                entry.getKey().setCoordinate(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Create the Gcode to move the HeadMountable to the Location, or return null if none of this
+     * driver's axes need to move.
+     */
+    private Move createMove(ReferenceHeadMountable hm, Location location, double speed)
+            throws Exception {
         location = location.convertToUnits(units);
         location = location.subtract(hm.getHeadOffsets());
 
@@ -444,11 +703,13 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
                 rotation = rotationAxis.getTransform().toRaw(rotationAxis, hm, rotation);
             }
 
-            String command = getCommand(hm, CommandType.MOVE_TO_COMMAND);
-            command = substituteVariable(command, "Id", hm.getId());
-            command = substituteVariable(command, "Name", hm.getName());
-            command = substituteVariable(command, "FeedRate", maxFeedRate * speed);
-            command = substituteVariable(command, "BacklashFeedRate", maxFeedRate * speed * backlashFeedRateFactor);
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("Id", hm.getId());
+            variables.put("Name", hm.getName());
+            variables.put("FeedRate", maxFeedRate * speed);
+            variables.put("BacklashFeedRate", maxFeedRate * speed * backlashFeedRateFactor);
+
+            Move move = new Move();
 
             /**
              * NSF gets applied to X and is multiplied by Y
@@ -478,105 +739,76 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             }
             
             if (includeX) {
-                command = substituteVariable(command, "X", x + nonSquarenessFactor * y);
-                command = substituteVariable(command, "BacklashOffsetX", x + backlashOffsetX + nonSquarenessFactor * y); // Backlash Compensation
+                variables.put("X", x + nonSquarenessFactor * y);
+                variables.put("BacklashOffsetX", x + backlashOffsetX + nonSquarenessFactor * y); // Backlash Compensation
                 if (xAxis.getPreMoveCommand() != null) {
-                    sendGcode(xAxis.getPreMoveCommand());
+                    move.gcode.add(xAxis.getPreMoveCommand());
                 }
-                xAxis.setCoordinate(x);
             }
             else {
-                command = substituteVariable(command, "X", null);
-                command = substituteVariable(command, "BacklashOffsetX", null); // Backlash Compensation
+                variables.put("X", null);
+                variables.put("BacklashOffsetX", null); // Backlash Compensation
             }
 
             if (includeY) {
-                command = substituteVariable(command, "Y", y);
-                command = substituteVariable(command, "BacklashOffsetY", y + backlashOffsetY); // Backlash Compensation
+                variables.put("Y", y);
+                variables.put("BacklashOffsetY", y + backlashOffsetY); // Backlash Compensation
                 if (yAxis.getPreMoveCommand() != null) {
-                    sendGcode(yAxis.getPreMoveCommand());
+                    move.gcode.add(yAxis.getPreMoveCommand());
                 }
             }
             else {
-                command = substituteVariable(command, "Y", null);
-                command = substituteVariable(command, "BacklashOffsetY", null); // Backlash Compensation
+                variables.put("Y", null);
+                variables.put("BacklashOffsetY", null); // Backlash Compensation
             }
 
             if (includeZ) {
-                command = substituteVariable(command, "Z", z);
+                variables.put("Z", z);
                 if (zAxis.getPreMoveCommand() != null) {
-                    sendGcode(zAxis.getPreMoveCommand());
+                    move.gcode.add(zAxis.getPreMoveCommand());
                 }
             }
             else {
-                command = substituteVariable(command, "Z", null);
+                variables.put("Z", null);
             }
 
             if (includeRotation) {
-                command = substituteVariable(command, "Rotation", rotation);
+                variables.put("Rotation", rotation);
                 if (rotationAxis.getPreMoveCommand() != null) {
-                    sendGcode(rotationAxis.getPreMoveCommand());
+                    move.gcode.add(rotationAxis.getPreMoveCommand());
                 }
             }
             else {
-                command = substituteVariable(command, "Rotation", null);
+                variables.put("Rotation", null);
             }
 
             // Only give a command when move is necessary
             if (includeX || includeY || includeZ || includeRotation) {
+                move.gcode.add(renderCommand(hm, CommandType.MOVE_TO_COMMAND, variables));
 
-                List<String> responses = sendGcode(command);
-
-                /*
-                 * If moveToCompleteRegex is specified we need to wait until we match the regex in a
-                 * response before continuing. We first search the initial responses from the
-                 * command for the regex. If it's not found we then collect responses for up to
-                 * timeoutMillis while searching the responses for the regex. As soon as it is
-                 * matched we continue. If it's not matched within the timeout we throw an
-                 * Exception.
-                 */
-                String moveToCompleteRegex = getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
-                if (moveToCompleteRegex != null) {
-                    if (!containsMatch(responses, moveToCompleteRegex)) {
-                        long t = System.currentTimeMillis();
-                        boolean done = false;
-                        while (!done && System.currentTimeMillis() - t < timeoutMilliseconds) {
-                            done = containsMatch(sendCommand(null, 250), moveToCompleteRegex);
-                        }
-                        if (!done) {
-                            throw new Exception("Timed out waiting for move to complete.");
-                        }
-                    }
-                }
-
-                // And save the final values on the axes.
                 if (xAxis != null) {
-                    xAxis.setCoordinate(x);
+                    move.coordinates.put(xAxis, x);
                 }
                 if (yAxis != null) {
-                    yAxis.setCoordinate(y);
+                    move.coordinates.put(yAxis, y);
                 }
                 if (zAxis != null) {
-                    zAxis.setCoordinate(z);
+                    move.coordinates.put(zAxis, z);
                 }
                 if (rotationAxis != null) {
-                    rotationAxis.setCoordinate(rotation);
+                    move.coordinates.put(rotationAxis, rotation);
                 }
-
+                return move;
             } // there is a move
 
         } // there were axes involved
 
-        // regardless of any action above the subdriver needs its actions based on original input
-        for (ReferenceDriver driver : subDrivers) {
-            driver.moveTo(hm, locationOriginal, speed);
-        }
-
+        return null;
     }
 
-    private boolean containsMatch(List<String> responses, String regex) {
+    private boolean containsMatch(List<String> responses, Pattern regex) {
         for (String response : responses) {
-            if (response.matches(regex)) {
+            if (regex.matcher(response).matches()) {
                 return true;
             }
         }
@@ -585,85 +817,153 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
 
     @Override
     public void pick(ReferenceNozzle nozzle) throws Exception {
+        waitForCompletion();
+
+        sendGcode(createPickGcode(nozzle));
+
+        for (ReferenceDriver driver : subDrivers) {
+            driver.pick(nozzle);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> pickAsync(ReferenceNozzle nozzle) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(sendGcodeAsync(createPickGcode(nozzle)));
+        for (ReferenceDriver driver : subDrivers) {
+            futures.add(driver.pickAsync(nozzle));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    private String createPickGcode(ReferenceNozzle nozzle) {
+        List<String> gcode = new ArrayList<>();
         pickedNozzles.add(nozzle);
         if (pickedNozzles.size() > 0) {
-            sendGcode(getCommand(nozzle, CommandType.PUMP_ON_COMMAND));
+            gcode.add(getCommand(nozzle, CommandType.PUMP_ON_COMMAND));
         }
 
-        String command = getCommand(nozzle, CommandType.PICK_COMMAND);
-        command = substituteVariable(command, "Id", nozzle.getId());
-        command = substituteVariable(command, "Name", nozzle.getName());
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", nozzle.getId());
+        variables.put("Name", nozzle.getName());
 
         ReferenceNozzleTip nt = nozzle.getNozzleTip();
-        command = substituteVariable(command, "VacuumLevelPartOn", nt.getVacuumLevelPartOn());
-        command = substituteVariable(command, "VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+        variables.put("VacuumLevelPartOn", nt.getVacuumLevelPartOn());
+        variables.put("VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+
+        gcode.add(renderCommand(nozzle, CommandType.PICK_COMMAND, variables));
+        return joinGcode(gcode);
+    }
+
+    @Override
+    public void place(ReferenceNozzle nozzle) throws Exception {
+        waitForCompletion();
 
-        sendGcode(command);
+        sendGcode(createPlaceGcode(nozzle));
 
         for (ReferenceDriver driver : subDrivers) {
-            driver.pick(nozzle);
+            driver.place(nozzle);
         }
     }
 
     @Override
-    public void place(ReferenceNozzle nozzle) throws Exception {
+    public CompletableFuture<Void> placeAsync(ReferenceNozzle nozzle) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(sendGcodeAsync(createPlaceGcode(nozzle)));
+        for (ReferenceDriver driver : subDrivers) {
+            futures.add(driver.placeAsync(nozzle));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
 
+    private String createPlaceGcode(ReferenceNozzle nozzle) {
+        List<String> gcode = new ArrayList<>();
         ReferenceNozzleTip nt = nozzle.getNozzleTip();
 
-        String command = getCommand(nozzle, CommandType.PLACE_COMMAND);
-        command = substituteVariable(command, "Id", nozzle.getId());
-        command = substituteVariable(command, "Name", nozzle.getName());
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", nozzle.getId());
+        variables.put("Name", nozzle.getName());
 
-        command = substituteVariable(command, "VacuumLevelPartOn", nt.getVacuumLevelPartOn());
-        command = substituteVariable(command, "VacuumLevelPartOff", nt.getVacuumLevelPartOff());
-        sendGcode(command);
+        variables.put("VacuumLevelPartOn", nt.getVacuumLevelPartOn());
+        variables.put("VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+        gcode.add(renderCommand(nozzle, CommandType.PLACE_COMMAND, variables));
 
         pickedNozzles.remove(nozzle);
         if (pickedNozzles.size() < 1) {
-            sendGcode(getCommand(nozzle, CommandType.PUMP_OFF_COMMAND));
-        }
-
-        for (ReferenceDriver driver : subDrivers) {
-            driver.place(nozzle);
+            gcode.add(getCommand(nozzle, CommandType.PUMP_OFF_COMMAND));
         }
+        return joinGcode(gcode);
     }
 
-
     @Override
     public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND);
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
-        command = substituteVariable(command, "BooleanValue", on);
-        command = substituteVariable(command, "True", on ? on : null);
-        command = substituteVariable(command, "False", on ? null : on);
-        sendGcode(command);
+        waitForCompletion();
+
+        sendGcode(createActuateGcode(actuator, on));
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, on);
         }
     }
 
+    @Override
+    public CompletableFuture<Void> actuateAsync(ReferenceActuator actuator, boolean on) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(sendGcodeAsync(createActuateGcode(actuator, on)));
+        for (ReferenceDriver driver : subDrivers) {
+            futures.add(driver.actuateAsync(actuator, on));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    private String createActuateGcode(ReferenceActuator actuator, boolean on) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", actuator.getId());
+        variables.put("Name", actuator.getName());
+        variables.put("Index", actuator.getIndex());
+        variables.put("BooleanValue", on);
+        variables.put("True", on ? on : null);
+        variables.put("False", on ? null : on);
+        return renderCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND, variables);
+    }
+
     @Override
     public void actuate(ReferenceActuator actuator, double value) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATE_DOUBLE_COMMAND);
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
-        command = substituteVariable(command, "DoubleValue", value);
-        command = substituteVariable(command, "IntegerValue", (int) value);
-        sendGcode(command);
+        waitForCompletion();
+
+        sendGcode(createActuateGcode(actuator, value));
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, value);
         }
     }
+
+    @Override
+    public CompletableFuture<Void> actuateAsync(ReferenceActuator actuator, double value) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(sendGcodeAsync(createActuateGcode(actuator, value)));
+        for (ReferenceDriver driver : subDrivers) {
+            futures.add(driver.actuateAsync(actuator, value));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    private String createActuateGcode(ReferenceActuator actuator, double value) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", actuator.getId());
+        variables.put("Name", actuator.getName());
+        variables.put("Index", actuator.getIndex());
+        variables.put("DoubleValue", value);
+        variables.put("IntegerValue", (int) value);
+        return renderCommand(actuator, CommandType.ACTUATE_DOUBLE_COMMAND, variables);
+    }
     
     @Override
     public String actuatorRead(ReferenceActuator actuator) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND);
-        String regex = getCommand(actuator, CommandType.ACTUATOR_READ_REGEX);
+        waitForCompletion();
+
+        Command command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, true);
+        Pattern regex = getPattern(actuator, CommandType.ACTUATOR_READ_REGEX);
         if (command == null || regex == null) {
             // If the command or regex is null we'll query the subdrivers. The first
             // to respond with a non-null value wins.
@@ -678,17 +978,44 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             return null;
         }
 
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
+        List<String> responses = sendGcode(createActuatorReadGcode(actuator, command));
+        return parseActuatorRead(actuator, regex, responses);
+    }
+
+    @Override
+    public CompletableFuture<String> actuatorReadAsync(ReferenceActuator actuator) {
+        Command command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, true);
+        Pattern regex = getPattern(actuator, CommandType.ACTUATOR_READ_REGEX);
+        if (command == null || regex == null) {
+            // Reading from the subdrivers depends on which one answers first, so do it the
+            // blocking way.
+            return super.actuatorReadAsync(actuator);
+        }
+        return sendGcodeAsync(createActuatorReadGcode(actuator, command))
+                .thenApply(responses -> {
+                    try {
+                        return parseActuatorRead(actuator, regex, responses);
+                    }
+                    catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
 
-        List<String> responses = sendGcode(command);
+    private String createActuatorReadGcode(ReferenceActuator actuator, Command command) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", actuator.getId());
+        variables.put("Name", actuator.getName());
+        variables.put("Index", actuator.getIndex());
+        return command.getTemplate().render(variables);
+    }
 
+    private String parseActuatorRead(ReferenceActuator actuator, Pattern regex,
+            List<String> responses) throws Exception {
         for (String line : responses) {
-            if (line.matches(regex)) {
+            Matcher matcher = regex.matcher(line);
+            if (matcher.matches()) {
                 Logger.trace("actuatorRead response: {}", line);
-                Matcher matcher = Pattern.compile(regex).matcher(line);
-                matcher.matches();
 
                 try {
                     String s = matcher.group("Value");
@@ -703,9 +1030,18 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return null;
     }
 
+    /**
+     * Join the non-null commands into a single multi-line command.
+     */
+    private static String joinGcode(List<String> gcode) {
+        return Joiner.on('\n').skipNulls().join(gcode);
+    }
+
     public synchronized void disconnect() {
         disconnectRequested = true;
         connected = false;
+        clearStreamedCommands();
+        failPendingCommands(new Exception("Driver connection was reset."));
 
         try {
             if (readerThread != null && readerThread.isAlive()) {
@@ -760,6 +1096,13 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     public List<String> sendCommand(String command, long timeout) throws Exception {
         List<String> responses = new ArrayList<>();
 
+        // Responses to asynchronous commands go to those commands, so wait for them to finish.
+        waitForAsyncCommands();
+
+        // Collect the confirmations of any streamed commands first, so that they are not
+        // mistaken for the confirmation of this one.
+        responses.addAll(receiveStreamedConfirmations(0));
+
         // Read any responses that might be queued up so that when we wait
         // for a response to a command we actually wait for the one we expect.
         responseQueue.drainTo(responses);
@@ -778,6 +1121,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         if (timeout == -1) {
             timeout = Long.MAX_VALUE;
         }
+        Pattern confirmRegex = getPattern(null, CommandType.COMMAND_CONFIRM_REGEX);
+        Pattern errorRegex = getPattern(null, CommandType.COMMAND_ERROR_REGEX);
         long t = System.currentTimeMillis();
         boolean found = false;
         boolean foundError = false;
@@ -795,13 +1140,13 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             // Store the response that was received
             responses.add(response);
             // If the response is an ok or error we're done
-            if (response.matches(getCommand(null, CommandType.COMMAND_CONFIRM_REGEX))) {
+            if (confirmRegex.matcher(response).matches()) {
                 found = true;
                 break;
             }
 
-            if (getCommand(null, CommandType.COMMAND_ERROR_REGEX) != null) {
-                if (response.matches(getCommand(null, CommandType.COMMAND_ERROR_REGEX))) {
+            if (errorRegex != null) {
+                if (errorRegex.matcher(response).matches()) {
                     foundError = true;
                     errorResponse = response;
                     break;
@@ -824,11 +1169,276 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return responses;
     }
 
+    /**
+     * Send the Gcode without waiting for it to be confirmed. Each line becomes a pending command
+     * whose responses are collected by the reader thread. The returned future completes with all
+     * of the responses once every line is confirmed, or completes exceptionally if the
+     * controller raises an error.
+     * 
+     * @param gCode
+     * @return
+     */
+    protected CompletableFuture<List<String>> sendGcodeAsync(String gCode) {
+        if (gCode == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        List<PendingCommand> commands = new ArrayList<>();
+        try {
+            // Streamed confirmations are read from the response queue, so they must all be in
+            // before the reader thread starts handing responses to pending commands.
+            receiveStreamedConfirmations(0);
+            for (String command : gCode.split("\n")) {
+                command = command.trim();
+                if (command.length() == 0) {
+                    continue;
+                }
+                PendingCommand pendingCommand = new PendingCommand(command);
+                // The pending commands must be in the same order as they are written.
+                synchronized (pendingCommands) {
+                    Logger.trace("[{}] >> {} (async, {} pending)", portName, command,
+                            pendingCommands.size());
+                    pendingCommands.add(pendingCommand);
+                    output.write(command.getBytes());
+                    output.write("\n".getBytes());
+                }
+                commands.add(pendingCommand);
+            }
+        }
+        catch (Exception e) {
+            return failedFuture(e);
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture[commands.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = commands.get(i).future;
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            List<String> responses = new ArrayList<>();
+            for (PendingCommand command : commands) {
+                responses.addAll(command.responses);
+            }
+            return responses;
+        });
+    }
+
+    /**
+     * Called by the reader thread. If an asynchronous command is waiting for its confirmation the
+     * line is a response to it.
+     * 
+     * @param line
+     * @return true if the line was handed to a pending command.
+     */
+    protected boolean processAsyncResponse(String line) {
+        PendingCommand command = pendingCommands.peek();
+        if (command == null) {
+            return false;
+        }
+        command.responses.add(line);
+        Pattern confirmRegex = getPattern(null, CommandType.COMMAND_CONFIRM_REGEX);
+        Pattern errorRegex = getPattern(null, CommandType.COMMAND_ERROR_REGEX);
+        if (confirmRegex.matcher(line).matches()) {
+            pendingCommands.poll();
+            command.future.complete(command.responses);
+        }
+        else if (errorRegex != null && errorRegex.matcher(line).matches()) {
+            pendingCommands.poll();
+            command.future.completeExceptionally(
+                    new Exception("Controller raised an error: " + line));
+        }
+        return true;
+    }
+
+    /**
+     * Wait for every pending asynchronous command to be confirmed. Errors are left to the futures
+     * of the commands that caused them. If the commands are not confirmed within the timeout
+     * they are failed and forgotten, and an Exception is thrown.
+     * 
+     * @throws Exception
+     */
+    protected void waitForAsyncCommands() throws Exception {
+        PendingCommand last = pendingCommands.peekLast();
+        if (last == null) {
+            return;
+        }
+        try {
+            last.future.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e) {
+            // Confirmations arrive in order, so once the last command is done they all are.
+        }
+        catch (TimeoutException e) {
+            Exception timeout = new Exception("Timeout waiting for response to " + last.command);
+            failPendingCommands(timeout);
+            throw timeout;
+        }
+    }
+
+    /**
+     * Wait for an asynchronous command and return its result, or throw the Exception it failed
+     * with. If it isn't done within the timeout all pending commands are failed.
+     */
+    @Override
+    public <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        catch (TimeoutException e) {
+            Exception timeout = new Exception("Timeout waiting for response to async command.");
+            failPendingCommands(timeout);
+            throw timeout;
+        }
+    }
+
+    private void failPendingCommands(Exception e) {
+        PendingCommand command;
+        while ((command = pendingCommands.poll()) != null) {
+            command.future.completeExceptionally(e);
+        }
+    }
+
+    static <T> CompletableFuture<T> failedFuture(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static class PendingCommand {
+        final String command;
+        final List<String> responses = new ArrayList<>();
+        final CompletableFuture<List<String>> future = new CompletableFuture<>();
+
+        PendingCommand(String command) {
+            this.command = command;
+        }
+    }
+
+    /**
+     * Send a move related command. When streaming the command is sent without waiting for its
+     * confirmation and no responses are returned.
+     */
+    protected List<String> sendMoveGcode(String gCode) throws Exception {
+        if (!streaming) {
+            return sendGcode(gCode);
+        }
+        if (gCode != null) {
+            for (String command : gCode.split("\n")) {
+                command = command.trim();
+                if (command.length() == 0) {
+                    continue;
+                }
+                streamCommand(command);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Write a command without waiting for its confirmation. If the streaming window, or the
+     * controller's receive buffer, is full this first waits for the oldest commands to be
+     * confirmed. Refuses to stream if MOVE_TO_COMPLETE_COMMAND is not set, since there would be
+     * no way to know when the moves are done.
+     */
+    protected void streamCommand(String command) throws Exception {
+        if (getCommand(null, CommandType.MOVE_TO_COMPLETE_COMMAND) == null) {
+            throw new Exception("Streaming requires a MOVE_TO_COMPLETE_COMMAND, such as M400, "
+                    + "to know when the moves are done.");
+        }
+
+        waitForAsyncCommands();
+
+        int length = command.length() + 1;
+        int window = Math.max(1, streamingWindow);
+        synchronized (streamedCommands) {
+            while (streamedCommands.size() >= window || (streamingBufferSize > 0
+                    && !streamedCommands.isEmpty()
+                    && streamedCharacters + length > streamingBufferSize)) {
+                receiveStreamedConfirmations(streamedCommands.size() - 1);
+            }
+
+            Logger.trace("[{}] >> {} (streamed, {} unconfirmed)", portName, command,
+                    streamedCommands.size());
+            output.write(command.getBytes());
+            output.write("\n".getBytes());
+            streamedCommands.add(length);
+            streamedCharacters += length;
+        }
+    }
+
+    /**
+     * Wait until no more than the given number of streamed commands are unconfirmed. Each
+     * confirmation frees the oldest command's slot in the window. If the controller raises an
+     * error for a streamed command, or a confirmation times out, the streamed commands are
+     * forgotten and an Exception is thrown, since the state of the controller is no longer
+     * known.
+     * 
+     * @param remaining
+     * @return The responses that were received while waiting.
+     * @throws Exception
+     */
+    protected List<String> receiveStreamedConfirmations(int remaining) throws Exception {
+        List<String> responses = new ArrayList<>();
+        Pattern confirmRegex = getPattern(null, CommandType.COMMAND_CONFIRM_REGEX);
+        Pattern errorRegex = getPattern(null, CommandType.COMMAND_ERROR_REGEX);
+        synchronized (streamedCommands) {
+            while (streamedCommands.size() > remaining) {
+                String response = responseQueue.poll(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    clearStreamedCommands();
+                    throw new Exception("Timeout waiting for response to streamed command.");
+                }
+                responses.add(response);
+                if (confirmRegex.matcher(response).matches()) {
+                    streamedCharacters -= streamedCommands.remove();
+                }
+                else if (errorRegex != null && errorRegex.matcher(response).matches()) {
+                    clearStreamedCommands();
+                    throw new Exception("Controller raised an error: " + response);
+                }
+            }
+        }
+        return responses;
+    }
+
+    private void clearStreamedCommands() {
+        synchronized (streamedCommands) {
+            streamedCommands.clear();
+            streamedCharacters = 0;
+        }
+    }
+
+    /**
+     * Wait for all streamed commands to be confirmed and then send MOVE_TO_COMPLETE_COMMAND to
+     * wait for the machine to finish moving. If MOVE_TO_COMPLETE_REGEX is set the responses are
+     * matched against it as in the non-streaming case. Does nothing unless streaming.
+     */
+    @Override
+    public void waitForCompletion() throws Exception {
+        if (streaming) {
+            receiveStreamedConfirmations(0);
+            List<String> responses =
+                    sendGcode(getCommand(null, CommandType.MOVE_TO_COMPLETE_COMMAND));
+            waitForMoveToCompleteRegex(null, responses);
+        }
+
+        for (ReferenceDriver driver : subDrivers) {
+            driver.waitForCompletion();
+        }
+    }
+
     public void run() {
         while (!disconnectRequested) {
-            String line;
             try {
-                line = readLine().trim();
+                readLines(line -> {
+                    Logger.trace("[{}] << {}", portName, line);
+                    if (!processPositionReport(line) && !processAsyncResponse(line)) {
+                        responseQueue.offer(line);
+                    }
+                });
             }
             catch (TimeoutException ex) {
                 continue;
@@ -837,27 +1447,21 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
                 Logger.error("Read error", e);
                 return;
             }
-            line = line.trim();
-            Logger.trace("[{}] << {}", portName, line);
-            if (!processPositionReport(line)) {
-                responseQueue.offer(line);
-            }
         }
     }
 
-    private boolean processPositionReport(String line) {
-        if (getCommand(null, CommandType.POSITION_REPORT_REGEX) == null) {
+    protected boolean processPositionReport(String line) {
+        Pattern positionReportRegex = getPattern(null, CommandType.POSITION_REPORT_REGEX);
+        if (positionReportRegex == null) {
             return false;
         }
 
-        if (!line.matches(getCommand(null, CommandType.POSITION_REPORT_REGEX))) {
+        Matcher matcher = positionReportRegex.matcher(line);
+        if (!matcher.matches()) {
             return false;
         }
 
         Logger.trace("Position report: {}", line);
-        Matcher matcher =
-                Pattern.compile(getCommand(null, CommandType.POSITION_REPORT_REGEX)).matcher(line);
-        matcher.matches();
         for (Axis axis : axes) {
             try {
                 String s = matcher.group(axis.getName());
@@ -885,25 +1489,7 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         if (command == null) {
             return command;
         }
-        StringBuffer sb = new StringBuffer();
-        Matcher matcher = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}").matcher(command);
-        while (matcher.find()) {
-            String n = matcher.group(1);
-            if (!n.equals(name)) {
-                continue;
-            }
-            String format = matcher.group(2);
-            if (format == null) {
-                format = "%s";
-            }
-            String v = "";
-            if (value != null) {
-                v = String.format((Locale) null, format, value);
-            }
-            matcher.appendReplacement(sb, v);
-        }
-        matcher.appendTail(sb);
-        return sb.toString();
+        return new GcodeTemplate(command).render(Collections.singletonMap(name, value));
     }
 
     @Override
@@ -1034,6 +1620,30 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         this.connectWaitTimeMilliseconds = connectWaitTimeMilliseconds;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getStreamingWindow() {
+        return streamingWindow;
+    }
+
+    public void setStreamingWindow(int streamingWindow) {
+        this.streamingWindow = streamingWindow;
+    }
+
+    public int getStreamingBufferSize() {
+        return streamingBufferSize;
+    }
+
+    public void setStreamingBufferSize(int streamingBufferSize) {
+        this.streamingBufferSize = streamingBufferSize;
+    }
+
     public static class Axis {
         public enum Type {
             X,
@@ -0,0 +1,109 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Gcode command with variables in the format {Name:Format}, parsed once so that it can be
+ * rendered many times without scanning the text again. Format is optional and defaults to %s.
+ *
+ * Rendering replaces each variable that has an entry in the given values with the value formatted
+ * using the variable's Format, or with "" if the value is null. Variables without an entry are
+ * left in the text as they are. This is the same result as calling
+ * GcodeDriver.substituteVariable() once for each entry.
+ */
+public class GcodeTemplate {
+    static final Pattern variablePattern = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
+
+    private final String text;
+
+    /**
+     * The text between the variables. There is always one more literal than there are variables.
+     */
+    private final String[] literals;
+
+    private final String[] names;
+
+    /**
+     * The format of each variable, or null for %s.
+     */
+    private final String[] formats;
+
+    /**
+     * The original text of each variable, used when no value is given for it.
+     */
+    private final String[] variables;
+
+    public GcodeTemplate(String text) {
+        this.text = text;
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> formats = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        Matcher matcher = variablePattern.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            literals.add(text.substring(start, matcher.start()));
+            names.add(matcher.group(1));
+            String format = matcher.group(2);
+            formats.add(format == null || format.equals("%s") ? null : format);
+            variables.add(matcher.group());
+            start = matcher.end();
+        }
+        literals.add(text.substring(start));
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.names = names.toArray(new String[names.size()]);
+        this.formats = formats.toArray(new String[formats.size()]);
+        this.variables = variables.toArray(new String[variables.size()]);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Render the template with the given variable values.
+     *
+     * @param values
+     * @return
+     */
+    public String render(Map<String, ?> values) {
+        if (names.length == 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 32);
+        Formatter formatter = null;
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+            if (!values.containsKey(names[i])) {
+                sb.append(variables[i]);
+                continue;
+            }
+            Object value = values.get(names[i]);
+            if (value == null) {
+                continue;
+            }
+            if (formats[i] == null) {
+                sb.append(value);
+            }
+            else {
+                if (formatter == null) {
+                    formatter = new Formatter(sb, (Locale) null);
+                }
+                formatter.format(formats[i], value);
+            }
+        }
+        sb.append(literals[names.length]);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -15,6 +15,7 @@ import java.io.StringWriter;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -72,6 +73,10 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
         
         JLabel lblUnits = new JLabel("Units");
@@ -128,6 +133,30 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         nonSquarenessFactorTf = new JTextField();
         settingsPanel.add(nonSquarenessFactorTf, "4, 10, fill, default");
         nonSquarenessFactorTf.setColumns(5);
+        
+        JLabel lblStreaming = new JLabel("Stream Moves?");
+        lblStreaming.setToolTipText(
+                "Send moves without waiting for each one to be confirmed. Use MOVE_TO_COMPLETE_COMMAND to wait for moves to finish.");
+        settingsPanel.add(lblStreaming, "2, 12, right, default");
+        
+        streamingChk = new JCheckBox("");
+        settingsPanel.add(streamingChk, "4, 12");
+        
+        JLabel lblStreamingWindow = new JLabel("Streaming Window [Commands]");
+        settingsPanel.add(lblStreamingWindow, "2, 14, right, default");
+        
+        streamingWindowTf = new JTextField();
+        settingsPanel.add(streamingWindowTf, "4, 14, fill, default");
+        streamingWindowTf.setColumns(5);
+        
+        JLabel lblStreamingBufferSize = new JLabel("Receive Buffer Size [Chars]");
+        lblStreamingBufferSize.setToolTipText(
+                "Controller receive buffer size for character counting, e.g. 128 for GRBL. 0 to disable.");
+        settingsPanel.add(lblStreamingBufferSize, "6, 14, right, default");
+        
+        streamingBufferSizeTf = new JTextField();
+        settingsPanel.add(streamingBufferSizeTf, "8, 14, fill, default");
+        streamingBufferSizeTf.setColumns(5);
     }
 
     @Override
@@ -145,6 +174,9 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         addWrappedBinding(driver, "backlashFeedRateFactor", backlashFeedRateFactorTf, "text", doubleConverter);
         addWrappedBinding(driver, "timeoutMilliseconds", commandTimeoutTf, "text", intConverter);
         addWrappedBinding(driver, "connectWaitTimeMilliseconds", connectWaitTimeTf, "text", intConverter);
+        addWrappedBinding(driver, "streaming", streamingChk, "selected");
+        addWrappedBinding(driver, "streamingWindow", streamingWindowTf, "text", intConverter);
+        addWrappedBinding(driver, "streamingBufferSize", streamingBufferSizeTf, "text", intConverter);
         
         ComponentDecorators.decorateWithAutoSelect(maxFeedRateTf);
         ComponentDecorators.decorateWithAutoSelect(backlashOffsetXTf);
@@ -153,6 +185,8 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         ComponentDecorators.decorateWithAutoSelect(backlashFeedRateFactorTf);
         ComponentDecorators.decorateWithAutoSelect(commandTimeoutTf);
         ComponentDecorators.decorateWithAutoSelect(connectWaitTimeTf);
+        ComponentDecorators.decorateWithAutoSelect(streamingWindowTf);
+        ComponentDecorators.decorateWithAutoSelect(streamingBufferSizeTf);
     }
 
     public final Action exportProfileAction = new AbstractAction() {
@@ -289,6 +323,9 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
     private JTextField commandTimeoutTf;
     private JTextField connectWaitTimeTf;
     private JComboBox unitsCb;
+    private JCheckBox streamingChk;
+    private JTextField streamingWindowTf;
+    private JTextField streamingBufferSizeTf;
 
     static class HeadMountableItem {
         private HeadMountable hm;
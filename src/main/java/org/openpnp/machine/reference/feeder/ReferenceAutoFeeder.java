@@ -56,6 +56,14 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
     @Attribute(required=false)
     protected double postPickActuatorValue;
 
+    /**
+     * The feed actuator only signals the feeder, so the feed can be triggered while the head is
+     * elsewhere. Only enable this if the feeder will not advance again while a part is still
+     * waiting to be picked.
+     */
+    @Attribute(required=false)
+    protected boolean preFeed = false;
+
     @Override
     public Location getPickLocation() throws Exception {
         return location;
@@ -102,6 +110,19 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
         }
     }
     
+    @Override
+    public boolean canPreFeed() {
+        return preFeed;
+    }
+
+    public boolean isPreFeed() {
+        return preFeed;
+    }
+
+    public void setPreFeed(boolean preFeed) {
+        this.preFeed = preFeed;
+    }
+
     public String getActuatorName() {
         return actuatorName;
     }
@@ -19,6 +19,7 @@
 
 package org.openpnp.machine.reference.feeder;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.swing.Action;
@@ -80,7 +81,7 @@ public class ReferenceLoosePartFeeder extends ReferenceFeeder {
     private Location getPickLocation(Camera camera) throws Exception {
         // Process the pipeline to extract RotatedRect results
         pipeline.setCamera(camera);
-        pipeline.process();
+        pipeline.process(Collections.emptySet());
         // Grab the results
         List<RotatedRect> results = (List<RotatedRect>) pipeline.getResult("results").model;
         if (results.isEmpty()) {
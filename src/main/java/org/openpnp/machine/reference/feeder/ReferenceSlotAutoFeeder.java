@@ -1,5 +1,6 @@
 package org.openpnp.machine.reference.feeder;
 
+import java.beans.PropertyChangeListener;
 import java.util.List;
 
 import org.openpnp.ConfigurationListener;
@@ -32,6 +33,15 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
     private String feederId;
 
     private Bank bank;
+
+    /**
+     * The feeder in the slot, whose part changes are passed on as changes of the slot's part.
+     * See #feederChanged().
+     */
+    private Feeder partSource;
+
+    private final PropertyChangeListener partListener =
+            e -> firePropertyChange("part", e.getOldValue(), e.getNewValue());
     
     public ReferenceSlotAutoFeeder() {
         this.id = Configuration.createId("SLOT-");
@@ -129,6 +139,7 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
             throw new Exception("Bank is required.");
         }
         this.bank = bank;
+        feederChanged();
     }
 
     public Feeder getFeeder() {
@@ -144,6 +155,27 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
         }
         getBank().setFeeder(this, feeder);
     }
+
+    /**
+     * The slot's part is the part of the feeder in the slot, so when the slot's bank or feeder
+     * changes the part may have too. Fire "part" for it, and follow the part of the new feeder.
+     */
+    void feederChanged() {
+        Feeder feeder = getFeeder();
+        if (feeder == partSource) {
+            return;
+        }
+        Part oldPart = null;
+        if (partSource != null) {
+            oldPart = partSource.getPart();
+            partSource.removePropertyChangeListener("part", partListener);
+        }
+        partSource = feeder;
+        if (feeder != null) {
+            feeder.addPropertyChangeListener("part", partListener);
+        }
+        firePropertyChange("part", oldPart, getPart());
+    }
     
     public static synchronized IdentifiableList<Bank> getBanks() {
         BanksProperty bp = (BanksProperty) Configuration.get().getMachine().getProperty("ReferenceAutoFeederSlot.banks");
@@ -232,7 +264,13 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
         }
         
         public void setFeeder(ReferenceSlotAutoFeeder slot, Feeder feeder) throws Exception {
+            // The feeder may be taken from another slot.
+            ReferenceSlotAutoFeeder previousSlot = assignments.get(feeder);
             assignments.forcePut(feeder, slot);
+            slot.feederChanged();
+            if (previousSlot != null && previousSlot != slot) {
+                previousSlot.feederChanged();
+            }
         }
         
         public Feeder getFeeder(ReferenceSlotAutoFeeder slot) {
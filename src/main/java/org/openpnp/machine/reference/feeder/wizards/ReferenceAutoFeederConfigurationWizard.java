@@ -49,6 +49,7 @@ public class ReferenceAutoFeederConfigurationWizard
     private JTextField postPickActuatorValue;
     private JComboBox actuatorType;
     private JComboBox postPickActuatorType;
+    private JCheckBox preFeed;
 
     public ReferenceAutoFeederConfigurationWizard(ReferenceAutoFeeder feeder) {
         super(feeder);
@@ -75,6 +76,8 @@ public class ReferenceAutoFeederConfigurationWizard
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblActuatorName = new JLabel("Actuator Name");
@@ -119,6 +122,14 @@ public class ReferenceAutoFeederConfigurationWizard
         
         JLabel label = new JLabel("For Boolean: 1 = True, 0 = False");
         panelActuator.add(label, "10, 6");
+
+        JLabel lblPreFeed = new JLabel("Feed Ahead?");
+        lblPreFeed.setToolTipText(
+                "Allow the job to feed this feeder while the head is still placing the previous cycle.");
+        panelActuator.add(lblPreFeed, "2, 8, right, default");
+
+        preFeed = new JCheckBox("");
+        panelActuator.add(preFeed, "4, 8");
     }
 
     @Override
@@ -135,6 +146,8 @@ public class ReferenceAutoFeederConfigurationWizard
         addWrappedBinding(feeder, "postPickActuatorName", postPickActuatorName, "text");
         addWrappedBinding(feeder, "postPickActuatorType", postPickActuatorType, "selectedItem");
         addWrappedBinding(feeder, "postPickActuatorValue", postPickActuatorValue, "text", doubleConverter);
+
+        addWrappedBinding(feeder, "preFeed", preFeed, "selected");
         
         ComponentDecorators.decorateWithAutoSelect(actuatorName);
         ComponentDecorators.decorateWithAutoSelect(actuatorValue);
@@ -28,6 +28,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.imageio.ImageIO;
 
@@ -41,6 +43,8 @@ import org.opencv.imgproc.Imgproc;
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.vision.wizards.OpenCvVisionProviderConfigurationWizard;
 import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.VisionProvider;
 import org.openpnp.util.ImageUtils;
@@ -48,6 +52,7 @@ import org.openpnp.util.LogUtils;
 import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.VisionUtils;
 import org.pmw.tinylog.Logger;
+import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Root;
 
 @Root
@@ -61,6 +66,22 @@ public class OpenCvVisionProvider implements VisionProvider {
 
     protected Camera camera;
 
+    /**
+     * Number of times the image and template are halved for a first, coarse template match. Only
+     * the area around the peaks of the coarse match is then matched at full resolution. 0 matches
+     * the whole image at full resolution.
+     */
+    @Attribute(required = false)
+    protected int pyramidLevels = 0;
+
+    /**
+     * Gray Mats of the templates passed to getTemplateMatches(), so that a template that is used
+     * again, such as one from ReferenceFiducialLocator's cache, is only converted once. Templates
+     * are compared by identity, so they must not be drawn on after they have been used, and are
+     * dropped when they are no longer referenced.
+     */
+    protected final Map<BufferedImage, Mat> templateMats = new WeakHashMap<>();
+
     @Override
     public void setCamera(Camera camera) {
         this.camera = camera;
@@ -86,19 +107,36 @@ public class OpenCvVisionProvider implements VisionProvider {
      * @return
      */
     public List<TemplateMatch> getTemplateMatches(BufferedImage template) {
-        // TODO: ROI
+        return getTemplateMatches(template, null);
+    }
+
+    /**
+     * As getTemplateMatches(BufferedImage), but only matches centered within searchRadius of the
+     * center of the camera are looked for. If searchRadius is null the whole image is searched.
+     * 
+     * @param template
+     * @param searchRadius
+     * @return
+     */
+    @Override
+    public List<TemplateMatch> getTemplateMatches(BufferedImage template, Length searchRadius) {
         BufferedImage image = camera.capture();
 
         // Convert the camera image and template image to the same type. This
         // is required by the cvMatchTemplate call.
-        template = ImageUtils.convertBufferedImage(template, BufferedImage.TYPE_BYTE_GRAY);
         image = ImageUtils.convertBufferedImage(image, BufferedImage.TYPE_BYTE_GRAY);
 
-        Mat templateMat = OpenCvUtils.toMat(template);
+        Mat templateMat = getTemplateMat(template);
         Mat imageMat = OpenCvUtils.toMat(image);
-        Mat resultMat = new Mat();
 
-        Imgproc.matchTemplate(imageMat, templateMat, resultMat, Imgproc.TM_CCOEFF_NORMED);
+        // TODO: Externalize?
+        double threshold = 0.7f;
+        double corr = 0.85f;
+
+        Rect roi = getSearchRoi(imageMat, templateMat, searchRadius);
+        Mat searchMat = new Mat(imageMat, roi);
+        Mat resultMat = matchTemplate(searchMat, templateMat, corr);
+        searchMat.release();
 
         Mat debugMat = null;
         if (LogUtils.isDebugEnabled()) {
@@ -108,19 +146,15 @@ public class OpenCvVisionProvider implements VisionProvider {
         MinMaxLocResult mmr = Core.minMaxLoc(resultMat);
         double maxVal = mmr.maxVal;
 
-        // TODO: Externalize?
-        double threshold = 0.7f;
-        double corr = 0.85f;
-
         double rangeMin = Math.max(threshold, corr * maxVal);
         double rangeMax = maxVal;
 
         List<TemplateMatch> matches = new ArrayList<>();
-        for (Point point : matMaxima(resultMat, rangeMin, rangeMax)) {
+        for (Point point : OpenCvUtils.matMaxima(resultMat, rangeMin, rangeMax)) {
             TemplateMatch match = new TemplateMatch();
-            int x = point.x;
-            int y = point.y;
-            match.score = resultMat.get(y, x)[0] / maxVal;
+            match.score = resultMat.get(point.y, point.x)[0] / maxVal;
+            int x = point.x + roi.x;
+            int y = point.y + roi.y;
 
             if (LogUtils.isDebugEnabled()) {
                 Core.rectangle(debugMat, new org.opencv.core.Point(x, y),
@@ -152,6 +186,125 @@ public class OpenCvVisionProvider implements VisionProvider {
         return matches;
     }
 
+    protected Mat getTemplateMat(BufferedImage template) {
+        synchronized (templateMats) {
+            Mat templateMat = templateMats.get(template);
+            if (templateMat == null) {
+                templateMat = OpenCvUtils.toMat(
+                        ImageUtils.convertBufferedImage(template, BufferedImage.TYPE_BYTE_GRAY));
+                templateMats.put(template, templateMat);
+            }
+            return templateMat;
+        }
+    }
+
+    /**
+     * Get the part of the image that has to be searched to find matches centered within
+     * searchRadius of the center of the image, or the whole image if searchRadius is null or the
+     * area would be smaller than the template.
+     */
+    protected Rect getSearchRoi(Mat image, Mat template, Length searchRadius) {
+        Rect all = new Rect(0, 0, image.cols(), image.rows());
+        if (searchRadius == null) {
+            return all;
+        }
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        double radius = searchRadius.convertToUnits(unitsPerPixel.getUnits()).getValue();
+        int rx = (int) Math.ceil(radius / Math.abs(unitsPerPixel.getX())) + template.cols() / 2 + 1;
+        int ry = (int) Math.ceil(radius / Math.abs(unitsPerPixel.getY())) + template.rows() / 2 + 1;
+        int x0 = Math.max(0, image.cols() / 2 - rx);
+        int y0 = Math.max(0, image.rows() / 2 - ry);
+        int x1 = Math.min(image.cols(), image.cols() / 2 + rx);
+        int y1 = Math.min(image.rows(), image.rows() / 2 + ry);
+        if (x1 - x0 < template.cols() || y1 - y0 < template.rows()) {
+            return all;
+        }
+        return new Rect(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Run a TM_CCOEFF_NORMED template match of the template over the image. If pyramidLevels is
+     * set, the match is first made on images halved that many times. The full resolution match is
+     * then only made around the peaks of that coarse match which are within corr of its best
+     * score. Everywhere else the result is -1, the lowest possible score, so the result has the
+     * same size and can be used in the same way as a full match.
+     * 
+     * @param image
+     * @param template
+     * @param corr
+     * @return
+     */
+    protected Mat matchTemplate(Mat image, Mat template, double corr) {
+        Mat result = new Mat();
+
+        // Don't decimate the template into a few meaningless pixels.
+        int levels = pyramidLevels;
+        while (levels > 0 && ((template.cols() >> levels) < 8 || (template.rows() >> levels) < 8)) {
+            levels--;
+        }
+        if (levels <= 0) {
+            Imgproc.matchTemplate(image, template, result, Imgproc.TM_CCOEFF_NORMED);
+            return result;
+        }
+
+        Mat coarseImage = image;
+        Mat coarseTemplate = template;
+        for (int i = 0; i < levels; i++) {
+            Mat mat = new Mat();
+            Imgproc.pyrDown(coarseImage, mat);
+            if (coarseImage != image) {
+                coarseImage.release();
+            }
+            coarseImage = mat;
+            mat = new Mat();
+            Imgproc.pyrDown(coarseTemplate, mat);
+            if (coarseTemplate != template) {
+                coarseTemplate.release();
+            }
+            coarseTemplate = mat;
+        }
+        Mat coarseResult = new Mat();
+        Imgproc.matchTemplate(coarseImage, coarseTemplate, coarseResult,
+                Imgproc.TM_CCOEFF_NORMED);
+        coarseImage.release();
+        coarseTemplate.release();
+        MinMaxLocResult mmr = Core.minMaxLoc(coarseResult);
+        List<Point> candidates = OpenCvUtils.matMaxima(coarseResult, corr * mmr.maxVal, mmr.maxVal);
+        coarseResult.release();
+
+        result.create(image.rows() - template.rows() + 1, image.cols() - template.cols() + 1,
+                CvType.CV_32FC1);
+        result.setTo(new Scalar(-1));
+
+        // A peak in the coarse result is within a coarse pixel of the full resolution peak, so
+        // match that neighbourhood at full resolution, directly into the result.
+        int scale = 1 << levels;
+        for (Point candidate : candidates) {
+            int x0 = Math.max(0, candidate.x * scale - scale);
+            int y0 = Math.max(0, candidate.y * scale - scale);
+            int x1 = Math.min(result.cols() - 1, candidate.x * scale + scale);
+            int y1 = Math.min(result.rows() - 1, candidate.y * scale + scale);
+            if (x0 > x1 || y0 > y1) {
+                continue;
+            }
+            Mat window = new Mat(image, new Rect(x0, y0, x1 - x0 + template.cols(),
+                    y1 - y0 + template.rows()));
+            Mat windowResult = result.submat(new Rect(x0, y0, x1 - x0 + 1, y1 - y0 + 1));
+            Imgproc.matchTemplate(window, template, windowResult, Imgproc.TM_CCOEFF_NORMED);
+            window.release();
+            windowResult.release();
+        }
+        return result;
+    }
+
+    public int getPyramidLevels() {
+        return pyramidLevels;
+    }
+
+    public void setPyramidLevels(int pyramidLevels) {
+        this.pyramidLevels = pyramidLevels;
+    }
+
     @Override
     public Point[] locateTemplateMatches(int roiX, int roiY, int roiWidth, int roiHeight, int coiX,
             int coiY, BufferedImage templateImage_) throws Exception {
@@ -202,114 +355,4 @@ public class OpenCvVisionProvider implements VisionProvider {
             }
         }
     }
-
-    enum MinMaxState {
-        BEFORE_INFLECTION,
-        AFTER_INFLECTION
-    }
-
-    static List<Point> matMaxima(Mat mat, double rangeMin, double rangeMax) {
-        List<Point> locations = new ArrayList<>();
-
-        int rEnd = mat.rows() - 1;
-        int cEnd = mat.cols() - 1;
-
-        // CHECK EACH ROW MAXIMA FOR LOCAL 2D MAXIMA
-        for (int r = 0; r <= rEnd; r++) {
-            MinMaxState state = MinMaxState.BEFORE_INFLECTION;
-            double curVal = mat.get(r, 0)[0];
-            for (int c = 1; c <= cEnd; c++) {
-                double val = mat.get(r, c)[0];
-
-                if (val == curVal) {
-                    continue;
-                }
-                else if (curVal < val) {
-                    if (state == MinMaxState.BEFORE_INFLECTION) {
-                        // n/a
-                    }
-                    else {
-                        state = MinMaxState.BEFORE_INFLECTION;
-                    }
-                }
-                else { // curVal > val
-                    if (state == MinMaxState.BEFORE_INFLECTION) {
-                        if (rangeMin <= curVal && curVal <= rangeMax) { // ROW
-                                                                        // MAXIMA
-                            if (0 < r && (mat.get(r - 1, c - 1)[0] >= curVal
-                                    || mat.get(r - 1, c)[0] >= curVal)) {
-                                // cout << "reject:r-1 " << r << "," << c-1 <<
-                                // endl;
-                                // - x x
-                                // - - -
-                                // - - -
-                            }
-                            else if (r < rEnd && (mat.get(r + 1, c - 1)[0] > curVal
-                                    || mat.get(r + 1, c)[0] > curVal)) {
-                                // cout << "reject:r+1 " << r << "," << c-1 <<
-                                // endl;
-                                // - - -
-                                // - - -
-                                // - x x
-                            }
-                            else if (1 < c && (0 < r && mat.get(r - 1, c - 2)[0] >= curVal
-                                    || mat.get(r, c - 2)[0] > curVal
-                                    || r < rEnd && mat.get(r + 1, c - 2)[0] > curVal)) {
-                                // cout << "reject:c-2 " << r << "," << c-1 <<
-                                // endl;
-                                // x - -
-                                // x - -
-                                // x - -
-                            }
-                            else {
-                                locations.add(new Point(c - 1, r));
-                            }
-                        }
-                        state = MinMaxState.AFTER_INFLECTION;
-                    }
-                    else {
-                        // n/a
-                    }
-                }
-
-                curVal = val;
-            }
-
-            // PROCESS END OF ROW
-            if (state == MinMaxState.BEFORE_INFLECTION) {
-                if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
-                    if (0 < r && (mat.get(r - 1, cEnd - 1)[0] >= curVal
-                            || mat.get(r - 1, cEnd)[0] >= curVal)) {
-                        // cout << "rejectEnd:r-1 " << r << "," << cEnd-1 <<
-                        // endl;
-                        // - x x
-                        // - - -
-                        // - - -
-                    }
-                    else if (r < rEnd && (mat.get(r + 1, cEnd - 1)[0] > curVal
-                            || mat.get(r + 1, cEnd)[0] > curVal)) {
-                        // cout << "rejectEnd:r+1 " << r << "," << cEnd-1 <<
-                        // endl;
-                        // - - -
-                        // - - -
-                        // - x x
-                    }
-                    else if (1 < r && mat.get(r - 1, cEnd - 2)[0] >= curVal
-                            || mat.get(r, cEnd - 2)[0] > curVal
-                            || r < rEnd && mat.get(r + 1, cEnd - 2)[0] > curVal) {
-                        // cout << "rejectEnd:cEnd-2 " << r << "," << cEnd-1 <<
-                        // endl;
-                        // x - -
-                        // x - -
-                        // x - -
-                    }
-                    else {
-                        locations.add(new Point(cEnd, r));
-                    }
-                }
-            }
-        }
-
-        return locations;
-    }
 }
@@ -1,13 +1,25 @@
 package org.openpnp.machine.reference.vision;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.swing.Action;
 import javax.swing.Icon;
 
 import org.apache.commons.io.IOUtils;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.components.CameraView;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
@@ -20,13 +32,16 @@ import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Part;
 import org.openpnp.spi.Camera;
+import org.openpnp.spi.Head;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.OpenCvUtils;
+import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvPipelinePool;
 import org.openpnp.vision.pipeline.CvStage.Result;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
@@ -45,9 +60,53 @@ public class ReferenceBottomVision implements PartAlignment {
     @Attribute(required = false)
     protected boolean enabled = false;
 
+    /**
+     * Rotate the part to its placement angle on the way to the camera instead of to 0, so that
+     * only the small alignment correction is left to rotate on the way to the placement.
+     */
+    @Attribute(required = false)
+    protected boolean preRotate = false;
+
+    /**
+     * When the parts on several nozzles are aligned together, position the head once so that all
+     * of the nozzles are in view, capture a single frame and run each part's pipeline on the
+     * region of the frame around its nozzle.
+     */
+    @Attribute(required = false)
+    protected boolean multiNozzle = false;
+
+    /**
+     * Only capture the image while the part is over the camera, and run the pipeline in the
+     * background while the job processor moves the part on toward the placement.
+     */
+    @Attribute(required = false)
+    protected boolean analyzeInBackground = false;
+
+    /**
+     * The smallest region, in pixels, around each nozzle for aligning several nozzles together.
+     */
+    private static final int MIN_NOZZLE_ROI_SIZE = 32;
+
+    /**
+     * How far, in mm, a nozzle may be from its focal Z when the nozzles are aligned together.
+     */
+    private static final double NOZZLE_Z_TOLERANCE = 0.01;
+
+    /**
+     * Heads whose nozzles could not all be at their focal Z at once, for instance because they
+     * share a Z axis through a negating or cam transform. Their parts are aligned one at a time.
+     */
+    private final Set<Head> sharedZHeads = Collections.synchronizedSet(new HashSet<>());
+
     @ElementMap(required = false)
     protected Map<String, PartSettings> partSettingsByPartId = new HashMap<>();
 
+    /**
+     * Copies of the part pipelines to process, so that the same part can be aligned on several
+     * nozzles at once and the pipelines aren't parsed for every alignment.
+     */
+    private final CvPipelinePool pipelinePool = new CvPipelinePool();
+
     @Override
     public PartAlignmentOffset findOffsets(Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception {
         PartSettings partSettings = getPartSettings(part);
@@ -59,19 +118,71 @@ public class ReferenceBottomVision implements PartAlignment {
         Camera camera = VisionUtils.getBottomVisionCamera();
 
         // Create a location that is the Camera's X, Y, it's Z + part height
-        // and a rotation of 0.
-        Location startLocation = camera.getLocation();
-        Length partHeight = part.getHeight();
-        Location partHeightLocation =
-                new Location(partHeight.getUnits(), 0, 0, partHeight.getValue(), 0);
-        startLocation = startLocation.add(partHeightLocation).derive(null, null, null, 0d);
+        // and a rotation of 0, or the placement rotation if we are pre-rotating.
+        double preRotation = getPreRotation(boardLocation, placementLocation);
+        Location startLocation = getStartLocation(camera, part, preRotation);
 
         MovableUtils.moveToLocationAtSafeZ(nozzle, startLocation);
 
-        CvPipeline pipeline = partSettings.getPipeline();
+        CvPipeline pipeline = pipelinePool.borrow(partSettings.getPipeline());
+        try {
+            pipeline.setCamera(camera);
+            return analyze(camera, pipeline, part, nozzle, preRotation);
+        }
+        finally {
+            pipelinePool.giveBack(partSettings.getPipeline(), pipeline);
+        }
+    }
+
+    @Override
+    public CompletableFuture<PartAlignmentOffset> startFindOffsets(Part part,
+            BoardLocation boardLocation, Location placementLocation, Nozzle nozzle)
+            throws Exception {
+        PartSettings partSettings = getPartSettings(part);
+
+        if (!analyzeInBackground || !isEnabled() || !partSettings.isEnabled()) {
+            return PartAlignment.super.startFindOffsets(part, boardLocation, placementLocation,
+                    nozzle);
+        }
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+
+        double preRotation = getPreRotation(boardLocation, placementLocation);
+        Location startLocation = getStartLocation(camera, part, preRotation);
 
+        MovableUtils.moveToLocationAtSafeZ(nozzle, startLocation);
+
+        // The next nozzle may carry the same part while this one is still being analyzed, so
+        // each analysis has its own copy of the pipeline.
+        CvPipeline pipeline = pipelinePool.borrow(partSettings.getPipeline());
         pipeline.setCamera(camera);
-        pipeline.process();
+        try {
+            pipeline.setCapturedImage(camera.settleAndCaptureMat());
+        }
+        catch (RuntimeException e) {
+            pipelinePool.giveBack(partSettings.getPipeline(), pipeline);
+            throw e;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return analyze(camera, pipeline, part, nozzle, preRotation);
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            finally {
+                pipeline.getCapturedImage().release();
+                pipelinePool.giveBack(partSettings.getPipeline(), pipeline);
+            }
+        });
+    }
+
+    /**
+     * Run the pipeline and turn its result into the offsets of the part on the nozzle.
+     */
+    private PartAlignmentOffset analyze(Camera camera, CvPipeline pipeline, Part part,
+            Nozzle nozzle, double preRotation) throws Exception {
+        pipeline.process(Collections.emptySet());
 
         Result result = pipeline.getResult("result");
         if (!(result.model instanceof RotatedRect)) {
@@ -84,12 +195,230 @@ public class ReferenceBottomVision implements PartAlignment {
         // Create the offsets object. This is the physical distance from
         // the center of the camera to the located part.
         Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
+        offsets = getOffsets(offsets, rect, preRotation);
+        Logger.debug("Final offsets {}", offsets);
+        
+        OpenCvUtils.saveDebugImage(ReferenceBottomVision.class, "findOffsets", "result", pipeline.getWorkingImage());
+
+        CameraView cameraView = MainFrame.get().getCameraViews().getCameraView(camera);
+        String s = rect.size.toString() + " " + rect.angle + "°";
+        cameraView.showFilteredImage(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), s,
+                1500);
+
+
+        return new PartAlignmentOffset(offsets,false);
+    }
+
+    @Override
+    public boolean canAlignTogether(List<PartAlignmentRequest> requests) {
+        if (!isEnabled() || !multiNozzle) {
+            return false;
+        }
+        Set<Nozzle> nozzles = new HashSet<>();
+        Head head = null;
+        for (PartAlignmentRequest request : requests) {
+            if (!getPartSettings(request.getPart()).isEnabled()) {
+                return false;
+            }
+            Nozzle nozzle = request.getNozzle();
+            if (!nozzles.add(nozzle) || (head != null && nozzle.getHead() != head)) {
+                return false;
+            }
+            head = nozzle.getHead();
+        }
+        if (sharedZHeads.contains(head)) {
+            return false;
+        }
+        try {
+            Camera camera = VisionUtils.getBottomVisionCamera();
+            List<Point> centers = getNozzleCenters(camera, getNozzleOffsets(camera, requests));
+            return getNozzleRois(camera, centers) != null;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<PartAlignmentOffset> findOffsets(List<PartAlignmentRequest> requests)
+            throws Exception {
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        List<Location> nozzleOffsets = getNozzleOffsets(camera, requests);
+        List<Point> centers = getNozzleCenters(camera, nozzleOffsets);
+        List<Rect> rois = getNozzleRois(camera, centers);
+        if (rois == null) {
+            throw new Exception("Bottom vision alignment failed. The nozzles do not fit in the "
+                    + "view of camera " + camera.getName() + ".");
+        }
+
+        // Center the nozzles on the camera and bring each part to its focal height and rotation.
+        // Only the first move changes X and Y.
+        double[] preRotations = new double[requests.size()];
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            PartAlignmentRequest request = requests.get(i);
+            preRotations[i] =
+                    getPreRotation(request.getBoardLocation(), request.getPlacementLocation());
+            Location location = getStartLocation(camera, request.getPart(), preRotations[i])
+                    .add(nozzleOffsets.get(i));
+            locations.add(location);
+            if (i == 0) {
+                MovableUtils.moveToLocationAtSafeZ(request.getNozzle(), location);
+            }
+            else {
+                request.getNozzle().moveTo(location);
+            }
+        }
+
+        // If moving one nozzle moved another, such as on a head with a shared Z axis, they can't
+        // all be in focus together.
+        for (int i = 0; i < requests.size(); i++) {
+            Nozzle nozzle = requests.get(i).getNozzle();
+            double z = nozzle.getLocation().convertToUnits(LengthUnit.Millimeters).getZ();
+            double targetZ = locations.get(i).convertToUnits(LengthUnit.Millimeters).getZ();
+            if (Math.abs(z - targetZ) > NOZZLE_Z_TOLERANCE) {
+                Logger.warn("Nozzle {} is not at its focal Z after moving the nozzles of {} "
+                        + "together, aligning them one at a time.", nozzle.getName(),
+                        nozzle.getHead().getName());
+                sharedZHeads.add(nozzle.getHead());
+                return PartAlignment.super.findOffsets(requests);
+            }
+        }
+
+        // Capture one frame and run each part's pipeline on the region around its nozzle in
+        // parallel. Pipelines are shared per part, so a part on several nozzles needs a copy.
+        Mat frame = camera.settleAndCaptureMat();
+        try {
+            List<Object> models = processNozzleRois(camera, frame, rois, requests);
+
+            List<PartAlignmentOffset> offsets = new ArrayList<>();
+            Location unitsPerPixel = camera.getUnitsPerPixel();
+            for (int i = 0; i < requests.size(); i++) {
+                PartAlignmentRequest request = requests.get(i);
+                if (!(models.get(i) instanceof RotatedRect)) {
+                    throw new Exception("Bottom vision alignment failed for part "
+                            + request.getPart().getId() + " on nozzle "
+                            + request.getNozzle().getName() + ". No result found.");
+                }
+                RotatedRect rect = (RotatedRect) models.get(i);
+                Logger.debug("Result rect {} on nozzle {}", rect, request.getNozzle().getName());
+
+                // The physical distance from the nozzle to the located part. The region is
+                // rounded to whole pixels, so the nozzle is not exactly at its center.
+                Rect roi = rois.get(i);
+                Point center = centers.get(i);
+                Location partOffsets = new Location(unitsPerPixel.getUnits(),
+                        (rect.center.x - (center.x - roi.x)) * unitsPerPixel.getX(),
+                        ((center.y - roi.y) - rect.center.y) * unitsPerPixel.getY(), 0, 0);
+                partOffsets = getOffsets(partOffsets, rect, preRotations[i]);
+                Logger.debug("Final offsets {} on nozzle {}", partOffsets,
+                        request.getNozzle().getName());
+                offsets.add(new PartAlignmentOffset(partOffsets, false));
+
+                Core.rectangle(frame, roi.tl(), roi.br(), new Scalar(0, 255, 0));
+                Core.circle(frame, new Point(rect.center.x + roi.x, rect.center.y + roi.y), 3,
+                        new Scalar(0, 0, 255), -1);
+            }
+
+            OpenCvUtils.saveDebugImage(ReferenceBottomVision.class, "findOffsets", "multi-nozzle",
+                    frame);
+
+            CameraView cameraView = MainFrame.get().getCameraViews().getCameraView(camera);
+            cameraView.showFilteredImage(OpenCvUtils.toBufferedImage(frame),
+                    requests.size() + " parts", 1500);
+
+            return offsets;
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Run each request's part pipeline on its region of the frame, in parallel, and return the
+     * models of their "result" stages. Each request gets its own copy of the pipeline, since
+     * several nozzles may carry the same part.
+     */
+    private List<Object> processNozzleRois(Camera camera, Mat frame, List<Rect> rois,
+            List<PartAlignmentRequest> requests) throws Exception {
+        List<CvPipeline> sources = new ArrayList<>();
+        List<CvPipeline> pipelines = new ArrayList<>();
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                CvPipeline source = getPartSettings(requests.get(i).getPart()).getPipeline();
+                CvPipeline pipeline = pipelinePool.borrow(source);
+                sources.add(source);
+                pipelines.add(pipeline);
+                pipeline.setCamera(camera);
+                pipeline.setCapturedImage(frame.submat(rois.get(i)));
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    pipeline.process(Collections.emptySet());
+                    Result result = pipeline.getResult("result");
+                    return result == null ? null : result.model;
+                }));
+            }
+            List<Object> models = new ArrayList<>();
+            for (CompletableFuture<Object> future : futures) {
+                models.add(future.join());
+            }
+            return models;
+        }
+        catch (CompletionException e) {
+            throw new Exception(e.getCause());
+        }
+        finally {
+            // Wait for any that are still running before their images go away.
+            for (CompletableFuture<Object> future : futures) {
+                try {
+                    future.join();
+                }
+                catch (Exception e) {
+                }
+            }
+            for (int i = 0; i < pipelines.size(); i++) {
+                CvPipeline pipeline = pipelines.get(i);
+                if (pipeline.getCapturedImage() != null) {
+                    pipeline.getCapturedImage().release();
+                }
+                pipelinePool.giveBack(sources.get(i), pipeline);
+            }
+        }
+    }
 
+    /**
+     * The rotation to take the part to before vision: 0, or the placement rotation if we are
+     * pre-rotating.
+     */
+    private double getPreRotation(BoardLocation boardLocation, Location placementLocation) {
+        if (preRotate && boardLocation != null && placementLocation != null) {
+            return Utils2D.calculateBoardPlacementLocation(boardLocation, placementLocation)
+                    .getRotation();
+        }
+        return 0;
+    }
+
+    /**
+     * The Camera's X, Y, it's Z + part height and the given rotation.
+     */
+    private static Location getStartLocation(Camera camera, Part part, double rotation) {
+        Location startLocation = camera.getLocation();
+        Length partHeight = part.getHeight();
+        Location partHeightLocation =
+                new Location(partHeight.getUnits(), 0, 0, partHeight.getValue(), 0);
+        return startLocation.add(partHeightLocation).derive(null, null, null, rotation);
+    }
+
+    /**
+     * Given the physical distance from the nozzle to the center of the located part, get the
+     * offsets the job processor expects.
+     */
+    private static Location getOffsets(Location offsets, RotatedRect rect, double preRotation) {
         // We assume that the part is never picked more than 45º rotated
         // so if OpenCV tells us it's rotated more than 45º we correct
         // it. This seems to happen quite a bit when the angle of rotation
-        // is close to 0.
-        double angle = rect.angle;
+        // is close to 0. If the part was pre-rotated the nozzle's rotation is taken out first.
+        double angle = rect.angle + preRotation;
         while (Math.abs(angle) > 45) {
             if (angle < 0) {
                 angle += 90;
@@ -101,17 +430,79 @@ public class ReferenceBottomVision implements PartAlignment {
 
         // Set the angle on the offsets.
         offsets = offsets.derive(null, null, null, -angle);
-        Logger.debug("Final offsets {}", offsets);
-        
-        OpenCvUtils.saveDebugImage(ReferenceBottomVision.class, "findOffsets", "result", pipeline.getWorkingImage());
 
-        CameraView cameraView = MainFrame.get().getCameraViews().getCameraView(camera);
-        String s = rect.size.toString() + " " + rect.angle + "°";
-        cameraView.showFilteredImage(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), s,
-                1500);
+        // The offsets were measured with the nozzle at the pre-rotation, so turn them back to
+        // what they would be with the nozzle at 0, which is what the job processor expects.
+        return offsets.rotateXy(-preRotation);
+    }
 
+    /**
+     * For each request, the X, Y offsets of its nozzle from the center of the camera when the
+     * nozzles are centered on the camera as a group. They are in the units of the camera's units
+     * per pixel.
+     */
+    private static List<Location> getNozzleOffsets(Camera camera,
+            List<PartAlignmentRequest> requests) {
+        LengthUnit units = camera.getUnitsPerPixel().getUnits();
+        List<Location> locations = new ArrayList<>();
+        Location center = new Location(units);
+        for (PartAlignmentRequest request : requests) {
+            Location location = request.getNozzle().getLocation().convertToUnits(units)
+                    .derive(null, null, 0d, 0d);
+            locations.add(location);
+            center = center.add(location);
+        }
+        center = center.multiply(1.0 / locations.size(), 1.0 / locations.size(), 0, 0);
+        List<Location> offsets = new ArrayList<>();
+        for (Location location : locations) {
+            offsets.add(location.subtract(center));
+        }
+        return offsets;
+    }
 
-        return new PartAlignmentOffset(offsets,false);
+    /**
+     * The pixel in the camera image where each nozzle is, given its offsets from the center of
+     * the camera.
+     */
+    private static List<Point> getNozzleCenters(Camera camera, List<Location> nozzleOffsets) {
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        List<Point> centers = new ArrayList<>();
+        for (Location offsets : nozzleOffsets) {
+            centers.add(new Point(camera.getWidth() / 2.0 + offsets.getX() / unitsPerPixel.getX(),
+                    camera.getHeight() / 2.0 - offsets.getY() / unitsPerPixel.getY()));
+        }
+        return centers;
+    }
+
+    /**
+     * A square region of the camera image around each nozzle center, as large as it can be
+     * without overlapping another nozzle's region. Returns null if any of the regions are too
+     * small or do not fit in the image.
+     */
+    private static List<Rect> getNozzleRois(Camera camera, List<Point> centers) {
+        double distance = Double.MAX_VALUE;
+        for (int i = 0; i < centers.size(); i++) {
+            for (int j = i + 1; j < centers.size(); j++) {
+                Point a = centers.get(i);
+                Point b = centers.get(j);
+                distance = Math.min(distance, Math.max(Math.abs(a.x - b.x), Math.abs(a.y - b.y)));
+            }
+        }
+        int size = (int) Math.min(distance, Math.min(camera.getWidth(), camera.getHeight()));
+        if (size < MIN_NOZZLE_ROI_SIZE) {
+            return null;
+        }
+        List<Rect> rois = new ArrayList<>();
+        for (Point center : centers) {
+            Rect roi = new Rect((int) Math.round(center.x - size / 2.0),
+                    (int) Math.round(center.y - size / 2.0), size, size);
+            if (roi.x < 0 || roi.y < 0 || roi.x + roi.width > camera.getWidth()
+                    || roi.y + roi.height > camera.getHeight()) {
+                return null;
+            }
+            rois.add(roi);
+        }
+        return rois;
     }
 
     public static CvPipeline createDefaultPipeline() {
@@ -141,6 +532,30 @@ public class ReferenceBottomVision implements PartAlignment {
         this.enabled = enabled;
     }
 
+    public boolean isMultiNozzle() {
+        return multiNozzle;
+    }
+
+    public void setMultiNozzle(boolean multiNozzle) {
+        this.multiNozzle = multiNozzle;
+    }
+
+    public boolean isAnalyzeInBackground() {
+        return analyzeInBackground;
+    }
+
+    public void setAnalyzeInBackground(boolean analyzeInBackground) {
+        this.analyzeInBackground = analyzeInBackground;
+    }
+
+    public boolean isPreRotate() {
+        return preRotate;
+    }
+
+    public void setPreRotate(boolean preRotate) {
+        this.preRotate = preRotate;
+    }
+
     @Override
     public String getPropertySheetHolderTitle() {
         return "Bottom Vision";
@@ -11,17 +11,22 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.Action;
 import javax.swing.Icon;
 
 import org.openpnp.gui.MainFrame;
+import org.openpnp.gui.support.PropertySheetWizardAdapter;
+import org.openpnp.machine.reference.vision.wizards.ReferenceFiducialLocatorConfigurationWizard;
 import org.openpnp.model.Board;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Footprint;
 import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Panel;
 import org.openpnp.model.Part;
@@ -36,6 +41,8 @@ import org.openpnp.util.IdentifiableList;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.Utils2D;
 import org.pmw.tinylog.Logger;
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 
 /**
@@ -44,6 +51,36 @@ import org.simpleframework.xml.Root;
  */
 @Root
 public class ReferenceFiducialLocator implements FiducialLocator {
+    /**
+     * Number of templates kept in templateCache.
+     */
+    static final int TEMPLATE_CACHE_SIZE = 32;
+
+    /**
+     * Templates created by getTemplate(), least recently used first. See getTemplateKey() for the
+     * key.
+     */
+    static final Map<List<Object>, BufferedImage> templateCache =
+            new LinkedHashMap<List<Object>, BufferedImage>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, BufferedImage> eldest) {
+                    return size() > TEMPLATE_CACHE_SIZE;
+                }
+            };
+
+    /**
+     * The most times the camera is moved over a fiducial and a match made before its location is
+     * accepted.
+     */
+    @Attribute(required = false)
+    protected int maxIterations = 3;
+
+    /**
+     * If a match is found closer than this to the center of the camera it is accepted without
+     * moving the camera again.
+     */
+    @Element(required = false)
+    protected Length convergenceTolerance = new Length(0.05, LengthUnit.Millimeters);
 
     public Location locateBoard(BoardLocation boardLocation) throws Exception {
         return locateBoard(boardLocation, false);
@@ -108,10 +145,10 @@ public class ReferenceFiducialLocator implements FiducialLocator {
     public static Location getFiducialLocation(Footprint footprint, Camera camera)
             throws Exception {
         // Create the template
-        BufferedImage template = createTemplate(camera.getUnitsPerPixel(), footprint);
+        BufferedImage template = getTemplate(camera.getUnitsPerPixel(), footprint);
 
         // Wait for camera to settle
-        Thread.sleep(camera.getSettleTimeMs());
+        camera.settle();
         // Perform vision operation
         return getBestTemplateMatch(camera, template);
     }
@@ -120,9 +157,10 @@ public class ReferenceFiducialLocator implements FiducialLocator {
      * Given a placement containing a fiducial, attempt to find the fiducial using the vision
      * system. The function first moves the camera to the ideal location of the fiducial based on
      * the board location. It then performs a template match against a template generated from the
-     * fiducial's footprint. These steps are performed thrice to "home in" on the fiducial. Finally,
-     * the location is returned. If the fiducial was not able to be located with any degree of
-     * certainty the function returns null.
+     * fiducial's footprint. These steps are repeated to "home in" on the fiducial until it is
+     * found close enough to the center, see findFiducial(). Finally, the location is returned.
+     * If the fiducial was not able to be located with any degree of certainty the function
+     * returns null.
      *
      * @param location, part
      * @return
@@ -152,7 +190,7 @@ public class ReferenceFiducialLocator implements FiducialLocator {
 
         // Create the template
         BufferedImage template =
-                createTemplate(camera.getUnitsPerPixel(), part.getPackage().getFootprint());
+                getTemplate(camera.getUnitsPerPixel(), part.getPackage().getFootprint());
 
 
         // Move to where we expect to find the fid, if user has not specified then we treat 0,0,0,0
@@ -161,37 +199,24 @@ public class ReferenceFiducialLocator implements FiducialLocator {
             MovableUtils.moveToLocationAtSafeZ(camera, location);
         }
 
-        for (int i = 0; i < 3; i++) {
-            // Wait for camera to settle
-            Thread.sleep(camera.getSettleTimeMs());
-            // Perform vision operation
-            location = getBestTemplateMatch(camera, template);
-            if (location == null) {
-                Logger.debug("No matches found!");
-                return null;
-            }
-            Logger.debug("home fid. located at {}", location);
-            // Move to where we actually found the fid
-            camera.moveTo(location);
-        }
-
-        return location;
-
+        // Homing resets the axes to where the camera is, so it has to end up over the fid.
+        return findFiducial(camera, template, "home fid.", true);
     }
 
     /**
      * Given a placement containing a fiducial, attempt to find the fiducial using the vision
      * system. The function first moves the camera to the ideal location of the fiducial based on
      * the board location. It then performs a template match against a template generated from the
-     * fiducial's footprint. These steps are performed thrice to "home in" on the fiducial. Finally,
-     * the location is returned. If the fiducial was not able to be located with any degree of
-     * certainty the function returns null.
+     * fiducial's footprint. These steps are repeated to "home in" on the fiducial until it is
+     * found close enough to the center, see findFiducial(). Finally, the location is returned.
+     * If the fiducial was not able to be located with any degree of certainty the function
+     * returns null.
      * 
      * @param fid
      * @return
      * @throws Exception
      */
-    private static Location getFiducialLocation(BoardLocation boardLocation, Placement fid)
+    private Location getFiducialLocation(BoardLocation boardLocation, Placement fid)
             throws Exception {
         Camera camera = Configuration.get().getMachine().getDefaultHead().getDefaultCamera();
 
@@ -223,7 +248,7 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         }
 
         // Create the template
-        BufferedImage template = createTemplate(camera.getUnitsPerPixel(),
+        BufferedImage template = getTemplate(camera.getUnitsPerPixel(),
                 fid.getPart().getPackage().getFootprint());
 
         // Move to where we expect to find the fid
@@ -233,28 +258,72 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         MovableUtils.moveToLocationAtSafeZ(camera, location);
 
 
-        for (int i = 0; i < 3; i++) {
+        return findFiducial(camera, template, fid.getId(), false);
+    }
+
+    /**
+     * With the camera over where the fiducial is expected, match the template and move the camera
+     * to where it was found, until it's found within convergenceTolerance of the center or
+     * maxIterations matches have been made. The last match is returned, or null if a match fails.
+     * 
+     * The location of a match is measured, so unless center is set the camera is not moved for
+     * the last match.
+     * 
+     * @param camera
+     * @param template
+     * @param name Used in the log.
+     * @param center Always move the camera to the last match.
+     * @return
+     * @throws Exception
+     */
+    protected Location findFiducial(Camera camera, BufferedImage template, String name,
+            boolean center) throws Exception {
+        long t = System.currentTimeMillis();
+        Location location = null;
+        Length searchRadius = null;
+        int iterations = Math.max(1, maxIterations);
+        for (int i = 0; i < iterations; i++) {
             // Wait for camera to settle
-            Thread.sleep(camera.getSettleTimeMs());
+            camera.settle();
             // Perform vision operation
-            location = getBestTemplateMatch(camera, template);
+            location = getBestTemplateMatch(camera, template, searchRadius);
             if (location == null) {
                 Logger.debug("No matches found!");
                 return null;
             }
-            Logger.debug("{} located at {}", fid.getId(), location);
-            // Move to where we actually found the fid
-            camera.moveTo(location);
+            Location cameraLocation = camera.getLocation();
+            double correction = cameraLocation.getLinearDistanceTo(location);
+            Logger.debug("{} located at {}, {} {} from the camera", name, location,
+                    String.format("%.4f", correction), cameraLocation.getUnits().getShortName());
+            boolean converged = correction <= convergenceTolerance
+                    .convertToUnits(cameraLocation.getUnits()).getValue();
+            if (center || (!converged && i < iterations - 1)) {
+                // Move to where we actually found the fid
+                camera.moveTo(location);
+                // and from now on only look for it close to the center.
+                searchRadius = getSearchRadius(camera, template);
+            }
+            if (converged) {
+                Logger.debug("{} converged after {} iterations in {} ms", name, i + 1,
+                        System.currentTimeMillis() - t);
+                return location;
+            }
         }
-
+        Logger.debug("{} did not converge in {} iterations, {} ms", name, iterations,
+                System.currentTimeMillis() - t);
         return location;
     }
 
     private static Location getBestTemplateMatch(final Camera camera, BufferedImage template)
             throws Exception {
+        return getBestTemplateMatch(camera, template, null);
+    }
+
+    private static Location getBestTemplateMatch(final Camera camera, BufferedImage template,
+            Length searchRadius) throws Exception {
         VisionProvider visionProvider = camera.getVisionProvider();
 
-        List<TemplateMatch> matches = visionProvider.getTemplateMatches(template);
+        List<TemplateMatch> matches = visionProvider.getTemplateMatches(template, searchRadius);
 
         if (matches.isEmpty()) {
             return null;
@@ -274,6 +343,63 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         return matches.get(0).location;
     }
 
+    /**
+     * Once the camera has been centered on a fiducial it will be much closer than the size of the
+     * template, so that's how far from the center the next template match needs to look.
+     */
+    private static Length getSearchRadius(Camera camera, BufferedImage template) {
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        double radius = Math.max(template.getWidth() * Math.abs(unitsPerPixel.getX()),
+                template.getHeight() * Math.abs(unitsPerPixel.getY()));
+        return new Length(radius, unitsPerPixel.getUnits());
+    }
+
+    /**
+     * Get the template image for the footprint at the given units per pixel from templateCache,
+     * or create it if it's not there. The same BufferedImage is returned each time, so the
+     * VisionProvider can keep its own converted copy of it.
+     * 
+     * @param unitsPerPixel, footprint
+     * @return
+     */
+    static BufferedImage getTemplate(Location unitsPerPixel, Footprint footprint)
+            throws Exception {
+        List<Object> key = getTemplateKey(unitsPerPixel, footprint);
+        synchronized (templateCache) {
+            BufferedImage template = templateCache.get(key);
+            if (template == null) {
+                template = createTemplate(unitsPerPixel, footprint);
+                templateCache.put(key, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * The key is the footprint itself, everything in it that goes into its shape, and the units
+     * per pixel. Editing the footprint or recalibrating the camera changes the key, so a stale
+     * template is never used, and the old one drops out of the cache as it ages.
+     */
+    static List<Object> getTemplateKey(Location unitsPerPixel, Footprint footprint) {
+        List<Object> key = new ArrayList<>();
+        key.add(footprint);
+        key.add(footprint.getUnits());
+        key.add(footprint.getBodyWidth());
+        key.add(footprint.getBodyHeight());
+        for (Footprint.Pad pad : footprint.getPads()) {
+            key.add(pad.getX());
+            key.add(pad.getY());
+            key.add(pad.getWidth());
+            key.add(pad.getHeight());
+            key.add(pad.getRotation());
+            key.add(pad.getRoundness());
+        }
+        key.add(unitsPerPixel.getUnits());
+        key.add(unitsPerPixel.getX());
+        key.add(unitsPerPixel.getY());
+        return key;
+    }
+
     /**
      * Create a template image based on a Placement's footprint. The image will be scaled to match
      * the dimensions of the current camera.
@@ -377,6 +503,22 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         return fiducials;
     }
 
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public Length getConvergenceTolerance() {
+        return convergenceTolerance;
+    }
+
+    public void setConvergenceTolerance(Length convergenceTolerance) {
+        this.convergenceTolerance = convergenceTolerance;
+    }
+
     @Override
     public String getPropertySheetHolderTitle() {
         return "Fiducal Locator";
@@ -390,8 +532,8 @@ public class ReferenceFiducialLocator implements FiducialLocator {
 
     @Override
     public PropertySheet[] getPropertySheets() {
-        // TODO Auto-generated method stub
-        return null;
+        return new PropertySheet[] {new PropertySheetWizardAdapter(
+                new ReferenceFiducialLocatorConfigurationWizard(this))};
     }
 
     @Override
@@ -21,24 +21,53 @@ package org.openpnp.machine.reference.vision.wizards;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.border.TitledBorder;
 
+import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.IntegerConverter;
 import org.openpnp.machine.reference.vision.OpenCvVisionProvider;
 
+import com.jgoodies.forms.layout.ColumnSpec;
+import com.jgoodies.forms.layout.FormLayout;
+import com.jgoodies.forms.layout.FormSpecs;
+import com.jgoodies.forms.layout.RowSpec;
+
 @SuppressWarnings("serial")
 public class OpenCvVisionProviderConfigurationWizard extends AbstractConfigurationWizard {
     private final OpenCvVisionProvider visionProvider;
 
     private JPanel panelGeneral;
+    private JTextField pyramidLevels;
 
     public OpenCvVisionProviderConfigurationWizard(OpenCvVisionProvider visionProvider) {
         this.visionProvider = visionProvider;
 
-        JLabel lblOpencvvisionproviderconfigurationwizardPlaceholder =
-                new JLabel("OpenCvVisionProviderConfigurationWizard Placeholder");
-        contentPanel.add(lblOpencvvisionproviderconfigurationwizardPlaceholder);
+        panelGeneral = new JPanel();
+        panelGeneral.setBorder(new TitledBorder(null, "Template Matching", TitledBorder.LEADING,
+                TitledBorder.TOP, null, null));
+        contentPanel.add(panelGeneral);
+        panelGeneral.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblPyramidLevels = new JLabel("Pyramid Levels");
+        panelGeneral.add(lblPyramidLevels, "2, 2, right, default");
+
+        pyramidLevels = new JTextField();
+        panelGeneral.add(pyramidLevels, "4, 2, fill, default");
+        pyramidLevels.setColumns(10);
     }
 
     @Override
-    public void createBindings() {}
+    public void createBindings() {
+        IntegerConverter integerConverter = new IntegerConverter();
+
+        addWrappedBinding(visionProvider, "pyramidLevels", pyramidLevels, "text",
+                integerConverter);
+
+        ComponentDecorators.decorateWithAutoSelect(pyramidLevels);
+    }
 }
@@ -30,6 +30,9 @@ import com.jgoodies.forms.layout.RowSpec;
 public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurationWizard {
     private final ReferenceBottomVision bottomVision;
     private JCheckBox enabledCheckbox;
+    private JCheckBox preRotateCheckbox;
+    private JCheckBox multiNozzleCheckbox;
+    private JCheckBox analyzeInBackgroundCheckbox;
 
     public ReferenceBottomVisionConfigurationWizard(ReferenceBottomVision bottomVision) {
         this.bottomVision = bottomVision;
@@ -44,6 +47,9 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
                 new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
                         FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblEnabled = new JLabel("Enabled?");
@@ -52,8 +58,26 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
         enabledCheckbox = new JCheckBox("");
         panel.add(enabledCheckbox, "4, 2");
 
+        JLabel lblPreRotate = new JLabel("Rotate parts prior to vision?");
+        panel.add(lblPreRotate, "2, 4");
+
+        preRotateCheckbox = new JCheckBox("");
+        panel.add(preRotateCheckbox, "4, 4");
+
+        JLabel lblMultiNozzle = new JLabel("Align all nozzles in one frame?");
+        panel.add(lblMultiNozzle, "2, 6");
+
+        multiNozzleCheckbox = new JCheckBox("");
+        panel.add(multiNozzleCheckbox, "4, 6");
+
+        JLabel lblAnalyzeInBackground = new JLabel("Analyze while moving to placement?");
+        panel.add(lblAnalyzeInBackground, "2, 8");
+
+        analyzeInBackgroundCheckbox = new JCheckBox("");
+        panel.add(analyzeInBackgroundCheckbox, "4, 8");
+
         JLabel lblPipeline = new JLabel("Pipeline");
-        panel.add(lblPipeline, "2, 4");
+        panel.add(lblPipeline, "2, 10");
 
         JButton editPipelineButton = new JButton("Edit");
         editPipelineButton.addActionListener(new ActionListener() {
@@ -63,7 +87,7 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
                 });
             }
         });
-        panel.add(editPipelineButton, "4, 4");
+        panel.add(editPipelineButton, "4, 10");
 
         JButton btnResetToDefault = new JButton("Reset to Default");
         btnResetToDefault.addActionListener((e) -> {
@@ -77,7 +101,7 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
                 });
             }
         });
-        panel.add(btnResetToDefault, "6, 4");
+        panel.add(btnResetToDefault, "6, 10");
 
         JButton btnResetAllTo = new JButton("Reset All Parts");
         btnResetAllTo.addActionListener((e) -> {
@@ -95,7 +119,7 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
                 });
             }
         });
-        panel.add(btnResetAllTo, "8, 4");
+        panel.add(btnResetAllTo, "8, 10");
     }
 
     private void editPipeline() throws Exception {
@@ -112,5 +136,9 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
     @Override
     public void createBindings() {
         addWrappedBinding(bottomVision, "enabled", enabledCheckbox, "selected");
+        addWrappedBinding(bottomVision, "preRotate", preRotateCheckbox, "selected");
+        addWrappedBinding(bottomVision, "multiNozzle", multiNozzleCheckbox, "selected");
+        addWrappedBinding(bottomVision, "analyzeInBackground", analyzeInBackgroundCheckbox,
+                "selected");
     }
 }
@@ -0,0 +1,66 @@
+package org.openpnp.machine.reference.vision.wizards;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.border.TitledBorder;
+
+import org.openpnp.gui.components.ComponentDecorators;
+import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.IntegerConverter;
+import org.openpnp.gui.support.LengthConverter;
+import org.openpnp.machine.reference.vision.ReferenceFiducialLocator;
+
+import com.jgoodies.forms.layout.ColumnSpec;
+import com.jgoodies.forms.layout.FormLayout;
+import com.jgoodies.forms.layout.FormSpecs;
+import com.jgoodies.forms.layout.RowSpec;
+
+@SuppressWarnings("serial")
+public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigurationWizard {
+    private final ReferenceFiducialLocator fiducialLocator;
+    private JTextField maxIterations;
+    private JTextField convergenceTolerance;
+
+    public ReferenceFiducialLocatorConfigurationWizard(ReferenceFiducialLocator fiducialLocator) {
+        this.fiducialLocator = fiducialLocator;
+
+        JPanel panel = new JPanel();
+        panel.setBorder(new TitledBorder(null, "General", TitledBorder.LEADING, TitledBorder.TOP,
+                null, null));
+        contentPanel.add(panel);
+        panel.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblMaxIterations = new JLabel("Max. Iterations");
+        panel.add(lblMaxIterations, "2, 2, right, default");
+
+        maxIterations = new JTextField();
+        panel.add(maxIterations, "4, 2, fill, default");
+        maxIterations.setColumns(10);
+
+        JLabel lblConvergenceTolerance = new JLabel("Convergence Tolerance");
+        panel.add(lblConvergenceTolerance, "2, 4, right, default");
+
+        convergenceTolerance = new JTextField();
+        panel.add(convergenceTolerance, "4, 4, fill, default");
+        convergenceTolerance.setColumns(10);
+    }
+
+    @Override
+    public void createBindings() {
+        IntegerConverter integerConverter = new IntegerConverter();
+        LengthConverter lengthConverter = new LengthConverter();
+
+        addWrappedBinding(fiducialLocator, "maxIterations", maxIterations, "text",
+                integerConverter);
+        addWrappedBinding(fiducialLocator, "convergenceTolerance", convergenceTolerance, "text",
+                lengthConverter);
+
+        ComponentDecorators.decorateWithAutoSelect(maxIterations);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(convergenceTolerance);
+    }
+}
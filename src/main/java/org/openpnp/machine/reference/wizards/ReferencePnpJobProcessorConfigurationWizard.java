@@ -21,12 +21,21 @@ package org.openpnp.machine.reference.wizards;
 
 import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.border.TitledBorder;
 
+import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.DoubleConverter;
+import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.FeederSelection;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlanningMode;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.TravelMode;
+import org.openpnp.model.Configuration;
 
 import com.jgoodies.forms.layout.ColumnSpec;
 import com.jgoodies.forms.layout.FormLayout;
@@ -37,6 +46,13 @@ import com.jgoodies.forms.layout.RowSpec;
 public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigurationWizard {
     private final ReferencePnpJobProcessor jobProcessor;
     private JCheckBox parkWhenComplete;
+    private JComboBox planningMode;
+    private JTextField planningTravelSpeed;
+    private JTextField planningNozzleTipChangeTime;
+    private JComboBox feederSelection;
+    private JComboBox travelMode;
+    private JTextField clearanceMargin;
+    private JCheckBox retractDuringVacuumCheck;
 
     public ReferencePnpJobProcessorConfigurationWizard(ReferencePnpJobProcessor jobProcessor) {
         this.jobProcessor = jobProcessor;
@@ -55,10 +71,97 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
 
         parkWhenComplete = new JCheckBox("");
         panelGeneral.add(parkWhenComplete, "2, 2");
+
+        JPanel panelPlanning = new JPanel();
+        panelPlanning.setBorder(new TitledBorder(null, "Planning", TitledBorder.LEADING,
+                TitledBorder.TOP, null, null));
+        contentPanel.add(panelPlanning);
+        panelPlanning.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblPlanningMode = new JLabel("Planning Mode");
+        panelPlanning.add(lblPlanningMode, "2, 2, right, default");
+
+        planningMode = new JComboBox(PlanningMode.values());
+        panelPlanning.add(planningMode, "4, 2, fill, default");
+
+        JLabel lblPlanningTravelSpeed = new JLabel("Estimated Travel Speed (mm/s)");
+        panelPlanning.add(lblPlanningTravelSpeed, "2, 4, right, default");
+
+        planningTravelSpeed = new JTextField();
+        panelPlanning.add(planningTravelSpeed, "4, 4, fill, default");
+        planningTravelSpeed.setColumns(10);
+
+        JLabel lblPlanningNozzleTipChangeTime = new JLabel("Estimated Nozzle Tip Change (s)");
+        panelPlanning.add(lblPlanningNozzleTipChangeTime, "2, 6, right, default");
+
+        planningNozzleTipChangeTime = new JTextField();
+        panelPlanning.add(planningNozzleTipChangeTime, "4, 6, fill, default");
+        planningNozzleTipChangeTime.setColumns(10);
+
+        JLabel lblFeederSelection = new JLabel("Feeder Selection");
+        panelPlanning.add(lblFeederSelection, "2, 8, right, default");
+
+        feederSelection = new JComboBox(FeederSelection.values());
+        panelPlanning.add(feederSelection, "4, 8, fill, default");
+
+        JPanel panelTravel = new JPanel();
+        panelTravel.setBorder(new TitledBorder(null, "Travel", TitledBorder.LEADING,
+                TitledBorder.TOP, null, null));
+        contentPanel.add(panelTravel);
+        panelTravel.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblTravelMode = new JLabel("Travel Mode");
+        panelTravel.add(lblTravelMode, "2, 2, right, default");
+
+        travelMode = new JComboBox(TravelMode.values());
+        panelTravel.add(travelMode, "4, 2, fill, default");
+
+        JLabel lblClearanceMargin = new JLabel("Clearance Margin");
+        panelTravel.add(lblClearanceMargin, "2, 4, right, default");
+
+        clearanceMargin = new JTextField();
+        panelTravel.add(clearanceMargin, "4, 4, fill, default");
+        clearanceMargin.setColumns(10);
+
+        JLabel lblRetractDuringVacuumCheck = new JLabel("Retract During Vacuum Check");
+        panelTravel.add(lblRetractDuringVacuumCheck, "2, 6, right, default");
+
+        retractDuringVacuumCheck = new JCheckBox("");
+        panelTravel.add(retractDuringVacuumCheck, "4, 6");
     }
 
     @Override
     public void createBindings() {
+        DoubleConverter doubleConverter =
+                new DoubleConverter(Configuration.get().getLengthDisplayFormat());
+        LengthConverter lengthConverter = new LengthConverter();
+
         addWrappedBinding(jobProcessor, "parkWhenComplete", parkWhenComplete, "selected");
+        addWrappedBinding(jobProcessor, "planningMode", planningMode, "selectedItem");
+        addWrappedBinding(jobProcessor, "planningTravelSpeed", planningTravelSpeed, "text",
+                doubleConverter);
+        addWrappedBinding(jobProcessor, "planningNozzleTipChangeTime",
+                planningNozzleTipChangeTime, "text", doubleConverter);
+        addWrappedBinding(jobProcessor, "feederSelection", feederSelection, "selectedItem");
+        addWrappedBinding(jobProcessor, "travelMode", travelMode, "selectedItem");
+        addWrappedBinding(jobProcessor, "clearanceMargin", clearanceMargin, "text",
+                lengthConverter);
+        addWrappedBinding(jobProcessor, "retractDuringVacuumCheck", retractDuringVacuumCheck,
+                "selected");
+
+        ComponentDecorators.decorateWithAutoSelect(planningTravelSpeed);
+        ComponentDecorators.decorateWithAutoSelect(planningNozzleTipChangeTime);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(clearanceMargin);
     }
 }
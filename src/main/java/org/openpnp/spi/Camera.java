@@ -22,8 +22,10 @@ package org.openpnp.spi;
 import java.awt.image.BufferedImage;
 import java.io.Closeable;
 
+import org.opencv.core.Mat;
 import org.openpnp.CameraListener;
 import org.openpnp.model.Location;
+import org.openpnp.util.OpenCvUtils;
 
 /**
  * Represents a Camera attached to the system and allows a caller to retrieve images from it.
@@ -67,6 +69,48 @@ public interface Camera extends HeadMountable, WizardConfigurable,
      */
     public BufferedImage settleAndCapture();
 
+    /**
+     * Wait for the image to stop moving after the camera, or what it is looking at, has moved.
+     * This is at most the settle time, which is what the default waits.
+     */
+    public default void settle() {
+        try {
+            Thread.sleep(getSettleTimeMs());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * How long the last settle took, in milliseconds. The default is the settle time.
+     * 
+     * @return
+     */
+    public default long getLastSettleTimeMs() {
+        return getSettleTimeMs();
+    }
+
+    /**
+     * Same as capture(), but returns the image as a Mat for vision processing. The caller owns
+     * the Mat and must release it. Cameras that work with Mats natively can return the frame
+     * without creating a BufferedImage.
+     * 
+     * @return
+     */
+    public default Mat captureMat() {
+        return OpenCvUtils.toMat(capture());
+    }
+
+    /**
+     * Same as captureMat(), but waits the settle time before capturing.
+     * 
+     * @return
+     */
+    public default Mat settleAndCaptureMat() {
+        return OpenCvUtils.toMat(settleAndCapture());
+    }
+
     /**
      * Registers a listener to receive continuous images from the camera at a rate less than or
      * equal to maximumFps images per second.
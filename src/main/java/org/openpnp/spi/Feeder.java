@@ -76,6 +76,15 @@ public interface Feeder extends Identifiable, Named, WizardConfigurable, Propert
     public void feed(Nozzle nozzle) throws Exception;
 
     public void postPick(Nozzle nozzle) throws Exception;
+
+    /**
+     * Return true if the Feeder can be fed without the Head being present, for instance while
+     * the Head is busy aligning and placing the parts of the previous cycle. A JobProcessor may
+     * then call feed() ahead of time and skip the feed right before the pick.
+     * 
+     * @return
+     */
+    public boolean canPreFeed();
     
     public int getRetryCount();
 }
@@ -20,11 +20,13 @@
 package org.openpnp.spi;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
 import org.openpnp.model.Location;
+import org.openpnp.model.Part;
 
 import com.google.common.util.concurrent.FutureCallback;
 
@@ -65,6 +67,23 @@ public interface Machine extends WizardConfigurable, PropertySheetHolder, Closea
 
     public Feeder getFeederByName(String name);
 
+    /**
+     * Gets the Feeders, enabled or not, that are serving the given Part, in the same order as
+     * #getFeeders().
+     * 
+     * @param part
+     * @return
+     */
+    public default List<Feeder> getFeeders(Part part) {
+        List<Feeder> feeders = new ArrayList<>();
+        for (Feeder feeder : getFeeders()) {
+            if (feeder.getPart() == part) {
+                feeders.add(feeder);
+            }
+        }
+        return feeders;
+    }
+
     /**
      * Gets a List of Cameras attached to the Machine that are not attached to Heads.
      * 
@@ -1,5 +1,9 @@
 package org.openpnp.spi;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Location;
@@ -46,6 +50,92 @@ public interface PartAlignment extends PropertySheetHolder {
      * @throws Exception if the alignment fails for any reason. The caller may retry.
      */
     PartAlignmentOffset findOffsets(Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception;
+
+    /**
+     * Start the part alignment operation. Does the part of the alignment that needs the part
+     * at the alignment station, such as capturing an image, and returns a future of the offsets
+     * for the rest. The caller may move the nozzle away as soon as this returns. The default
+     * does the whole alignment with #findOffsets before returning.
+     * @param part
+     * @param nozzle
+     * @return
+     * @throws Exception if the alignment fails before the part could leave the station. The
+     * returned future completes exceptionally if the rest of it fails.
+     */
+    default CompletableFuture<PartAlignmentOffset> startFindOffsets(Part part,
+            BoardLocation boardLocation, Location placementLocation, Nozzle nozzle)
+            throws Exception {
+        return CompletableFuture
+                .completedFuture(findOffsets(part, boardLocation, placementLocation, nozzle));
+    }
+
+    /**
+     * A part on a nozzle to be aligned, for aligning the parts on several nozzles together.
+     */
+    public class PartAlignmentRequest
+    {
+        private final Part part;
+        private final BoardLocation boardLocation;
+        private final Location placementLocation;
+        private final Nozzle nozzle;
+
+        public PartAlignmentRequest(Part part, BoardLocation boardLocation,
+                Location placementLocation, Nozzle nozzle)
+        {
+            this.part = part;
+            this.boardLocation = boardLocation;
+            this.placementLocation = placementLocation;
+            this.nozzle = nozzle;
+        }
+
+        public Part getPart()
+        {
+            return part;
+        }
+
+        public BoardLocation getBoardLocation()
+        {
+            return boardLocation;
+        }
+
+        public Location getPlacementLocation()
+        {
+            return placementLocation;
+        }
+
+        public Nozzle getNozzle()
+        {
+            return nozzle;
+        }
+    }
+
+    /**
+     * Whether the parts of the given requests can be aligned together with
+     * #findOffsets(List). The default is false.
+     * @param requests
+     * @return
+     */
+    default boolean canAlignTogether(List<PartAlignmentRequest> requests) {
+        return false;
+    }
+
+    /**
+     * Perform the part alignment operation for the parts on several nozzles together, for
+     * instance from a single camera frame. Only called if #canAlignTogether(List) returned
+     * true. The default aligns the parts one at a time.
+     * @param requests
+     * @return The offsets for each request, in the same order.
+     * @throws Exception if the alignment of any of the parts fails. The caller may retry.
+     */
+    default List<PartAlignmentOffset> findOffsets(List<PartAlignmentRequest> requests)
+            throws Exception {
+        List<PartAlignmentOffset> offsets = new ArrayList<>();
+        for (PartAlignmentRequest request : requests) {
+            offsets.add(findOffsets(request.getPart(), request.getBoardLocation(),
+                    request.getPlacementLocation(), request.getNozzle()));
+        }
+        return offsets;
+    }
     
     /**
      * Get a Wizard for configuring the PartAlignment instance properties for a specific
@@ -12,6 +12,16 @@ public interface PnpJobProcessor extends JobProcessor {
 
     public List<JobPlacement> getJobPlacementsById(String id, JobPlacement.Status status);
 
+    /**
+     * Get the estimated time, in seconds, to run the job as it was planned when it was started.
+     * Returns NaN if the processor doesn't estimate job times.
+     * 
+     * @return
+     */
+    public default double getEstimatedJobTime() {
+        return Double.NaN;
+    }
+
     public static class JobPlacement {
         public enum Status {
             Pending,
@@ -24,6 +24,7 @@ import java.awt.image.BufferedImage;
 import java.util.List;
 
 import org.openpnp.gui.support.Wizard;
+import org.openpnp.model.Length;
 import org.openpnp.model.Location;
 
 /**
@@ -44,6 +45,20 @@ public interface VisionProvider {
 
     public List<TemplateMatch> getTemplateMatches(BufferedImage template);
 
+    /**
+     * Like getTemplateMatches(BufferedImage), but only matches within searchRadius of the center of
+     * the camera need to be found. A null searchRadius searches the whole image. The default
+     * implementation searches the whole image.
+     * 
+     * @param template
+     * @param searchRadius
+     * @return
+     */
+    public default List<TemplateMatch> getTemplateMatches(BufferedImage template,
+            Length searchRadius) {
+        return getTemplateMatches(template);
+    }
+
     /**
      * @deprecated This function's interface will change in the near future to return real units
      *             instead of pixels.
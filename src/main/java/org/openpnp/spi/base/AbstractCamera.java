@@ -8,6 +8,7 @@ import java.util.Set;
 
 import javax.swing.Icon;
 
+import org.opencv.core.Mat;
 import org.openpnp.CameraListener;
 import org.openpnp.ConfigurationListener;
 import org.openpnp.gui.support.Icons;
@@ -18,6 +19,9 @@ import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.VisionProvider;
+import org.openpnp.util.OpenCvUtils;
+import org.openpnp.vision.FluentCv;
+import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 
@@ -40,6 +44,25 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
     @Attribute(required = false)
     protected long settleTimeMs = 250;
 
+    /**
+     * Instead of always waiting settleTimeMs, capture frames back to back until two in a row are
+     * closer than autoSettlePsnr, or settleTimeMs has passed.
+     */
+    @Attribute(required = false)
+    protected boolean autoSettle = false;
+
+    /**
+     * Peak signal to noise ratio in dB between two frames above which the image is considered to
+     * have stopped moving.
+     */
+    @Attribute(required = false)
+    protected double autoSettlePsnr = 30;
+
+    /**
+     * How long the last settle took, in milliseconds.
+     */
+    protected long lastSettleTimeMs;
+
     protected Set<ListenerEntry> listeners = Collections.synchronizedSet(new HashSet<>());
 
     protected Head head;
@@ -136,13 +159,77 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
     }
 
     public BufferedImage settleAndCapture() {
+        if (autoSettle) {
+            Mat mat = autoSettle();
+            BufferedImage image = OpenCvUtils.toBufferedImage(mat);
+            mat.release();
+            return image;
+        }
+        settle();
+        return capture();
+    }
+
+    public Mat settleAndCaptureMat() {
+        if (autoSettle) {
+            return autoSettle();
+        }
+        settle();
+        return captureMat();
+    }
+
+    @Override
+    public void settle() {
+        if (autoSettle) {
+            autoSettle().release();
+            return;
+        }
         try {
             Thread.sleep(getSettleTimeMs());
         }
         catch (Exception e) {
 
         }
-        return capture();
+        lastSettleTimeMs = getSettleTimeMs();
+    }
+
+    /**
+     * Capture frames until two in a row differ by less than autoSettlePsnr or settleTimeMs has
+     * passed, and return the last one. The caller must release it.
+     *
+     * Identical frames only count as settled once a new frame has come in. Until then they may
+     * be the same stale frame, from before the move, handed out again by the driver.
+     */
+    protected Mat autoSettle() {
+        long t = System.currentTimeMillis();
+        Mat previous = captureSettleFrame();
+        boolean newFrame = false;
+        while (true) {
+            Mat frame = captureSettleFrame();
+            long elapsed = System.currentTimeMillis() - t;
+            // calculatePsnr() returns 0 for identical frames.
+            double psnr = FluentCv.calculatePsnr(previous, frame);
+            previous.release();
+            newFrame |= psnr != 0;
+            if ((psnr == 0 && newFrame) || psnr >= autoSettlePsnr
+                    || elapsed >= getSettleTimeMs()) {
+                lastSettleTimeMs = elapsed;
+                Logger.debug("{} settled in {} ms, PSNR {}", getName(), elapsed,
+                        String.format("%.1f", psnr));
+                return frame;
+            }
+            previous = frame;
+        }
+    }
+
+    /**
+     * Capture one of the frames compared by #autoSettle(). Cameras that fire scripts or do other
+     * work around every capture should override this to capture without it, and do it once
+     * around the whole settle instead.
+     *
+     * @return
+     */
+    protected Mat captureSettleFrame() {
+        return captureMat();
     }
 
     protected void broadcastCapture(BufferedImage img) {
@@ -163,6 +250,27 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
         this.settleTimeMs = settleTimeMs;
     }
 
+    public boolean isAutoSettle() {
+        return autoSettle;
+    }
+
+    public void setAutoSettle(boolean autoSettle) {
+        this.autoSettle = autoSettle;
+    }
+
+    public double getAutoSettlePsnr() {
+        return autoSettlePsnr;
+    }
+
+    public void setAutoSettlePsnr(double autoSettlePsnr) {
+        this.autoSettlePsnr = autoSettlePsnr;
+    }
+
+    @Override
+    public long getLastSettleTimeMs() {
+        return lastSettleTimeMs;
+    }
+
     @Override
     public Icon getPropertySheetHolderIcon() {
         return Icons.captureCamera;
@@ -36,7 +36,9 @@ public abstract class AbstractFeeder extends AbstractModelObject implements Feed
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
             public void configurationLoaded(Configuration configuration) throws Exception {
+                Object oldValue = part;
                 part = configuration.getPart(partId);
+                firePropertyChange("part", oldValue, part);
             }
         });
     }
@@ -60,8 +62,10 @@ public abstract class AbstractFeeder extends AbstractModelObject implements Feed
 
     @Override
     public void setPart(Part part) {
+        Object oldValue = this.part;
         this.part = part;
         this.partId = part.getId();
+        firePropertyChange("part", oldValue, part);
     }
 
     @Override
@@ -98,4 +102,9 @@ public abstract class AbstractFeeder extends AbstractModelObject implements Feed
     }
     
     public void postPick(Nozzle nozzle) throws Exception { }
+
+    @Override
+    public boolean canPreFeed() {
+        return false;
+    }
 }
@@ -1,9 +1,12 @@
 package org.openpnp.spi.base;
 
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
@@ -17,6 +20,7 @@ import javax.swing.Icon;
 import org.openpnp.model.AbstractModelObject;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
+import org.openpnp.model.Part;
 import org.openpnp.spi.Actuator;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Feeder;
@@ -76,7 +80,18 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
 
     protected ThreadPoolExecutor executor;
 
-    protected AbstractMachine() {}
+    /**
+     * Feeders by the Part they serve. Built on demand by #getFeeders(Part) and dropped when a
+     * Feeder is added or removed or changes its Part.
+     */
+    private Map<Part, List<Feeder>> feedersByPart;
+
+    private final PropertyChangeListener feedersByPartInvalidator =
+            e -> invalidateFeedersByPart();
+
+    protected AbstractMachine() {
+        addPropertyChangeListener("feeders", feedersByPartInvalidator);
+    }
 
     @SuppressWarnings("unused")
     @Commit
@@ -126,6 +141,31 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
         return feeders.get(id);
     }
 
+    @Override
+    public synchronized List<Feeder> getFeeders(Part part) {
+        if (feedersByPart == null) {
+            feedersByPart = new HashMap<>();
+            for (Feeder feeder : feeders) {
+                if (feeder instanceof AbstractModelObject) {
+                    AbstractModelObject model = (AbstractModelObject) feeder;
+                    model.removePropertyChangeListener("part", feedersByPartInvalidator);
+                    model.addPropertyChangeListener("part", feedersByPartInvalidator);
+                }
+                feedersByPart.computeIfAbsent(feeder.getPart(), p -> new ArrayList<>())
+                        .add(feeder);
+            }
+        }
+        List<Feeder> partFeeders = feedersByPart.get(part);
+        if (partFeeders == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(partFeeders);
+    }
+
+    private synchronized void invalidateFeedersByPart() {
+        feedersByPart = null;
+    }
+
     @Override
     public List<Camera> getCameras() {
         return Collections.unmodifiableList(cameras);
@@ -84,8 +84,8 @@ public abstract class AbstractPnpJobProcessor extends AbstractJobProcessor
      * @throws Exception If no Feeder is found that is both enabled and is serving the Part.
      */
     public static Feeder findFeeder(Machine machine, Part part) throws Exception {
-        for (Feeder feeder : machine.getFeeders()) {
-            if (feeder.getPart() == part && feeder.isEnabled()) {
+        for (Feeder feeder : machine.getFeeders(part)) {
+            if (feeder.isEnabled()) {
                 return feeder;
             }
         }
@@ -0,0 +1,104 @@
+package org.openpnp.util;
+
+import java.util.Arrays;
+
+/**
+ * Solver for the rectangular assignment problem. Given a cost matrix with one row per worker and
+ * one column per task, finds the assignment of every row to a distinct column that has the lowest
+ * total cost. This is the Hungarian algorithm (Kuhn-Munkres) with row and column potentials and
+ * runs in O(rows^2 * columns).
+ */
+public class Assignment {
+    /**
+     * Solve the assignment problem for the given cost matrix. The matrix must have at least as
+     * many columns as rows and every row must have the same length.
+     *
+     * @param costs costs[row][column] is the cost of assigning row to column.
+     * @return An array with one entry per row containing the column assigned to that row.
+     */
+    public static int[] solve(long[][] costs) {
+        int rows = costs.length;
+        if (rows == 0) {
+            return new int[0];
+        }
+        int columns = costs[0].length;
+        if (columns < rows) {
+            throw new IllegalArgumentException(
+                    "Assignment requires at least as many columns as rows.");
+        }
+
+        // The implementation is 1-indexed, with row and column 0 used as sentinels.
+        long[] u = new long[rows + 1];
+        long[] v = new long[columns + 1];
+        int[] p = new int[columns + 1];
+        int[] way = new int[columns + 1];
+        long[] minv = new long[columns + 1];
+        boolean[] used = new boolean[columns + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                long delta = Long.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= columns; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    long cur = costs[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= columns; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    }
+                    else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            // Walk the augmenting path back to the root, flipping the assignments along it.
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] result = new int[rows];
+        for (int j = 1; j <= columns; j++) {
+            if (p[j] != 0) {
+                result[p[j] - 1] = j - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sum the cost of the given assignment.
+     *
+     * @param costs
+     * @param assignment
+     * @return
+     */
+    public static long cost(long[][] costs, int[] assignment) {
+        long total = 0;
+        for (int row = 0; row < assignment.length; row++) {
+            total += costs[row][assignment[row]];
+        }
+        return total;
+    }
+}
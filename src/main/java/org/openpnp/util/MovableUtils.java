@@ -8,7 +8,8 @@ public class MovableUtils {
     /**
      * Moves the given HeadMountable to the specified Location by first commanding the head to
      * safe-Z all of it's components, then moving the HeadMountable in X, Y and C, followed by
-     * moving in Z.
+     * moving in Z. If the head has a clearance height set (see ReferenceHead) it only rises that
+     * far.
      * 
      * @param hm
      * @param location
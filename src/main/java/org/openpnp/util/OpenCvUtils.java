@@ -246,4 +246,129 @@ public class OpenCvUtils {
         }
         saveDebugImage(implementationClass, function, identifier, OpenCvUtils.toBufferedImage(mat));
     }
+
+    enum MinMaxState {
+        BEFORE_INFLECTION, AFTER_INFLECTION
+    }
+
+    /**
+     * Find the local maxima in a single channel Mat, such as the result of a template match, whose
+     * values are between rangeMin and rangeMax. This is the local maxima detection from FireSight:
+     * https://github.com/firepick1/FireSight.
+     * 
+     * The Mat is copied into a float[] once and scanned from there, instead of reading each pixel
+     * and its neighbours with Mat.get(), which crosses JNI and allocates for every read. A Mat that
+     * is not CV_32FC1 is converted first.
+     * 
+     * @param mat
+     * @param rangeMin
+     * @param rangeMax
+     * @return The location of each maximum, as x = column and y = row.
+     */
+    public static List<java.awt.Point> matMaxima(Mat mat, double rangeMin, double rangeMax) {
+        List<java.awt.Point> locations = new ArrayList<>();
+
+        int rows = mat.rows();
+        int cols = mat.cols();
+        if (rows == 0 || cols == 0) {
+            return locations;
+        }
+        Mat m = mat;
+        if (mat.type() != CvType.CV_32FC1) {
+            m = new Mat();
+            mat.convertTo(m, CvType.CV_32F);
+        }
+        else if (!mat.isContinuous()) {
+            m = mat.clone();
+        }
+        float[] data = new float[rows * cols];
+        m.get(0, 0, data);
+        if (m != mat) {
+            m.release();
+        }
+
+        int rEnd = rows - 1;
+        int cEnd = cols - 1;
+
+        // CHECK EACH ROW MAXIMA FOR LOCAL 2D MAXIMA
+        for (int r = 0; r <= rEnd; r++) {
+            // Start of the current row, and of the rows above and below it.
+            int i = r * cols;
+            int above = i - cols;
+            int below = i + cols;
+            MinMaxState state = MinMaxState.BEFORE_INFLECTION;
+            double curVal = data[i];
+            for (int c = 1; c <= cEnd; c++) {
+                double val = data[i + c];
+
+                if (val == curVal) {
+                    continue;
+                }
+                else if (curVal < val) {
+                    state = MinMaxState.BEFORE_INFLECTION;
+                }
+                else { // curVal > val
+                    if (state == MinMaxState.BEFORE_INFLECTION) {
+                        if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
+                            if (0 < r && (data[above + c - 1] >= curVal
+                                    || data[above + c] >= curVal)) {
+                                // - x x
+                                // - - -
+                                // - - -
+                            }
+                            else if (r < rEnd && (data[below + c - 1] > curVal
+                                    || data[below + c] > curVal)) {
+                                // - - -
+                                // - - -
+                                // - x x
+                            }
+                            else if (1 < c && (0 < r && data[above + c - 2] >= curVal
+                                    || data[i + c - 2] > curVal
+                                    || r < rEnd && data[below + c - 2] > curVal)) {
+                                // x - -
+                                // x - -
+                                // x - -
+                            }
+                            else {
+                                locations.add(new java.awt.Point(c - 1, r));
+                            }
+                        }
+                        state = MinMaxState.AFTER_INFLECTION;
+                    }
+                }
+
+                curVal = val;
+            }
+
+            // PROCESS END OF ROW
+            if (state == MinMaxState.BEFORE_INFLECTION) {
+                if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
+                    if (0 < r && (data[above + cEnd - 1] >= curVal
+                            || data[above + cEnd] >= curVal)) {
+                        // - x x
+                        // - - -
+                        // - - -
+                    }
+                    else if (r < rEnd && (data[below + cEnd - 1] > curVal
+                            || data[below + cEnd] > curVal)) {
+                        // - - -
+                        // - - -
+                        // - x x
+                    }
+                    else if (1 < r && data[above + cEnd - 2] >= curVal
+                            || data[i + cEnd - 2] > curVal
+                            || r < rEnd && data[below + cEnd - 2] > curVal) {
+                        // x - -
+                        // x - -
+                        // x - -
+                    }
+                    else {
+                        locations.add(new java.awt.Point(cEnd, r));
+                    }
+                }
+            }
+        }
+
+        return locations;
+    }
 }
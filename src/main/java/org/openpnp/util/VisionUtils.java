@@ -6,6 +6,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
@@ -137,29 +138,63 @@ public class VisionUtils {
         }
     }
     
+    /**
+     * Start aligning the part, see PartAlignment#startFindOffsets. The Vision.PartAlignment.After
+     * script is run once the part is done at the alignment station, which may be before the
+     * offsets are known.
+     */
+    public static CompletableFuture<PartAlignment.PartAlignmentOffset> startPartAlignmentOffsets(
+            PartAlignment p, Part part, BoardLocation boardLocation, Location placementLocation,
+            Nozzle nozzle) throws Exception {
+        fireAlignmentScript("Vision.PartAlignment.Before", part, nozzle);
+        try {
+            return p.startFindOffsets(part, boardLocation, placementLocation, nozzle);
+        }
+        finally {
+            fireAlignmentScript("Vision.PartAlignment.After", part, nozzle);
+        }
+    }
+
+    /**
+     * Align the parts of the given requests together, see PartAlignment#findOffsets(List). The
+     * Vision.PartAlignment.Before and After scripts are run for each part.
+     */
+    public static List<PartAlignment.PartAlignmentOffset> findPartAlignmentOffsets(PartAlignment p,
+            List<PartAlignment.PartAlignmentRequest> requests) throws Exception {
+        for (PartAlignment.PartAlignmentRequest request : requests) {
+            fireAlignmentScript("Vision.PartAlignment.Before", request.getPart(),
+                    request.getNozzle());
+        }
+        try {
+            return p.findOffsets(requests);
+        }
+        finally {
+            for (PartAlignment.PartAlignmentRequest request : requests) {
+                fireAlignmentScript("Vision.PartAlignment.After", request.getPart(),
+                        request.getNozzle());
+            }
+        }
+    }
+
     public static PartAlignment.PartAlignmentOffset findPartAlignmentOffsets(PartAlignment p, Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception {
+        fireAlignmentScript("Vision.PartAlignment.Before", part, nozzle);
+        try {
+            return p.findOffsets(part, boardLocation, placementLocation, nozzle);
+        }
+        finally {
+            fireAlignmentScript("Vision.PartAlignment.After", part, nozzle);
+        }
+    }
+
+    private static void fireAlignmentScript(String event, Part part, Nozzle nozzle) {
         try {
             Map<String, Object> globals = new HashMap<>();
             globals.put("part", part);
             globals.put("nozzle", nozzle);
-            Configuration.get().getScripting().on("Vision.PartAlignment.Before", globals);
+            Configuration.get().getScripting().on(event, globals);
         }
         catch (Exception e) {
             Logger.warn(e);
         }
-        try {
-            return p.findOffsets(part, boardLocation, placementLocation, nozzle);
-        }
-        finally {
-            try {
-                Map<String, Object> globals = new HashMap<>();
-                globals.put("part", part);
-                globals.put("nozzle", nozzle);
-                Configuration.get().getScripting().on("Vision.PartAlignment.After", globals);
-            }
-            catch (Exception e) {
-                Logger.warn(e);
-            }
-        }
     }
 }
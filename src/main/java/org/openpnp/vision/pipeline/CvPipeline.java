@@ -3,10 +3,18 @@ package org.openpnp.vision.pipeline;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
@@ -16,6 +24,7 @@ import org.opencv.core.Scalar;
 import org.openpnp.model.Configuration;
 import org.openpnp.spi.Camera;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.Serializer;
@@ -49,11 +58,29 @@ public class CvPipeline {
     @ElementList
     private ArrayList<CvStage> stages = new ArrayList<>();
 
-    private Map<CvStage, Result> results = new HashMap<CvStage, Result>();
+    /**
+     * If true, independent branches of the pipeline are processed in parallel. See
+     * #getBranches().
+     */
+    @Attribute(required = false)
+    private boolean parallel = false;
+
+    private Map<CvStage, Result> results = new ConcurrentHashMap<CvStage, Result>();
 
     private Mat workingImage;
 
+    /**
+     * The branch being processed on the current thread. Each branch has its own working image.
+     */
+    private final ThreadLocal<Branch> currentBranch = new ThreadLocal<>();
+
     private Camera camera;
+
+    /**
+     * If set, ImageCapture stages use a copy of this instead of capturing from the camera. This
+     * lets a pipeline be run on a frame, or a region of a frame, that was captured earlier.
+     */
+    private Mat capturedImage;
     
     public CvPipeline() {
         
@@ -159,18 +186,35 @@ public class CvPipeline {
 
     /**
      * Get the current working image. Primarily intended to be called from CvStage implementations.
+     * While processing in parallel this is the working image of the branch the calling stage is in.
      * 
      * @return
      */
     public Mat getWorkingImage() {
-        if (workingImage == null || (workingImage.cols() == 0 && workingImage.rows() == 0)) {
-            workingImage = new Mat(480, 640, CvType.CV_8UC3, new Scalar(0, 0, 0));
-            Core.line(workingImage, new Point(0, 0), new Point(640, 480), new Scalar(0, 0, 255));
-            Core.line(workingImage, new Point(640, 0), new Point(0, 480), new Scalar(0, 0, 255));
+        Branch branch = currentBranch.get();
+        if (branch != null) {
+            if (isEmpty(branch.workingImage)) {
+                branch.workingImage = createEmptyImage();
+            }
+            return branch.workingImage;
+        }
+        if (isEmpty(workingImage)) {
+            workingImage = createEmptyImage();
         }
         return workingImage;
     }
 
+    private static boolean isEmpty(Mat image) {
+        return image == null || (image.cols() == 0 && image.rows() == 0);
+    }
+
+    private static Mat createEmptyImage() {
+        Mat image = new Mat(480, 640, CvType.CV_8UC3, new Scalar(0, 0, 0));
+        Core.line(image, new Point(0, 0), new Point(640, 480), new Scalar(0, 0, 255));
+        Core.line(image, new Point(640, 0), new Point(0, 480), new Scalar(0, 0, 255));
+        return image;
+    }
+
     public void setCamera(Camera camera) {
         this.camera = camera;
     }
@@ -179,51 +223,224 @@ public class CvPipeline {
         return camera;
     }
 
+    public Mat getCapturedImage() {
+        return capturedImage;
+    }
+
+    public void setCapturedImage(Mat capturedImage) {
+        this.capturedImage = capturedImage;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Process the pipeline, retaining a copy of every stage's image. This is what the pipeline
+     * editor uses so that each stage can be inspected.
+     */
     public void process() {
+        process(null);
+    }
+
+    /**
+     * Process the pipeline, retaining a copy of the image only for the named stages and for the
+     * stages whose images are read by other stages. All other results keep only their model and
+     * timing. This avoids a full image copy per stage when the caller only needs models, as most
+     * machine vision does. The working image is always available after processing.
+     * 
+     * If the pipeline is parallel, independent branches are processed on the common fork-join
+     * pool. See #getBranches().
+     * 
+     * @param retainedImages Names of the stages to retain images for, or null to retain all.
+     */
+    public void process(Collection<String> retainedImages) {
         release();
-        for (CvStage stage : stages) {
-            // Process and time the stage and get the result.
-            long processingTimeNs = System.nanoTime();
-            Result result = null;
-            try {
-                if (!stage.isEnabled()) {
-                    throw new Exception("Stage not enabled.");
+        Collection<String> retained = getRetainedImages(retainedImages);
+        List<Branch> branches = parallel ? getBranches() : null;
+        if (branches == null || branches.size() == 1) {
+            Branch branch = new Branch();
+            branch.stages.addAll(stages);
+            branch.workingImage = workingImage;
+            processBranch(branch, retained);
+            workingImage = branch.workingImage;
+            return;
+        }
+
+        // Start each branch once the branches it reads from are done. The working image of the
+        // pipeline is the one left by the last branch.
+        branches.get(0).workingImage = workingImage;
+        Map<Branch, CompletableFuture<Void>> futures = new HashMap<>();
+        for (Branch branch : branches) {
+            CompletableFuture<?>[] dependencies = branch.dependencies.stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture<?>[]::new);
+            futures.put(branch, CompletableFuture.allOf(dependencies)
+                    .thenRunAsync(() -> processBranch(branch, retained), ForkJoinPool.commonPool()));
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        finally {
+            Branch last = branches.get(branches.size() - 1);
+            for (Branch branch : branches) {
+                if (branch != last && branch.workingImage != null) {
+                    branch.workingImage.release();
                 }
-                result = stage.process(this);
             }
-            catch (Exception e) {
-                result = new Result(null, e);
+            workingImage = last.workingImage;
+        }
+    }
+
+    private void processBranch(Branch branch, Collection<String> retained) {
+        Branch previousBranch = currentBranch.get();
+        currentBranch.set(branch);
+        try {
+            for (CvStage stage : branch.stages) {
+                processStage(branch, stage, retained);
             }
-            processingTimeNs = System.nanoTime() - processingTimeNs;
+        }
+        finally {
+            currentBranch.set(previousBranch);
+        }
+    }
 
-            Mat image = null;
-            Object model = null;
-            if (result != null) {
-                image = result.image;
-                model = result.model;
+    private void processStage(Branch branch, CvStage stage, Collection<String> retained) {
+        // Process and time the stage and get the result.
+        long processingTimeNs = System.nanoTime();
+        Result result = null;
+        try {
+            if (!stage.isEnabled()) {
+                throw new Exception("Stage not enabled.");
             }
+            result = stage.process(this);
+        }
+        catch (Exception e) {
+            result = new Result(null, e);
+        }
+        processingTimeNs = System.nanoTime() - processingTimeNs;
+
+        Mat image = null;
+        Object model = null;
+        if (result != null) {
+            image = result.image;
+            model = result.model;
+        }
+        boolean retain = retained == null || retained.contains(stage.getName());
+
+        // If the result image is null and there is a working image, replace the result image
+        // replace the result image with a clone of the working image.
+        if (image == null) {
+            if (branch.workingImage != null && retain) {
+                image = branch.workingImage.clone();
+            }
+        }
+        // If the result image is not null:
+        // Release the working image if the result image is different.
+        // Replace the working image with the result image.
+        // Clone the result image for storage.
+        else {
+            if (branch.workingImage != null && branch.workingImage != image) {
+                branch.workingImage.release();
+            }
+            branch.workingImage = image;
+            image = retain ? image.clone() : null;
+        }
+
+        results.put(stage, new Result(image, model, processingTimeNs));
+    }
 
-            // If the result image is null and there is a working image, replace the result image
-            // replace the result image with a clone of the working image.
-            if (image == null) {
-                if (workingImage != null) {
-                    image = workingImage.clone();
+    /**
+     * Split the stages into branches that can be processed in parallel. A branch is a run of
+     * stages that pass the working image along. A new branch starts at each stage that replaces
+     * the working image without reading it, such as ImageRecall. A branch depends on the earlier
+     * branches holding the stages whose results it reads. A stage that can read any result waits
+     * for all earlier branches and all later branches wait for it. Each stage still sees exactly
+     * the results it would see when processed in series, so the results are the same.
+     * 
+     * Returns null if the pipeline can not be split, i.e. when a stage reads the result of a later
+     * stage.
+     */
+    private List<Branch> getBranches() {
+        List<Branch> branches = new ArrayList<>();
+        Map<String, Branch> stageBranches = new HashMap<>();
+        Branch branch = null;
+        Branch barrier = null;
+        for (CvStage stage : stages) {
+            if (branch == null || (stage.isEnabled() && !stage.readsWorkingImage(this))) {
+                branch = new Branch();
+                if (barrier != null) {
+                    branch.dependencies.add(barrier);
                 }
+                branches.add(branch);
             }
-            // If the result image is not null:
-            // Release the working image if the result image is different.
-            // Replace the working image with the result image.
-            // Clone the result image for storage.
-            else {
-                if (workingImage != null && workingImage != image) {
-                    workingImage.release();
+            branch.stages.add(stage);
+            stageBranches.put(stage.getName(), branch);
+            if (!stage.isEnabled()) {
+                continue;
+            }
+            Collection<String> imageInputs = stage.imageInputs();
+            Collection<String> modelInputs = stage.modelInputs();
+            if (imageInputs == null || modelInputs == null) {
+                branch.dependencies.addAll(branches);
+                branch.dependencies.remove(branch);
+                barrier = branch;
+                continue;
+            }
+            Set<String> inputs = new HashSet<>(imageInputs);
+            inputs.addAll(modelInputs);
+            for (String input : inputs) {
+                Branch dependency = stageBranches.get(input);
+                if (dependency == null) {
+                    if (getStage(input) != null) {
+                        return null;
+                    }
+                }
+                else if (dependency != branch) {
+                    branch.dependencies.add(dependency);
                 }
-                workingImage = image;
-                image = image.clone();
             }
+        }
+        return branches;
+    }
 
-            results.put(stage, new Result(image, model, processingTimeNs));
+    private static class Branch {
+        final List<CvStage> stages = new ArrayList<>();
+        final Set<Branch> dependencies = new LinkedHashSet<>();
+        Mat workingImage;
+    }
+
+    /**
+     * Add the names of the stages whose images are read by other stages to the requested names.
+     * Returns null, meaning retain all, if nothing was requested or if any enabled stage can read
+     * arbitrary images.
+     */
+    private Collection<String> getRetainedImages(Collection<String> requested) {
+        if (requested == null) {
+            return null;
+        }
+        Collection<String> retained = new HashSet<>(requested);
+        for (CvStage stage : stages) {
+            if (!stage.isEnabled()) {
+                continue;
+            }
+            Collection<String> inputs = stage.imageInputs();
+            if (inputs == null) {
+                return null;
+            }
+            retained.addAll(inputs);
         }
+        return retained;
     }
 
     /**
@@ -271,6 +488,7 @@ public class CvPipeline {
         for (CvStage stage : pipeline.getStages()) {
             add(stage);
         }
+        parallel = pipeline.isParallel();
     }
 
     private String generateUniqueName() {
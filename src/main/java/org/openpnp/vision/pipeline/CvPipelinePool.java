@@ -0,0 +1,91 @@
+package org.openpnp.vision.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A pool of parsed copies of pipelines. A pipeline holds the results of its last run, so a
+ * single instance can't be processed by two threads at once. Borrowing a copy from the pool
+ * instead lets the same pipeline be processed in parallel, and reusing copies saves parsing one
+ * for every run.
+ *
+ * Copies are made from the pipeline's XML. The pipeline is serialized again on every borrow and
+ * compared with the XML the idle copies were made from, so any change to it, including a change
+ * to a property of one of its stages, drops the copies of the old version. Serializing is much
+ * cheaper than parsing, which is what the pool saves.
+ */
+public class CvPipelinePool {
+    private static class Entry {
+        String xml;
+        final Deque<CvPipeline> idle = new ArrayDeque<>();
+    }
+
+    private final Map<CvPipeline, Entry> entries = new WeakHashMap<>();
+
+    /**
+     * The XML each borrowed copy was made from.
+     */
+    private final Map<CvPipeline, String> borrowed = new IdentityHashMap<>();
+
+    /**
+     * Borrow a copy of the pipeline. It must be given back with #giveBack when done with it.
+     *
+     * @param pipeline
+     * @return
+     * @throws Exception
+     */
+    public CvPipeline borrow(CvPipeline pipeline) throws Exception {
+        String xml = pipeline.toXmlString();
+        synchronized (this) {
+            Entry entry = entries.get(pipeline);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(pipeline, entry);
+            }
+            if (!xml.equals(entry.xml)) {
+                entry.xml = xml;
+                entry.idle.clear();
+            }
+            CvPipeline copy = entry.idle.poll();
+            if (copy != null) {
+                borrowed.put(copy, entry.xml);
+                return copy;
+            }
+        }
+        CvPipeline copy = new CvPipeline(xml);
+        synchronized (this) {
+            borrowed.put(copy, xml);
+        }
+        return copy;
+    }
+
+    /**
+     * Give back a copy borrowed with #borrow. Its results are released. It is kept for the next
+     * borrower unless the pipeline has changed since it was borrowed.
+     *
+     * @param pipeline
+     * @param copy
+     */
+    public void giveBack(CvPipeline pipeline, CvPipeline copy) {
+        copy.release();
+        copy.setCamera(null);
+        copy.setCapturedImage(null);
+        synchronized (this) {
+            String xml = borrowed.remove(copy);
+            Entry entry = entries.get(pipeline);
+            if (entry != null && xml != null && xml.equals(entry.xml)) {
+                entry.idle.push(copy);
+            }
+        }
+    }
+
+    /**
+     * Drop all the idle copies.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
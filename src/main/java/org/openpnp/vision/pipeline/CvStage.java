@@ -7,6 +7,8 @@ import java.beans.EventSetDescriptor;
 import java.beans.Introspector;
 import java.beans.MethodDescriptor;
 import java.beans.PropertyDescriptor;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.opencv.core.Mat;
 import org.simpleframework.xml.Attribute;
@@ -40,6 +42,40 @@ public abstract class CvStage {
      */
     public abstract Result process(CvPipeline pipeline) throws Exception;
 
+    /**
+     * Names of the stages whose result images this stage reads, so that
+     * CvPipeline#process(Collection) retains them. Return null if the stage may read the image of
+     * any stage. This is deliberately not a bean getter so it does not show in the stage editor.
+     * 
+     * @return
+     */
+    public Collection<String> imageInputs() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Names of the stages whose result models this stage reads. Used with #imageInputs() to find
+     * the stages a parallel CvPipeline must run first. Return null if the stage may read the
+     * result of any stage.
+     * 
+     * @return
+     */
+    public Collection<String> modelInputs() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Whether this stage reads the working image left by the previous stage. A stage that always
+     * replaces the working image without looking at it returns false, and a parallel CvPipeline
+     * can then start an independent branch at it.
+     * 
+     * @param pipeline
+     * @return
+     */
+    public boolean readsWorkingImage(CvPipeline pipeline) {
+        return true;
+    }
+
     public String getName() {
         return name;
     }
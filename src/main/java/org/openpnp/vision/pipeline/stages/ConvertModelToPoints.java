@@ -1,6 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.opencv.core.Point;
@@ -24,6 +26,14 @@ public class ConvertModelToPoints extends CvStage {
         this.modelStageName = modelStageName;
     }
 
+    @Override
+    public Collection<String> modelInputs() {
+        if (modelStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(modelStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (modelStageName == null) {
@@ -1,6 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.awt.Color;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.opencv.core.Core;
@@ -65,6 +67,14 @@ public class DrawCircles extends CvStage {
         this.circlesStageName = modelStageName;
     }
 
+    @Override
+    public Collection<String> modelInputs() {
+        if (circlesStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(circlesStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (circlesStageName == null) {
@@ -1,6 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.awt.Color;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.opencv.core.Mat;
@@ -62,6 +64,14 @@ public class DrawContours extends CvStage {
         this.index = index;
     }
 
+    @Override
+    public Collection<String> modelInputs() {
+        if (contoursStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(contoursStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (contoursStageName == null) {
@@ -1,6 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.awt.Color;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.opencv.core.Mat;
@@ -41,6 +43,14 @@ public class DrawKeyPoints extends CvStage {
         this.keyPointsStageName = keyPointsStageName;
     }
 
+    @Override
+    public Collection<String> modelInputs() {
+        if (keyPointsStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(keyPointsStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (keyPointsStageName == null) {
@@ -1,6 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.awt.Color;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 import org.opencv.core.Core;
@@ -82,6 +84,14 @@ public class DrawRotatedRects extends CvStage {
         this.rectCenterRadius = rectCenterRadius;
     }
 
+    @Override
+    public Collection<String> modelInputs() {
+        if (rotatedRectsStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(rotatedRectsStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (rotatedRectsStageName == null) {
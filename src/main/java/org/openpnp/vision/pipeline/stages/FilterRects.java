@@ -1,6 +1,7 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Collections;
 
@@ -111,6 +112,14 @@ public class FilterRects extends CvStage {
     }
     private static String[] verdict = {" ","+"};
     
+    @Override
+    public Collection<String> modelInputs() {
+        if (rotatedRectsStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(rotatedRectsStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (rotatedRectsStageName == null) {
@@ -1,18 +1,17 @@
 package org.openpnp.vision.pipeline.stages;
 
-import java.awt.image.BufferedImage;
-
+import org.opencv.core.Mat;
 import org.openpnp.spi.Camera;
-import org.openpnp.util.OpenCvUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
 import org.simpleframework.xml.Attribute;
 import org.openpnp.vision.pipeline.Stage;
 import org.openpnp.vision.pipeline.Property;
+import org.pmw.tinylog.Logger;
 
 @Stage(
   category   ="Image Processing", 
-  description="Capture an image from the pipeline camera.")
+  description="Capture an image from the pipeline camera, or use the image already captured for the pipeline if there is one.")
 
 public class ImageCapture extends CvStage {
     @Attribute
@@ -29,17 +28,20 @@ public class ImageCapture extends CvStage {
 
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
+        if (pipeline.getCapturedImage() != null) {
+            return new Result(pipeline.getCapturedImage().clone());
+        }
         Camera camera = pipeline.getCamera();
         if (camera == null) {
             throw new Exception("No Camera set on pipeline.");
         }
-        BufferedImage image;
         if (settleFirst) {
-            image = camera.settleAndCapture();
-        }
-        else {
-            image = camera.capture();
+            // The settle time of this capture is the model, so it shows with the image.
+            Mat image = camera.settleAndCaptureMat();
+            long settleTimeMs = camera.getLastSettleTimeMs();
+            Logger.debug("{} captured after settling for {} ms.", camera.getName(), settleTimeMs);
+            return new Result(image, settleTimeMs);
         }
-        return new Result(OpenCvUtils.toMat(image));
+        return new Result(camera.captureMat());
     }
 }
@@ -26,6 +26,12 @@ public class ImageRead extends CvStage {
         this.file = file;
     }
 
+    @Override
+    public boolean readsWorkingImage(CvPipeline pipeline) {
+        // If there is nothing to read the previous working image is kept.
+        return !file.exists();
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (!file.exists()) {
@@ -1,5 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
 import org.simpleframework.xml.Attribute;
@@ -16,6 +19,20 @@ public class ImageRecall extends CvStage {
         this.imageStageName = imageStageName;
     }
 
+    @Override
+    public Collection<String> imageInputs() {
+        if (imageStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(imageStageName);
+    }
+
+    @Override
+    public boolean readsWorkingImage(CvPipeline pipeline) {
+        // If there is nothing to recall the previous working image is kept.
+        return imageStageName == null || pipeline.getStage(imageStageName) == null;
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (imageStageName == null) {
@@ -2,6 +2,7 @@ package org.openpnp.vision.pipeline.stages;
 
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -10,6 +11,7 @@ import org.opencv.core.Core;
 import org.opencv.core.Core.MinMaxLocResult;
 import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
+import org.openpnp.util.OpenCvUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
 import org.openpnp.vision.pipeline.CvStage.Result.TemplateMatch;
@@ -66,6 +68,14 @@ public class MatchTemplate extends CvStage {
         this.corr = corr;
     }
 
+    @Override
+    public Collection<String> imageInputs() {
+        if (templateStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(templateStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (templateStageName == null) {
@@ -87,7 +97,7 @@ public class MatchTemplate extends CvStage {
 
 
         List<TemplateMatch> matches = new ArrayList<>();
-        for (Point point : matMaxima(result, rangeMin, rangeMax)) {
+        for (Point point : OpenCvUtils.matMaxima(result, rangeMin, rangeMax)) {
             int x = point.x;
             int y = point.y;
             TemplateMatch match = new TemplateMatch(x, y, template.cols(), template.rows(),
@@ -105,114 +115,4 @@ public class MatchTemplate extends CvStage {
 
         return new Result(result, matches);
     }
-
-    enum MinMaxState {
-        BEFORE_INFLECTION, AFTER_INFLECTION
-    }
-
-    static List<Point> matMaxima(Mat mat, double rangeMin, double rangeMax) {
-        List<Point> locations = new ArrayList<>();
-
-        int rEnd = mat.rows() - 1;
-        int cEnd = mat.cols() - 1;
-
-        // CHECK EACH ROW MAXIMA FOR LOCAL 2D MAXIMA
-        for (int r = 0; r <= rEnd; r++) {
-            MinMaxState state = MinMaxState.BEFORE_INFLECTION;
-            double curVal = mat.get(r, 0)[0];
-            for (int c = 1; c <= cEnd; c++) {
-                double val = mat.get(r, c)[0];
-
-                if (val == curVal) {
-                    continue;
-                }
-                else if (curVal < val) {
-                    if (state == MinMaxState.BEFORE_INFLECTION) {
-                        // n/a
-                    }
-                    else {
-                        state = MinMaxState.BEFORE_INFLECTION;
-                    }
-                }
-                else { // curVal > val
-                    if (state == MinMaxState.BEFORE_INFLECTION) {
-                        if (rangeMin <= curVal && curVal <= rangeMax) { // ROW
-                                                                        // MAXIMA
-                            if (0 < r && (mat.get(r - 1, c - 1)[0] >= curVal
-                                    || mat.get(r - 1, c)[0] >= curVal)) {
-                                // cout << "reject:r-1 " << r << "," << c-1 <<
-                                // endl;
-                                // - x x
-                                // - - -
-                                // - - -
-                            }
-                            else if (r < rEnd && (mat.get(r + 1, c - 1)[0] > curVal
-                                    || mat.get(r + 1, c)[0] > curVal)) {
-                                // cout << "reject:r+1 " << r << "," << c-1 <<
-                                // endl;
-                                // - - -
-                                // - - -
-                                // - x x
-                            }
-                            else if (1 < c && (0 < r && mat.get(r - 1, c - 2)[0] >= curVal
-                                    || mat.get(r, c - 2)[0] > curVal
-                                    || r < rEnd && mat.get(r + 1, c - 2)[0] > curVal)) {
-                                // cout << "reject:c-2 " << r << "," << c-1 <<
-                                // endl;
-                                // x - -
-                                // x - -
-                                // x - -
-                            }
-                            else {
-                                locations.add(new Point(c - 1, r));
-                            }
-                        }
-                        state = MinMaxState.AFTER_INFLECTION;
-                    }
-                    else {
-                        // n/a
-                    }
-                }
-
-                curVal = val;
-            }
-
-            // PROCESS END OF ROW
-            if (state == MinMaxState.BEFORE_INFLECTION) {
-                if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
-                    if (0 < r && (mat.get(r - 1, cEnd - 1)[0] >= curVal
-                            || mat.get(r - 1, cEnd)[0] >= curVal)) {
-                        // cout << "rejectEnd:r-1 " << r << "," << cEnd-1 <<
-                        // endl;
-                        // - x x
-                        // - - -
-                        // - - -
-                    }
-                    else if (r < rEnd && (mat.get(r + 1, cEnd - 1)[0] > curVal
-                            || mat.get(r + 1, cEnd)[0] > curVal)) {
-                        // cout << "rejectEnd:r+1 " << r << "," << cEnd-1 <<
-                        // endl;
-                        // - - -
-                        // - - -
-                        // - x x
-                    }
-                    else if (1 < r && mat.get(r - 1, cEnd - 2)[0] >= curVal
-                            || mat.get(r, cEnd - 2)[0] > curVal
-                            || r < rEnd && mat.get(r + 1, cEnd - 2)[0] > curVal) {
-                        // cout << "rejectEnd:cEnd-2 " << r << "," << cEnd-1 <<
-                        // endl;
-                        // x - -
-                        // x - -
-                        // x - -
-                    }
-                    else {
-                        locations.add(new Point(cEnd, r));
-                    }
-                }
-            }
-        }
-
-        return locations;
-    }
-
 }
@@ -1,6 +1,8 @@
 package org.openpnp.vision.pipeline.stages;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
@@ -35,6 +37,14 @@ public class ReadModelProperty extends CvStage {
         this.propertyName = propertyName;
     }
 
+    @Override
+    public Collection<String> modelInputs() {
+        if (modelStageName == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(modelStageName);
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (modelStageName == null) {
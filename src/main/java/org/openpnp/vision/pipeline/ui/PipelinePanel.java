@@ -21,6 +21,7 @@ import javax.swing.Action;
 import javax.swing.BoxLayout;
 import javax.swing.DropMode;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JEditorPane;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -49,6 +50,7 @@ public class PipelinePanel extends JPanel {
     private JTable stagesTable;
     private StagesTableModel stagesTableModel;
     private PropertySheetPanel propertySheetPanel;
+    private JCheckBox chckbxParallel;
 
     public PipelinePanel(CvPipelineEditor editor) {
         this.editor = editor;
@@ -88,6 +90,18 @@ public class PipelinePanel extends JPanel {
         pasteButton.setHideActionText(true);
         toolbar.add(pasteButton);
 
+        toolbar.addSeparator();
+
+        chckbxParallel = new JCheckBox("Parallel");
+        chckbxParallel.setToolTipText(
+                "Process independent branches of the pipeline, such as those starting with an ImageRecall, in parallel.");
+        chckbxParallel.setSelected(editor.getPipeline().isParallel());
+        chckbxParallel.addActionListener(e -> {
+            editor.getPipeline().setParallel(chckbxParallel.isSelected());
+            editor.process();
+        });
+        toolbar.add(chckbxParallel);
+
         JSplitPane splitPaneStages = new JSplitPane();
         splitPaneStages.setOrientation(JSplitPane.VERTICAL_SPLIT);
 
@@ -284,6 +298,7 @@ public class PipelinePanel extends JPanel {
                 Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
                 String s = (String) clipboard.getData(DataFlavor.stringFlavor);
                 editor.getPipeline().fromXmlString(s);
+                chckbxParallel.setSelected(editor.getPipeline().isParallel());
                 stagesTableModel.refresh();
                 Helpers.selectLastTableRow(stagesTable);
                 editor.process();
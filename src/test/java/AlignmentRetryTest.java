@@ -0,0 +1,96 @@
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PartAlignment.PartAlignmentOffset;
+import org.openpnp.util.TestUtils;
+
+public class AlignmentRetryTest {
+    /**
+     * Starts every alignment in the background with the given future and counts the blocking
+     * alignments.
+     */
+    static class BackgroundAlignment extends ReferenceBottomVision {
+        CompletableFuture<PartAlignmentOffset> future;
+        int blockingAlignments;
+
+        @Override
+        public CompletableFuture<PartAlignmentOffset> startFindOffsets(Part part,
+                BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) {
+            return future;
+        }
+
+        @Override
+        public PartAlignmentOffset findOffsets(Part part, BoardLocation boardLocation,
+                Location placementLocation, Nozzle nozzle) {
+            blockingAlignments++;
+            return new PartAlignmentOffset(new Location(LengthUnit.Millimeters), false);
+        }
+    }
+
+    private ReferenceMachine machine;
+    private ReferencePnpJobProcessor jobProcessor;
+    private BackgroundAlignment alignment;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+
+        machine = (ReferenceMachine) Configuration.get().getMachine();
+        alignment = new BackgroundAlignment();
+        machine.setPartAlignment(alignment);
+        jobProcessor = (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        machine.setEnabled(true);
+    }
+
+    /**
+     * A failed background alignment is done again, the blocking way, and the part is placed.
+     */
+    @Test
+    public void testFailedAlignmentIsRetried() throws Exception {
+        alignment.future = new CompletableFuture<>();
+        alignment.future.completeExceptionally(new Exception("No result found."));
+        runJob();
+        Assert.assertEquals(1, alignment.blockingAlignments);
+    }
+
+    /**
+     * A background alignment that never finishes is given up on after the timeout.
+     */
+    @Test
+    public void testTimedOutAlignmentIsRetried() throws Exception {
+        alignment.future = new CompletableFuture<>();
+        jobProcessor.setAlignmentTimeoutMilliseconds(100);
+        long t = System.currentTimeMillis();
+        runJob();
+        Assert.assertEquals(1, alignment.blockingAlignments);
+        Assert.assertTrue(alignment.future.isCancelled());
+        Assert.assertTrue(System.currentTimeMillis() - t < 10000);
+    }
+
+    /**
+     * A successful background alignment is used as is.
+     */
+    @Test
+    public void testCompletedAlignmentIsUsed() throws Exception {
+        alignment.future = CompletableFuture.completedFuture(
+                new PartAlignmentOffset(new Location(LengthUnit.Millimeters), false));
+        runJob();
+        Assert.assertEquals(0, alignment.blockingAlignments);
+    }
+
+    private void runJob() throws Exception {
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 1));
+        while (jobProcessor.next());
+    }
+}
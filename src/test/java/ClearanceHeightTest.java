@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceHead;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.TravelMode;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.TestUtils;
+
+public class ClearanceHeightTest {
+    /**
+     * Records the head's clearance height, in mm, at each feed.
+     */
+    static class RecordingFeeder extends ReferenceTubeFeeder {
+        final List<Double> clearanceHeights = new ArrayList<>();
+        boolean fail;
+
+        @Override
+        public void feed(Nozzle nozzle) throws Exception {
+            Length clearanceHeight = head.getClearanceHeight();
+            clearanceHeights.add(clearanceHeight == null ? null
+                    : clearanceHeight.convertToUnits(LengthUnit.Millimeters).getValue());
+            if (fail) {
+                throw new Exception("Feed failed.");
+            }
+        }
+    }
+
+    private static final double PART_HEIGHT = 0.0325 * 25.4;
+
+    private static final double MARGIN = 1;
+
+    private static ReferenceHead head;
+
+    private Machine machine;
+
+    private ReferencePnpJobProcessor jobProcessor;
+
+    private RecordingFeeder feeder;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+
+        machine = Configuration.get().getMachine();
+        head = (ReferenceHead) machine.getDefaultHead();
+        machine.getFeeder("F1").setEnabled(false);
+        feeder = new RecordingFeeder();
+        feeder.setPart(Configuration.get().getPart("R-0805-10K"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters));
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+
+        jobProcessor = (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setTravelMode(TravelMode.Clearance);
+        jobProcessor.setClearanceMargin(new Length(MARGIN, LengthUnit.Millimeters));
+        machine.setEnabled(true);
+    }
+
+    /**
+     * A disabled feeder is still on the machine, so the head must clear it.
+     */
+    @Test
+    public void testDisabledFeederIsCleared() throws Exception {
+        addFeeder(20, false);
+
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 1));
+        while (jobProcessor.next());
+        Assert.assertEquals(1, feeder.clearanceHeights.size());
+        Assert.assertEquals(20 + PART_HEIGHT + MARGIN, feeder.clearanceHeights.get(0), 1e-6);
+    }
+
+    /**
+     * The clearance height is only used while the job processor runs a step. In between, and
+     * after a step fails, the head goes to full safe Z.
+     */
+    @Test
+    public void testClearanceHeightIsResetBetweenSteps() throws Exception {
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 2));
+        feeder.fail = true;
+        try {
+            while (jobProcessor.next()) {
+                Assert.assertNull(head.getClearanceHeight());
+            }
+            Assert.fail("Expected the feed to fail.");
+        }
+        catch (Exception e) {
+        }
+        Assert.assertEquals(PART_HEIGHT + MARGIN, feeder.clearanceHeights.get(0), 1e-6);
+        Assert.assertNull(head.getClearanceHeight());
+
+        // A failed feed disables the feeder.
+        feeder.fail = false;
+        feeder.setEnabled(true);
+        while (jobProcessor.next()) {
+            Assert.assertNull(head.getClearanceHeight());
+        }
+        Assert.assertNull(head.getClearanceHeight());
+    }
+
+    /**
+     * A feeder added during the job is cleared from the next step on.
+     */
+    @Test
+    public void testFeederAddedDuringJobIsCleared() throws Exception {
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 4));
+        // Both nozzles are fed in the first cycle.
+        while (feeder.clearanceHeights.size() < 2 && jobProcessor.next());
+        addFeeder(30, true);
+        while (jobProcessor.next());
+
+        Assert.assertEquals(4, feeder.clearanceHeights.size());
+        Assert.assertEquals(PART_HEIGHT + MARGIN, feeder.clearanceHeights.get(1), 1e-6);
+        Assert.assertEquals(30 + PART_HEIGHT + MARGIN, feeder.clearanceHeights.get(2), 1e-6);
+    }
+
+    private void addFeeder(double z, boolean enabled) throws Exception {
+        ReferenceTubeFeeder feeder = new ReferenceTubeFeeder();
+        feeder.setPart(Configuration.get().getPart("C-0805-100NF"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters, 100, 100, z, 0));
+        feeder.setEnabled(enabled);
+        machine.addFeeder(feeder);
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.FeederSelection;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.TestUtils;
+
+public class FeederSelectionTest {
+    static class CountingFeeder extends ReferenceTubeFeeder {
+        int feeds;
+
+        @Override
+        public void feed(Nozzle nozzle) throws Exception {
+            feeds++;
+        }
+    }
+
+    private Machine machine;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+
+        machine = Configuration.get().getMachine();
+        machine.getFeeder("F1").setEnabled(false);
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        CountingFeeder a = addFeeder(20, 20);
+        CountingFeeder b = addFeeder(40, 20);
+
+        run(FeederSelection.RoundRobin, 4);
+        Assert.assertEquals(2, a.feeds);
+        Assert.assertEquals(2, b.feeds);
+    }
+
+    /**
+     * The nearest feeder is used even though a farther one was added first.
+     */
+    @Test
+    public void testNearest() throws Exception {
+        CountingFeeder far = addFeeder(1000, 1000);
+        CountingFeeder near = addFeeder(20, 20);
+
+        run(FeederSelection.Nearest, 4);
+        Assert.assertEquals(0, far.feeds);
+        Assert.assertEquals(4, near.feeds);
+    }
+
+    private CountingFeeder addFeeder(double x, double y) throws Exception {
+        CountingFeeder feeder = new CountingFeeder();
+        feeder.setPart(Configuration.get().getPart("R-0805-10K"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters, x, y, 0, 0));
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+        return feeder;
+    }
+
+    private void run(FeederSelection feederSelection, int placementCount) throws Exception {
+        ReferencePnpJobProcessor jobProcessor =
+                (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setFeederSelection(feederSelection);
+        machine.setEnabled(true);
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", placementCount));
+        while (jobProcessor.next());
+    }
+}
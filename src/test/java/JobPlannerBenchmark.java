@@ -0,0 +1,31 @@
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.util.BenchmarkTimer;
+import org.openpnp.util.TestUtils;
+
+public class JobPlannerBenchmark {
+    /**
+     * Time a single planning cycle as the number of pending placements grows. The time per cycle
+     * should stay roughly flat, the cartesian product planner could not plan a single cycle of
+     * the larger jobs at all.
+     */
+    @Test
+    public void benchmarkPlanCycle() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+        List<Nozzle> nozzles = Configuration.get().getMachine().getHead("H1").getNozzles();
+        Random random = new Random(0);
+        for (int count : new int[] {10, 100, 1000, 10000, 100000}) {
+            List<JobPlacement> jobPlacements =
+                    JobPlannerTest.createJobPlacements(random, count);
+            double ms = BenchmarkTimer.time(100,
+                    () -> ReferencePnpJobProcessor.planCycle(nozzles, jobPlacements));
+            BenchmarkTimer.log("planCycle(%d placements): %.1f us per cycle", count, ms * 1000);
+        }
+    }
+}
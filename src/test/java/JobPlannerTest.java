@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferencePnpJobPlanner;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.base.AbstractPnpJobProcessor;
+import org.openpnp.util.Collect;
+import org.openpnp.util.TestUtils;
+
+public class JobPlannerTest {
+    static Head head;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+        head = Configuration.get().getMachine().getHead("H1");
+        // Nozzle tips are swapped directly by the tests, no need to visit the changer.
+        for (Nozzle nozzle : head.getNozzles()) {
+            ((ReferenceNozzle) nozzle).setChangerEnabled(false);
+        }
+    }
+
+    /**
+     * Compare the assignment based planner against the original cartesian product planner on
+     * random jobs that are small enough for the cartesian product to be computed.
+     */
+    @Test
+    public void testPlanCycleMatchesCartesianPlanner() throws Exception {
+        Random random = new Random(0);
+        List<Nozzle> nozzles = head.getNozzles();
+        List<NozzleTip> nozzleTips = new ArrayList<>(nozzles.get(0).getNozzleTips());
+        nozzleTips.add(null);
+        for (int i = 0; i < 500; i++) {
+            for (Nozzle nozzle : nozzles) {
+                loadNozzleTip(nozzle, nozzleTips.get(random.nextInt(nozzleTips.size())));
+            }
+            List<JobPlacement> jobPlacements = createJobPlacements(random, 1 + random.nextInt(8));
+            List<JobPlacement> expected = planCartesian(nozzles, jobPlacements);
+            List<JobPlacement> actual =
+                    ReferencePnpJobProcessor.planCycle(nozzles, jobPlacements);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Plan whole jobs with and without look ahead and make sure every placement that can be
+     * handled is planned exactly once, on a nozzle that can handle it.
+     */
+    @Test
+    public void testPlanJob() throws Exception {
+        Random random = new Random(0);
+        Machine machine = Configuration.get().getMachine();
+        ReferencePnpJobPlanner planner = new ReferencePnpJobPlanner(machine, head, 100, 10);
+        List<Nozzle> nozzles = head.getNozzles();
+        for (int i = 0; i < 20; i++) {
+            List<JobPlacement> jobPlacements = createJobPlacements(random, 1 + random.nextInt(50))
+                    .stream().filter(jobPlacement -> {
+                        return nozzles.stream().anyMatch(nozzle -> {
+                            return AbstractPnpJobProcessor.nozzleCanHandle(nozzle,
+                                    jobPlacement.placement.getPart());
+                        });
+                    }).collect(Collectors.toList());
+            for (boolean lookAhead : new boolean[] {false, true}) {
+                List<ReferencePnpJobPlanner.Cycle> cycles =
+                        planner.planCycles(jobPlacements, null, lookAhead);
+                List<JobPlacement> planned = new ArrayList<>();
+                for (ReferencePnpJobPlanner.Cycle cycle : cycles) {
+                    for (int j = 0; j < nozzles.size(); j++) {
+                        JobPlacement jobPlacement = cycle.jobPlacements.get(j);
+                        if (jobPlacement == null) {
+                            continue;
+                        }
+                        Assert.assertTrue(cycle.nozzleTips.get(j)
+                                .canHandle(jobPlacement.placement.getPart()));
+                        planned.add(jobPlacement);
+                    }
+                }
+                Assert.assertEquals(jobPlacements.size(), planned.size());
+                Assert.assertEquals(new HashSet<>(jobPlacements), new HashSet<>(planned));
+            }
+        }
+    }
+
+    /**
+     * Two parts whose feeders are far apart, placed at the same spot and listed alternately. The
+     * greedy plan picks one of each part in every cycle and crosses between the feeders each
+     * time, the look ahead plan picks both of the same part in each cycle.
+     */
+    @Test
+    public void testLookAheadReducesTravel() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        for (Nozzle nozzle : head.getNozzles()) {
+            for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+                if (nozzleTip.getId().equals("NT2")) {
+                    loadNozzleTip(nozzle, nozzleTip);
+                }
+            }
+        }
+        ReferenceTubeFeeder feeder = new ReferenceTubeFeeder();
+        feeder.setPart(Configuration.get().getPart("C-0805-100NF"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters, 200, 0, 0, 0));
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+        try {
+            BoardLocation boardLocation = new BoardLocation(new Board());
+            boardLocation.setLocation(new Location(LengthUnit.Millimeters));
+            List<JobPlacement> jobPlacements = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                jobPlacements.add(new JobPlacement(boardLocation, TestUtils.createPlacement(
+                        "P" + i, i % 2 == 0 ? "R-0805-10K" : "C-0805-100NF", 100, 100, 0, 0,
+                        Side.Top)));
+            }
+            ReferencePnpJobPlanner planner = new ReferencePnpJobPlanner(machine, head, 100, 10);
+            Location startLocation = new Location(LengthUnit.Millimeters);
+            double greedy = ReferencePnpJobPlanner
+                    .getEstimatedTime(planner.planCycles(jobPlacements, startLocation, false));
+            double lookAhead = ReferencePnpJobPlanner
+                    .getEstimatedTime(planner.planCycles(jobPlacements, startLocation, true));
+            Assert.assertTrue(String.format("look ahead %.1f s, greedy %.1f s", lookAhead, greedy),
+                    lookAhead < greedy);
+        }
+        finally {
+            machine.removeFeeder(feeder);
+        }
+    }
+
+    /**
+     * Placements that no nozzle can handle fail the plan instead of being left out of it.
+     */
+    @Test
+    public void testUnplannablePlacementsThrow() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        ReferencePnpJobPlanner planner = new ReferencePnpJobPlanner(machine, head, 100, 10);
+        Part part = new Part("P1206");
+        part.setPackage(Configuration.get().getPackage("1206"));
+        part.setHeight(new Length(1, LengthUnit.Millimeters));
+        Placement placement = new Placement("R1");
+        placement.setPart(part);
+        placement.setLocation(new Location(LengthUnit.Millimeters));
+        placement.setSide(Side.Top);
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        jobPlacements.add(new JobPlacement(new BoardLocation(new Board()), placement));
+        for (boolean lookAhead : new boolean[] {false, true}) {
+            try {
+                planner.planCycles(jobPlacements, null, lookAhead);
+                Assert.fail("Expected the plan to fail.");
+            }
+            catch (Exception e) {
+            }
+        }
+    }
+
+    private static void loadNozzleTip(Nozzle nozzle, NozzleTip nozzleTip) throws Exception {
+        nozzle.unloadNozzleTip();
+        if (nozzleTip != null) {
+            nozzle.loadNozzleTip(nozzleTip);
+        }
+    }
+
+    static List<JobPlacement> createJobPlacements(Random random, int count) {
+        String[] packageIds = new String[] {"0603", "0805", "1206"};
+        List<Part> parts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Part part = new Part("P" + i);
+            part.setPackage(Configuration.get().getPackage(packageIds[i % packageIds.length]));
+            part.setHeight(new Length(1 + random.nextInt(3), LengthUnit.Millimeters));
+            parts.add(part);
+        }
+        Board board = new Board();
+        BoardLocation boardLocation = new BoardLocation(board);
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Placement placement = new Placement("R" + i);
+            placement.setPart(parts.get(random.nextInt(parts.size())));
+            placement.setLocation(new Location(LengthUnit.Millimeters));
+            placement.setSide(Side.Top);
+            jobPlacements.add(new JobPlacement(boardLocation, placement));
+        }
+        return jobPlacements.stream().sorted(Comparator.comparing(JobPlacement::getPartHeight))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The original planner: the cartesian product of every Nozzle's compatible placements,
+     * filtered for duplicates and sorted by fewest nulls, then fewest nozzle changes.
+     */
+    private static List<JobPlacement> planCartesian(List<Nozzle> nozzles,
+            List<JobPlacement> jobPlacements) {
+        List<List<JobPlacement>> solutions = new ArrayList<>();
+        for (Nozzle nozzle : nozzles) {
+            List<JobPlacement> solution = new ArrayList<>();
+            for (JobPlacement jobPlacement : jobPlacements) {
+                if (AbstractPnpJobProcessor.nozzleCanHandle(nozzle,
+                        jobPlacement.placement.getPart())) {
+                    solution.add(jobPlacement);
+                }
+            }
+            solution.add(null);
+            solutions.add(solution);
+        }
+        Comparator<List<JobPlacement>> byFewestNulls = Comparator.comparing(list -> {
+            return Collections.frequency(list, null);
+        });
+        Comparator<List<JobPlacement>> byFewestNozzleChanges = Comparator.comparing(list -> {
+            int count = 0;
+            for (int i = 0; i < nozzles.size(); i++) {
+                Nozzle nozzle = nozzles.get(i);
+                JobPlacement jp = list.get(i);
+                if (nozzle.getNozzleTip() == null) {
+                    count++;
+                }
+                else if (jp != null && !nozzle.getNozzleTip().canHandle(jp.placement.getPart())) {
+                    count++;
+                }
+            }
+            return count;
+        });
+        return Collect.cartesianProduct(solutions).stream().filter(list -> {
+            HashSet<JobPlacement> set = new HashSet<>();
+            for (JobPlacement jp : list) {
+                if (jp != null && !set.add(jp)) {
+                    return false;
+                }
+            }
+            return true;
+        }).sorted(byFewestNulls.thenComparing(byFewestNozzleChanges)).findFirst().orElse(null);
+    }
+}
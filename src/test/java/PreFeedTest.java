@@ -0,0 +1,76 @@
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.JobProcessor;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.TestUtils;
+
+public class PreFeedTest {
+    static class CountingFeeder extends ReferenceTubeFeeder {
+        int feeds;
+
+        @Override
+        public boolean canPreFeed() {
+            return true;
+        }
+
+        @Override
+        public void feed(Nozzle nozzle) throws Exception {
+            feeds++;
+        }
+    }
+
+    /**
+     * A feeder is fed ahead for the next cycle and isn't fed again before its pick.
+     */
+    @Test
+    public void testPreFedFeederIsNotFedAgain() throws Exception {
+        CountingFeeder feeder = createMachine();
+        JobProcessor jobProcessor = Configuration.get().getMachine().getPnpJobProcessor();
+
+        // Two cycles of two placements, the second one fed ahead.
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 4));
+        while (jobProcessor.next());
+        Assert.assertEquals(4, feeder.feeds);
+    }
+
+    /**
+     * The part a feeder was fed ahead for may be picked or cleared by hand after the job is
+     * aborted, so the next job feeds it again instead of picking from what may be an empty
+     * feeder.
+     */
+    @Test
+    public void testNextJobFeedsAgainAfterAbort() throws Exception {
+        CountingFeeder feeder = createMachine();
+        JobProcessor jobProcessor = Configuration.get().getMachine().getPnpJobProcessor();
+
+        // Once the first cycle has been picked the feeder is fed ahead for the second one, then
+        // the job is aborted.
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 4));
+        while (feeder.feeds < 3 && jobProcessor.next());
+        Assert.assertEquals(3, feeder.feeds);
+        jobProcessor.abort();
+
+        jobProcessor.initialize(TestUtils.createJob("R-0805-10K", 1));
+        while (jobProcessor.next());
+        Assert.assertEquals(4, feeder.feeds);
+    }
+
+    private static CountingFeeder createMachine() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+
+        Machine machine = Configuration.get().getMachine();
+        machine.getFeeder("F1").setEnabled(false);
+        CountingFeeder feeder = new CountingFeeder();
+        feeder.setPart(Configuration.get().getPart("R-0805-10K"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters));
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+        machine.setEnabled(true);
+        return feeder;
+    }
+}
@@ -0,0 +1,50 @@
+package org.openpnp.machine.reference;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.openpnp.machine.reference.ReferenceCameraTest.TestCamera;
+import org.openpnp.util.BenchmarkTimer;
+import org.openpnp.util.TestUtils;
+
+public class ReferenceCameraBenchmark {
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Cameras register a configuration listener when they are created.
+        TestUtils.loadBasicJobTestConfiguration();
+    }
+
+    /**
+     * Time the original per frame chain of transforms and the combined remap with lens
+     * undistortion, scale, rotation and offset all enabled.
+     */
+    @Test
+    public void benchmarkTransform() throws Exception {
+        for (Size size : new Size[] {new Size(1280, 720), new Size(1920, 1080)}) {
+            TestCamera camera = new TestCamera();
+            ReferenceCamera.LensCalibrationParams calibration = camera.getCalibration();
+            Mat cameraMatrix = Mat.eye(3, 3, CvType.CV_64FC1);
+            cameraMatrix.put(0, 0, size.width, 0, size.width / 2, 0, size.width, size.height / 2, 0,
+                    0, 1);
+            calibration.setCameraMatrixMat(cameraMatrix);
+            Mat distortionCoefficients = new Mat(5, 1, CvType.CV_64FC1);
+            distortionCoefficients.put(0, 0, -0.1, 0.01, 0, 0, 0);
+            calibration.setDistortionCoefficientsMat(distortionCoefficients);
+            calibration.setEnabled(true);
+            camera.setScaleWidth((int) size.width / 2);
+            camera.setScaleHeight((int) size.height / 2);
+            camera.setRotation(3);
+            camera.setOffsetX(5);
+            camera.setOffsetY(5);
+            Mat frame = ReferenceCameraTest.createFrame((int) size.width, (int) size.height);
+            double chain = BenchmarkTimer.time(50,
+                    () -> ReferenceCameraTest.transformWithChain(camera, frame).release());
+            double remap = BenchmarkTimer.time(50, () -> camera.transformMat(frame));
+            BenchmarkTimer.log("transform %dx%d: chain %.2f ms, combined remap %.2f ms per frame",
+                    (int) size.width, (int) size.height, chain, remap);
+            frame.release();
+        }
+    }
+}
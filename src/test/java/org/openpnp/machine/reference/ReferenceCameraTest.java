@@ -0,0 +1,288 @@
+package org.openpnp.machine.reference;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openpnp.gui.support.Wizard;
+import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.util.TestUtils;
+
+public class ReferenceCameraTest {
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Cameras register a configuration listener when they are created.
+        TestUtils.loadBasicJobTestConfiguration();
+    }
+
+    /**
+     * The combined remap must give the same image as the original chain of transforms when only
+     * a single interpolating transform is involved.
+     */
+    @Test
+    public void testTransformMatchesChain() {
+        TestCamera camera = new TestCamera();
+        camera.setRotation(12.5);
+        camera.setOffsetX(17);
+        camera.setOffsetY(-9);
+        camera.setFlipX(true);
+        camera.setDeinterlace(true);
+        Mat frame = createFrame(640, 480);
+        Mat expected = transformWithChain(camera, frame);
+        Mat actual = camera.transformMat(frame);
+        Assert.assertEquals(expected.size(), actual.size());
+        Mat diff = new Mat();
+        Core.absdiff(expected, actual, diff);
+        Assert.assertTrue(Core.mean(diff).val[0] < 1.0);
+        diff.release();
+        expected.release();
+        frame.release();
+    }
+
+    /**
+     * The transformed frame is written to the same Mat every time, and an untransformed frame is
+     * handed back without a copy.
+     */
+    @Test
+    public void testTransformReusesDestination() {
+        TestCamera camera = new TestCamera();
+        Mat frame = createFrame(64, 48);
+        Assert.assertSame(frame, camera.transformMat(frame));
+
+        camera.setRotation(90);
+        Mat first = camera.transformMat(frame);
+        Assert.assertNotSame(frame, first);
+        long address = first.dataAddr();
+        Mat second = camera.transformMat(frame);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(address, second.dataAddr());
+        frame.release();
+    }
+
+    /**
+     * Two threads transforming different frames on the same camera must each get back their own
+     * frame, whole, and not one that the other thread overwrote or released.
+     */
+    @Test
+    public void testConcurrentTransformImage() throws Exception {
+        TestCamera camera = new TestCamera();
+        camera.setFlipX(true);
+        camera.setCropWidth(48);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            byte value = (byte) (50 + 100 * t);
+            threads[t] = new Thread(() -> {
+                try {
+                    BufferedImage frame = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+                    Arrays.fill(((DataBufferByte) frame.getRaster().getDataBuffer()).getData(),
+                            value);
+                    for (int i = 0; i < 500 && failure.get() == null; i++) {
+                        BufferedImage image = camera.transformImage(frame);
+                        Assert.assertEquals(48, image.getWidth());
+                        for (byte b : ((DataBufferByte) image.getRaster().getDataBuffer())
+                                .getData()) {
+                            Assert.assertEquals(value, b);
+                        }
+                    }
+                }
+                catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    /**
+     * Auto settle must not settle on the stale frame a driver hands out again before a new one
+     * comes in, and must fire the capture scripts once around the whole settle.
+     */
+    @Test
+    public void testAutoSettle() {
+        SettleCamera camera = new SettleCamera();
+        camera.setAutoSettle(true);
+        camera.setSettleTimeMs(10000);
+
+        // The same stale frame a few times, then the moving image, then a settled one.
+        camera.frames.addAll(Arrays.asList(10, 10, 10, 10, 200, 201));
+        Mat mat = camera.settleAndCaptureMat();
+        Assert.assertEquals(201, mat.get(0, 0)[0], 0);
+        Assert.assertTrue(camera.frames.isEmpty());
+        Assert.assertEquals(Arrays.asList("Camera.BeforeCapture", "Camera.AfterCapture"),
+                camera.events);
+        mat.release();
+
+        // Identical frames are settled once a new frame has come in.
+        camera.events.clear();
+        camera.frames.addAll(Arrays.asList(10, 200, 200, 50));
+        mat = camera.settleAndCaptureMat();
+        Assert.assertEquals(200, mat.get(0, 0)[0], 0);
+        Assert.assertEquals(Arrays.asList(50), camera.frames);
+        Assert.assertEquals(2, camera.events.size());
+        mat.release();
+    }
+
+    static Mat createFrame(int width, int height) {
+        Mat mat = new Mat(height, width, CvType.CV_8UC3);
+        byte[] data = new byte[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = (y * width + x) * 3;
+                data[i] = (byte) (x * 255 / width);
+                data[i + 1] = (byte) (y * 255 / height);
+                data[i + 2] = (byte) ((x + y) % 256);
+            }
+        }
+        mat.put(0, 0, data);
+        return mat;
+    }
+
+    /**
+     * The original implementation of ReferenceCamera.transformImage(), without crop, as a chain
+     * of separate transforms each into a new Mat.
+     */
+    static Mat transformWithChain(ReferenceCamera camera, Mat frame) {
+        Mat mat = frame.clone();
+        ReferenceCamera.LensCalibrationParams calibration = camera.getCalibration();
+        if (calibration.isEnabled()) {
+            Mat map1 = new Mat();
+            Mat map2 = new Mat();
+            Mat rectification = Mat.eye(3, 3, CvType.CV_32F);
+            Imgproc.initUndistortRectifyMap(calibration.getCameraMatrixMat(),
+                    calibration.getDistortionCoefficientsMat(), rectification,
+                    calibration.getCameraMatrixMat(), mat.size(), CvType.CV_32FC1, map1, map2);
+            rectification.release();
+            Mat dst = mat.clone();
+            Imgproc.remap(mat, dst, map1, map2, Imgproc.INTER_LINEAR);
+            mat.release();
+            map1.release();
+            map2.release();
+            mat = dst;
+        }
+        if (camera.getScaleWidth() != 0 && camera.getScaleHeight() != 0) {
+            Mat dst = new Mat();
+            Imgproc.resize(mat, dst, new Size(camera.getScaleWidth(), camera.getScaleHeight()));
+            mat.release();
+            mat = dst;
+        }
+        if (camera.getRotation() != 0D) {
+            Point center = new Point(mat.width() / 2D, mat.height() / 2D);
+            Mat mapMatrix = Imgproc.getRotationMatrix2D(center, camera.getRotation(), 1.0);
+            Rect bbox = new RotatedRect(center, mat.size(), camera.getRotation()).boundingRect();
+            double[] cx = mapMatrix.get(0, 2);
+            double[] cy = mapMatrix.get(1, 2);
+            cx[0] += bbox.width / 2D - center.x;
+            cy[0] += bbox.height / 2D - center.y;
+            mapMatrix.put(0, 2, cx);
+            mapMatrix.put(1, 2, cy);
+            Mat dst = new Mat(bbox.width, bbox.height, mat.type());
+            Imgproc.warpAffine(mat, dst, mapMatrix, bbox.size(), Imgproc.INTER_LINEAR);
+            mat.release();
+            mapMatrix.release();
+            mat = dst;
+        }
+        if (camera.getOffsetX() != 0 || camera.getOffsetY() != 0) {
+            Mat mapMatrix = new Mat(2, 3, CvType.CV_32F);
+            mapMatrix.put(0, 0, 1, 0, camera.getOffsetX());
+            mapMatrix.put(1, 0, 0, 1, camera.getOffsetY());
+            Mat dst = mat.clone();
+            Imgproc.warpAffine(mat, dst, mapMatrix, mat.size(), Imgproc.INTER_LINEAR);
+            mat.release();
+            mapMatrix.release();
+            mat = dst;
+        }
+        if (camera.isDeinterlace()) {
+            Mat dst = Mat.zeros(mat.size(), mat.type());
+            for (int i = 0; i < mat.rows() / 2; i++) {
+                mat.row(i).copyTo(dst.row(i * 2));
+                mat.row(i + mat.rows() / 2).copyTo(dst.row(i * 2 + 1));
+            }
+            mat.release();
+            mat = dst;
+        }
+        if (camera.isFlipX() || camera.isFlipY()) {
+            int flipCode;
+            if (camera.isFlipX() && camera.isFlipY()) {
+                flipCode = -1;
+            }
+            else {
+                flipCode = camera.isFlipX() ? 0 : 1;
+            }
+            Core.flip(mat, mat, flipCode);
+        }
+        return mat;
+    }
+
+    /**
+     * Captures uniform frames of the queued values, repeating the last one when the queue is
+     * empty, and records the capture events instead of running scripts.
+     */
+    static class SettleCamera extends TestCamera {
+        final Deque<Integer> frames = new ArrayDeque<>();
+        final List<String> events = new ArrayList<>();
+        int value;
+
+        @Override
+        protected BufferedImage internalCapture() {
+            if (!frames.isEmpty()) {
+                value = frames.poll();
+            }
+            BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+            Arrays.fill(((DataBufferByte) image.getRaster().getDataBuffer()).getData(),
+                    (byte) value);
+            return image;
+        }
+
+        @Override
+        protected void fireCaptureEvent(String event) {
+            events.add(event);
+        }
+    }
+
+    static class TestCamera extends ReferenceCamera {
+        @Override
+        protected BufferedImage internalCapture() {
+            return null;
+        }
+
+        @Override
+        public Wizard getConfigurationWizard() {
+            return null;
+        }
+
+        @Override
+        public String getPropertySheetHolderTitle() {
+            return null;
+        }
+
+        @Override
+        public PropertySheetHolder[] getChildPropertySheetHolders() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.openpnp.machine.reference.camera;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameBufferTest {
+    @Test
+    public void testFirstFrameAfter() throws Exception {
+        FrameBuffer buffer = new FrameBuffer(3);
+        Assert.assertNull(buffer.getLatest());
+        Assert.assertNull(buffer.getFirstFrameAfter(0, 0));
+
+        BufferedImage[] images = new BufferedImage[5];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            buffer.add(i * 10, images[i]);
+        }
+        // Only the last 3 are kept.
+        Assert.assertSame(images[4], buffer.getLatest().image);
+        Assert.assertSame(images[2], buffer.getFirstFrameAfter(0, 0).image);
+        Assert.assertSame(images[3], buffer.getFirstFrameAfter(25, 0).image);
+        Assert.assertSame(images[3], buffer.getFirstFrameAfter(30, 0).image);
+        Assert.assertNull(buffer.getFirstFrameAfter(41, 0));
+
+        buffer.clear();
+        Assert.assertNull(buffer.getLatest());
+    }
+
+    @Test
+    public void testWaitsForFrame() throws Exception {
+        FrameBuffer buffer = new FrameBuffer(3);
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+            }
+            buffer.add(100, image);
+        });
+        thread.start();
+        Assert.assertSame(image, buffer.getFirstFrameAfter(100, 5000).image);
+        thread.join();
+    }
+}
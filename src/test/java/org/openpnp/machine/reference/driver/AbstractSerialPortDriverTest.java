@@ -0,0 +1,106 @@
+package org.openpnp.machine.reference.driver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AbstractSerialPortDriverTest {
+    /**
+     * A driver whose port delivers the given chunks of bytes, one per read, and then times out.
+     */
+    static class ChunkedDriver extends GcodeDriver {
+        final Queue<byte[]> chunks = new ArrayDeque<>();
+
+        ChunkedDriver(byte[]... chunks) {
+            this.chunks.addAll(Arrays.asList(chunks));
+        }
+
+        @Override
+        protected byte[] readAvailable() throws TimeoutException {
+            byte[] chunk = chunks.poll();
+            if (chunk == null) {
+                throw new TimeoutException("No more chunks.");
+            }
+            return chunk;
+        }
+
+        List<String> readAllLines() throws Exception {
+            List<String> lines = new ArrayList<>();
+            try {
+                while (true) {
+                    readLines(lines::add);
+                }
+            }
+            catch (TimeoutException e) {
+                return lines;
+            }
+        }
+    }
+
+    /**
+     * Line endings may be CR, LF or CRLF and may be split across reads, as may the lines
+     * themselves. Blank lines are skipped and lines are trimmed.
+     */
+    @Test
+    public void testLinesSplitAcrossReads() throws Exception {
+        ChunkedDriver driver = new ChunkedDriver(bytes("o"), bytes("k\r"), bytes("\nX:1.0 Y"),
+                bytes(":2.0\r\n\r\n  "), bytes("ok \n"), bytes("error\r"), bytes("\rpartial"));
+        Assert.assertEquals(Arrays.asList("ok", "X:1.0 Y:2.0", "ok", "error"),
+                driver.readAllLines());
+
+        // The partial line is completed by a later read.
+        driver.chunks.add(bytes(" line\n"));
+        Assert.assertEquals(Arrays.asList("partial line"), driver.readAllLines());
+    }
+
+    /**
+     * Bytes of 0x80 and above are characters, not whitespace to be trimmed.
+     */
+    @Test
+    public void testHighBytesAreKept() throws Exception {
+        ChunkedDriver driver = new ChunkedDriver(new byte[] {(byte) 0xb0, 'C', '\n'},
+                new byte[] {'2', '5', (byte) 0xb0, '\r', '\n'});
+        Assert.assertEquals(Arrays.asList("\u00b0C", "25\u00b0"), driver.readAllLines());
+    }
+
+    @Test
+    public void testLongLine() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String line = sb.toString();
+        ChunkedDriver driver = new ChunkedDriver(bytes(line.substring(0, 300)),
+                bytes(line.substring(300) + "\n"));
+        Assert.assertEquals(Arrays.asList(line), driver.readAllLines());
+    }
+
+    /**
+     * readLine() returns one line at a time and keeps the rest of the read for the next call,
+     * or for readLines().
+     */
+    @Test
+    public void testReadLine() throws Exception {
+        ChunkedDriver driver = new ChunkedDriver(bytes("a\nb"), bytes("\nc\n"));
+        Assert.assertEquals("a", driver.readLine());
+        Assert.assertEquals("b", driver.readLine());
+        Assert.assertEquals(Arrays.asList("c"), driver.readAllLines());
+        try {
+            driver.readLine();
+            Assert.fail("Expected a timeout.");
+        }
+        catch (TimeoutException e) {
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,53 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.util.BenchmarkTimer;
+import org.openpnp.util.TestUtils;
+
+public class GcodeDriverBenchmark {
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // processPositionReport() notifies the machine, so a configuration is needed.
+        TestUtils.loadBasicJobTestConfiguration();
+    }
+
+    /**
+     * Time rendering MOVE_TO_COMMAND with the original regex based substitution and with the
+     * parsed template.
+     */
+    @Test
+    public void benchmarkRenderMoveTo() throws Exception {
+        GcodeTemplate template = new GcodeTemplate(GcodeDriverTest.moveToCommand);
+        Map<String, Object> variables = GcodeDriverTest.createMoveToVariables(new Random(0));
+        double regex = BenchmarkTimer.time(20000, () -> {
+            String command = GcodeDriverTest.moveToCommand;
+            for (Map.Entry<String, Object> entry : variables.entrySet()) {
+                command = GcodeDriverTest.substituteVariableWithRegex(command, entry.getKey(),
+                        entry.getValue());
+            }
+        });
+        double rendered = BenchmarkTimer.time(20000, () -> template.render(variables));
+        BenchmarkTimer.log(
+                "MOVE_TO_COMMAND: substituteVariable %.2f us, template %.2f us per render",
+                regex * 1000, rendered * 1000);
+    }
+
+    /**
+     * Time processPositionReport() on one second of a 1 kHz position report stream.
+     */
+    @Test
+    public void benchmarkPositionReports() throws Exception {
+        GcodeDriver driver = GcodeDriverTest.createPositionReportDriver();
+        String[] lines = GcodeDriverTest.createPositionReports();
+        double ms = BenchmarkTimer.time(1, () -> {
+            for (String line : lines) {
+                driver.processPositionReport(line);
+            }
+        });
+        BenchmarkTimer.log("Position reports: %.2f us per line", ms * 1000 / lines.length);
+    }
+}
@@ -0,0 +1,388 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.machine.reference.driver.GcodeDriver.Axis;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.util.TestUtils;
+
+public class GcodeDriverTest {
+    static final String moveToCommand =
+            "G0 {X:X%.4f} {Y:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} F{FeedRate:%.0f} ; Send standard Gcode move\n"
+                    + "G1 {BacklashOffsetX:X%.4f} {BacklashOffsetY:Y%.4f} F{BacklashFeedRate:%.0f} ; {Id} {Name}\n"
+                    + "M400 ; {Unknown:%d} is left alone";
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // processPositionReport() notifies the machine, so a configuration is needed.
+        TestUtils.loadBasicJobTestConfiguration();
+    }
+
+    /**
+     * Rendering a parsed template must give the same result as substituting each variable in
+     * turn with the original implementation.
+     */
+    @Test
+    public void testTemplateMatchesSubstituteVariable() {
+        Random random = new Random(0);
+        GcodeTemplate template = new GcodeTemplate(moveToCommand);
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> variables = createMoveToVariables(random);
+            String expected = moveToCommand;
+            for (Map.Entry<String, Object> entry : variables.entrySet()) {
+                expected = substituteVariableWithRegex(expected, entry.getKey(), entry.getValue());
+            }
+            Assert.assertEquals(expected, template.render(variables));
+        }
+        Assert.assertEquals("M400", new GcodeTemplate("M400").render(new HashMap<>()));
+        Assert.assertEquals("M42 P3 S{BooleanValue:%d}",
+                GcodeDriver.substituteVariable("M42 P{Index} S{BooleanValue:%d}", "Index", 3));
+    }
+
+    @Test
+    public void testCachedPatternIsInvalidated() {
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaults();
+        Pattern pattern = driver.getPattern(null, CommandType.COMMAND_CONFIRM_REGEX);
+        Assert.assertSame(pattern, driver.getPattern(null, CommandType.COMMAND_CONFIRM_REGEX));
+        driver.setCommand(null, CommandType.COMMAND_CONFIRM_REGEX, "^done.*");
+        Assert.assertTrue(driver.getPattern(null, CommandType.COMMAND_CONFIRM_REGEX)
+                .matcher("done").matches());
+    }
+
+    /**
+     * Feed a stream of position reports through processPositionReport() and make sure the axes
+     * end up at the last reported position.
+     */
+    @Test
+    public void testPositionReports() {
+        GcodeDriver driver = createPositionReportDriver();
+        for (String line : createPositionReports()) {
+            Assert.assertTrue(driver.processPositionReport(line));
+        }
+        Assert.assertFalse(driver.processPositionReport("ok"));
+        for (Axis axis : driver.axes) {
+            if (axis.getType() == Axis.Type.X) {
+                Assert.assertEquals(99.9, axis.getCoordinate(), 0.0001);
+            }
+        }
+    }
+
+    /**
+     * Once the streaming window is full the next command waits for the oldest one to be
+     * confirmed. A confirmation that doesn't arrive in time drops the stream state.
+     */
+    @Test
+    public void testStreamingWindow() throws Exception {
+        GcodeDriver driver = createStreamingDriver();
+        FakeController controller = new FakeController(driver);
+        driver.setStreamingWindow(2);
+
+        driver.streamCommand("G1 X1");
+        driver.streamCommand("G1 X2");
+        driver.responseQueue.add("ok");
+        driver.streamCommand("G1 X3");
+        Assert.assertTrue(driver.responseQueue.isEmpty());
+        Assert.assertEquals(Arrays.asList("G1 X1", "G1 X2", "G1 X3"), controller.lines);
+
+        try {
+            driver.streamCommand("G1 X4");
+            Assert.fail("Expected a timeout.");
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage().contains("Timeout"));
+        }
+        Assert.assertEquals(3, controller.lines.size());
+        // The stream state was dropped, so the next command is sent without waiting.
+        driver.streamCommand("G1 X5");
+        Assert.assertEquals("G1 X5", controller.lines.get(3));
+    }
+
+    /**
+     * With a receive buffer size the unconfirmed characters, including line endings, must fit
+     * in the buffer. Only as many confirmations as needed are waited for.
+     */
+    @Test
+    public void testStreamingCharacterCounting() throws Exception {
+        GcodeDriver driver = createStreamingDriver();
+        FakeController controller = new FakeController(driver);
+        driver.setStreamingWindow(10);
+        driver.setStreamingBufferSize(20);
+
+        // 3 x 6 characters fit the buffer, so the queued confirmation is not needed yet.
+        driver.responseQueue.add("ok");
+        driver.streamCommand("G1 X1");
+        driver.streamCommand("G1 X2");
+        driver.streamCommand("G1 X3");
+        Assert.assertEquals(1, driver.responseQueue.size());
+
+        // 18 + 6 doesn't, one confirmation makes room.
+        driver.streamCommand("G1 X4");
+        Assert.assertTrue(driver.responseQueue.isEmpty());
+
+        // 18 + 13 needs two confirmations, the third is left alone.
+        driver.responseQueue.addAll(Arrays.asList("ok", "ok", "ok"));
+        driver.streamCommand("G1 X100 Y100");
+        Assert.assertEquals(1, driver.responseQueue.size());
+        Assert.assertEquals(5, controller.lines.size());
+    }
+
+    @Test
+    public void testStreamingRequiresMoveToCompleteCommand() throws Exception {
+        GcodeDriver driver = createStreamingDriver();
+        FakeController controller = new FakeController(driver);
+        driver.setCommand(null, CommandType.MOVE_TO_COMPLETE_COMMAND, null);
+        try {
+            driver.streamCommand("G1 X1");
+            Assert.fail("Expected streaming to be refused.");
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage().contains("MOVE_TO_COMPLETE_COMMAND"));
+        }
+        Assert.assertTrue(controller.lines.isEmpty());
+    }
+
+    /**
+     * waitForCompletion() collects the streamed confirmations, sends MOVE_TO_COMPLETE_COMMAND and
+     * matches MOVE_TO_COMPLETE_REGEX against its responses.
+     */
+    @Test
+    public void testStreamingWaitForCompletion() throws Exception {
+        GcodeDriver driver = createStreamingDriver();
+        FakeController controller = new FakeController(driver);
+        driver.setCommand(null, CommandType.MOVE_TO_COMPLETE_REGEX, "^done.*");
+        controller.responses.put("M400", Arrays.asList("ok", "done"));
+
+        driver.streamCommand("G1 X1");
+        driver.streamCommand("G1 X2");
+        driver.responseQueue.addAll(Arrays.asList("ok", "ok"));
+        driver.waitForCompletion();
+        Assert.assertEquals(Arrays.asList("G1 X1", "G1 X2", "M400"), controller.lines);
+        Assert.assertTrue(driver.responseQueue.isEmpty());
+
+        // The controller confirms the command but never reports the move as complete.
+        controller.responses.put("M400", Arrays.asList("ok"));
+        driver.streamCommand("G1 X3");
+        driver.responseQueue.add("ok");
+        try {
+            driver.waitForCompletion();
+            Assert.fail("Expected a timeout.");
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage().contains("move to complete"));
+        }
+    }
+
+    /**
+     * Responses are handed to the oldest pending async command, so each future gets the
+     * responses to its own lines, in order, even when they are sent before any are answered.
+     */
+    @Test
+    public void testAsyncResponseCorrelation() throws Exception {
+        GcodeDriver driver = createAsyncDriver();
+        FakeController controller = new FakeController(driver);
+
+        CompletableFuture<List<String>> read = driver.sendGcodeAsync("M105");
+        CompletableFuture<List<String>> move = driver.sendGcodeAsync("G1 X1\nM400");
+        Assert.assertEquals(Arrays.asList("M105", "G1 X1", "M400"), controller.lines);
+        Assert.assertFalse(read.isDone());
+
+        Assert.assertTrue(driver.processAsyncResponse("T:25.0"));
+        Assert.assertTrue(driver.processAsyncResponse("ok"));
+        Assert.assertEquals(Arrays.asList("T:25.0", "ok"), read.get());
+        Assert.assertFalse(move.isDone());
+
+        Assert.assertTrue(driver.processAsyncResponse("ok"));
+        Assert.assertFalse(move.isDone());
+        Assert.assertTrue(driver.processAsyncResponse("ok"));
+        Assert.assertEquals(Arrays.asList("ok", "ok"), driver.await(move));
+
+        // With nothing pending the line is left for the blocking commands.
+        Assert.assertFalse(driver.processAsyncResponse("ok"));
+    }
+
+    /**
+     * An error fails only the command it answers. The commands before it have been confirmed and
+     * the ones after it still get their own responses.
+     */
+    @Test
+    public void testAsyncErrorGoesToItsCommand() throws Exception {
+        GcodeDriver driver = createAsyncDriver();
+        new FakeController(driver);
+
+        CompletableFuture<List<String>> first = driver.sendGcodeAsync("G1 X1");
+        CompletableFuture<List<String>> second = driver.sendGcodeAsync("G1 X9999");
+        CompletableFuture<List<String>> third = driver.sendGcodeAsync("G1 X2");
+
+        driver.processAsyncResponse("ok");
+        driver.processAsyncResponse("error: out of bounds");
+        Assert.assertEquals(Arrays.asList("ok"), first.get());
+        Assert.assertTrue(second.isCompletedExceptionally());
+        Assert.assertFalse(third.isDone());
+        try {
+            driver.await(second);
+            Assert.fail("Expected the controller error.");
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage().contains("error: out of bounds"));
+        }
+
+        driver.processAsyncResponse("ok");
+        Assert.assertEquals(Arrays.asList("ok"), driver.await(third));
+    }
+
+    /**
+     * If a command is not answered within the timeout, waiting for it throws and every pending
+     * command is failed, so later responses are not handed to the wrong command.
+     */
+    @Test
+    public void testAsyncTimeout() throws Exception {
+        GcodeDriver driver = createAsyncDriver();
+        new FakeController(driver);
+
+        CompletableFuture<List<String>> first = driver.sendGcodeAsync("G1 X1");
+        CompletableFuture<List<String>> second = driver.sendGcodeAsync("G1 X2");
+        try {
+            driver.await(first);
+            Assert.fail("Expected a timeout.");
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage().contains("Timeout"));
+        }
+        Assert.assertTrue(first.isCompletedExceptionally());
+        Assert.assertTrue(second.isCompletedExceptionally());
+        Assert.assertFalse(driver.processAsyncResponse("ok"));
+
+        // A blocking command waits for the async ones, and times out the same way.
+        driver.sendGcodeAsync("G1 X3");
+        try {
+            driver.waitForAsyncCommands();
+            Assert.fail("Expected a timeout.");
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage().contains("G1 X3"));
+        }
+        Assert.assertFalse(driver.processAsyncResponse("ok"));
+    }
+
+    static GcodeDriver createPositionReportDriver() {
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaults();
+        driver.setCommand(null, CommandType.POSITION_REPORT_REGEX,
+                "^<\\w+,MPos:(?<x>-?\\d+\\.\\d+),(?<y>-?\\d+\\.\\d+),(?<z>-?\\d+\\.\\d+),(?<rotation>-?\\d+\\.\\d+)>.*");
+        return driver;
+    }
+
+    /**
+     * One second of a 1 kHz position report stream.
+     */
+    static String[] createPositionReports() {
+        String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = String.format(Locale.US, "<Run,MPos:%.3f,%.3f,%.3f,%.3f>", i * 0.1,
+                    i * 0.2, -i * 0.01, i * 0.36);
+        }
+        return lines;
+    }
+
+    private static GcodeDriver createAsyncDriver() {
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaults();
+        driver.setCommand(null, CommandType.COMMAND_ERROR_REGEX, "^error.*");
+        driver.setTimeoutMilliseconds(100);
+        return driver;
+    }
+
+    private static GcodeDriver createStreamingDriver() {
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaults();
+        driver.setCommand(null, CommandType.MOVE_TO_COMPLETE_COMMAND, "M400");
+        driver.setStreaming(true);
+        driver.setTimeoutMilliseconds(100);
+        return driver;
+    }
+
+    /**
+     * Stands in for the serial port of a GcodeDriver. Records the lines written to it and queues
+     * the configured responses to each line, as a controller would.
+     */
+    static class FakeController extends OutputStream {
+        final List<String> lines = new ArrayList<>();
+        final Map<String, List<String>> responses = new HashMap<>();
+        private final GcodeDriver driver;
+        private final StringBuilder line = new StringBuilder();
+
+        FakeController(GcodeDriver driver) {
+            this.driver = driver;
+            driver.output = this;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b != '\n') {
+                line.append((char) b);
+                return;
+            }
+            String command = line.toString();
+            line.setLength(0);
+            lines.add(command);
+            List<String> commandResponses = responses.get(command);
+            if (commandResponses != null) {
+                driver.responseQueue.addAll(commandResponses);
+            }
+        }
+    }
+
+    static Map<String, Object> createMoveToVariables(Random random) {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("Id", "N" + random.nextInt(100));
+        variables.put("Name", "Nozzle " + random.nextInt(100));
+        variables.put("FeedRate", random.nextDouble() * 10000);
+        variables.put("BacklashFeedRate", random.nextDouble() * 1000);
+        for (String name : new String[] {"X", "Y", "Z", "Rotation", "BacklashOffsetX",
+                "BacklashOffsetY"}) {
+            variables.put(name, random.nextBoolean() ? null : random.nextDouble() * 400 - 200);
+        }
+        return variables;
+    }
+
+    /**
+     * The original implementation of GcodeDriver.substituteVariable().
+     */
+    static String substituteVariableWithRegex(String command, String name,
+            Object value) {
+        StringBuffer sb = new StringBuffer();
+        Matcher matcher = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}").matcher(command);
+        while (matcher.find()) {
+            String n = matcher.group(1);
+            if (!n.equals(name)) {
+                continue;
+            }
+            String format = matcher.group(2);
+            if (format == null) {
+                format = "%s";
+            }
+            String v = "";
+            if (value != null) {
+                v = String.format((Locale) null, format, value);
+            }
+            matcher.appendReplacement(sb, v);
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package org.openpnp.machine.reference.feeder;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.base.AbstractPnpJobProcessor;
+import org.openpnp.util.TestUtils;
+
+public class ReferenceSlotAutoFeederTest {
+    /**
+     * A slot's part is the part of the feeder in it, so the machine must find the slot by its new
+     * part when the feeder in the slot, the feeder's part or the slot's bank changes.
+     */
+    @Test
+    public void testFindFeederAfterSlotChanges() throws Exception {
+        TestUtils.loadBasicJobTestConfiguration();
+
+        Machine machine = Configuration.get().getMachine();
+        machine.getFeeder("F1").setEnabled(false);
+        Part resistor = Configuration.get().getPart("R-0805-10K");
+        Part capacitor = Configuration.get().getPart("C-0805-100NF");
+
+        ReferenceSlotAutoFeeder.Bank bank = ReferenceSlotAutoFeeder.getBanks().get(0);
+        ReferenceSlotAutoFeeder.Feeder resistors = new ReferenceSlotAutoFeeder.Feeder();
+        resistors.setPart(resistor);
+        bank.getFeeders().add(resistors);
+        ReferenceSlotAutoFeeder.Feeder capacitors = new ReferenceSlotAutoFeeder.Feeder();
+        capacitors.setPart(capacitor);
+        bank.getFeeders().add(capacitors);
+
+        ReferenceSlotAutoFeeder slot = new ReferenceSlotAutoFeeder();
+        slot.setEnabled(true);
+        slot.setBank(bank);
+        slot.setFeeder(resistors);
+        machine.addFeeder(slot);
+        Assert.assertSame(slot, AbstractPnpJobProcessor.findFeeder(machine, resistor));
+
+        // Swap the feeder in the slot.
+        slot.setFeeder(capacitors);
+        Assert.assertSame(slot, AbstractPnpJobProcessor.findFeeder(machine, capacitor));
+        assertNoFeeder(machine, resistor);
+
+        // Change the part of the feeder in the slot.
+        capacitors.setPart(resistor);
+        Assert.assertSame(slot, AbstractPnpJobProcessor.findFeeder(machine, resistor));
+        assertNoFeeder(machine, capacitor);
+
+        // The part of a feeder that was taken out of the slot no longer counts.
+        slot.setFeeder(null);
+        capacitors.setPart(capacitor);
+        assertNoFeeder(machine, resistor);
+        assertNoFeeder(machine, capacitor);
+
+        // Move the slot to a bank where it has no feeder.
+        slot.setFeeder(resistors);
+        Assert.assertSame(slot, AbstractPnpJobProcessor.findFeeder(machine, resistor));
+        slot.setBank(new ReferenceSlotAutoFeeder.Bank());
+        assertNoFeeder(machine, resistor);
+    }
+
+    private static void assertNoFeeder(Machine machine, Part part) {
+        try {
+            AbstractPnpJobProcessor.findFeeder(machine, part);
+            Assert.fail("Expected no feeder for " + part.getId());
+        }
+        catch (Exception e) {
+        }
+    }
+}
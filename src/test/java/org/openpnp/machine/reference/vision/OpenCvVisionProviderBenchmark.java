@@ -0,0 +1,30 @@
+package org.openpnp.machine.reference.vision;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.opencv.core.Mat;
+import org.openpnp.util.BenchmarkTimer;
+
+public class OpenCvVisionProviderBenchmark {
+    /**
+     * Time a fiducial template match on a 1920x1080 image at full resolution and with 1 to 3
+     * pyramid levels.
+     */
+    @Test
+    public void benchmarkPyramidMatch() throws Exception {
+        Mat image = OpenCvVisionProviderTest.createBoardImage(new Random(0), 1920, 1080, 30);
+        Mat template = OpenCvVisionProviderTest.createFiducialTemplate(30);
+        OpenCvVisionProvider visionProvider = new OpenCvVisionProvider();
+        StringBuilder sb = new StringBuilder("matchTemplate 1920x1080:");
+        for (int levels = 0; levels <= 3; levels++) {
+            visionProvider.setPyramidLevels(levels);
+            double ms = BenchmarkTimer.time(5,
+                    () -> visionProvider.matchTemplate(image, template, 0.85).release());
+            sb.append(String.format(" %d levels %.2f ms", levels, ms));
+        }
+        BenchmarkTimer.log("%s", sb);
+        image.release();
+        template.release();
+    }
+}
@@ -0,0 +1,79 @@
+package org.openpnp.machine.reference.vision;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+public class OpenCvVisionProviderTest {
+    /**
+     * The pyramid match must find the best match at the same place as the full resolution match,
+     * with the same score.
+     */
+    @Test
+    public void testPyramidMatchFindsSameBest() {
+        Random random = new Random(0);
+        for (int i = 0; i < 10; i++) {
+            Mat image = createBoardImage(random, 800, 600, 12 + i);
+            Mat template = createFiducialTemplate(12 + i);
+            OpenCvVisionProvider visionProvider = new OpenCvVisionProvider();
+            Mat full = visionProvider.matchTemplate(image, template, 0.85);
+            MinMaxLocResult expected = Core.minMaxLoc(full);
+            for (int levels = 1; levels <= 3; levels++) {
+                visionProvider.setPyramidLevels(levels);
+                Mat pyramid = visionProvider.matchTemplate(image, template, 0.85);
+                Assert.assertEquals(full.size(), pyramid.size());
+                MinMaxLocResult actual = Core.minMaxLoc(pyramid);
+                Assert.assertEquals(expected.maxLoc, actual.maxLoc);
+                Assert.assertEquals(expected.maxVal, actual.maxVal, 1e-6);
+                pyramid.release();
+            }
+            full.release();
+            image.release();
+            template.release();
+        }
+    }
+
+    /**
+     * A noisy dark gray image with a few bright round fiducials of the given radius and some
+     * rectangular pads.
+     */
+    static Mat createBoardImage(Random random, int width, int height, int radius) {
+        Mat image = new Mat(height, width, CvType.CV_8UC1);
+        byte[] data = new byte[width * height];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (40 + random.nextInt(30));
+        }
+        image.put(0, 0, data);
+        for (int i = 0; i < 20; i++) {
+            Point p = new Point(random.nextInt(width), random.nextInt(height));
+            Core.rectangle(image, p, new Point(p.x + 10 + random.nextInt(40), p.y + 10),
+                    new Scalar(200), -1);
+        }
+        for (int i = 0; i < 3; i++) {
+            Point p = new Point(50 + random.nextInt(width - 100),
+                    50 + random.nextInt(height - 100));
+            Core.circle(image, p, radius, new Scalar(230), -1);
+        }
+        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
+        return image;
+    }
+
+    /**
+     * A white circle on black, 50% bigger than the circle, like ReferenceFiducialLocator makes.
+     */
+    static Mat createFiducialTemplate(int radius) {
+        int size = radius * 3;
+        Mat template = Mat.zeros(size, size, CvType.CV_8UC1);
+        Core.circle(template, new Point(size / 2, size / 2), radius, new Scalar(255), -1);
+        return template;
+    }
+}
@@ -0,0 +1,38 @@
+package org.openpnp.util;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Timing for the benchmarks in the test sources, the classes named *Benchmark. The normal test
+ * run leaves them out, run them with:
+ *
+ * mvn test -Dtest=*Benchmark
+ *
+ * Benchmarks only log their timings, they don't assert on them. Whether the optimized code still
+ * gives the same results is checked by the unit tests.
+ */
+public class BenchmarkTimer {
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run the task iterations times to warm up, then time another iterations runs of it.
+     *
+     * @return The average time per run in milliseconds.
+     */
+    public static double time(int iterations, Task task) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        long t = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - t) / 1e6 / iterations;
+    }
+
+    public static void log(String format, Object... args) {
+        Logger.info(String.format(format, args));
+    }
+}
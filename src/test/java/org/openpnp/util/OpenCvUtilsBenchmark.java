@@ -0,0 +1,32 @@
+package org.openpnp.util;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.Mat;
+
+public class OpenCvUtilsBenchmark {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * Time the original and the float[] based matMaxima() on a 1280x720 template match result.
+     */
+    @Test
+    public void benchmarkMatMaxima() throws Exception {
+        Mat result = OpenCvUtilsTest.createTemplateMatchResult(new Random(0), 1280 + 31, 720 + 31);
+        MinMaxLocResult mmr = Core.minMaxLoc(result);
+        double rangeMin = Math.max(0.7, 0.85 * mmr.maxVal);
+        double original = BenchmarkTimer.time(5,
+                () -> OpenCvUtilsTest.matMaximaWithGet(result, rangeMin, mmr.maxVal));
+        double bulk =
+                BenchmarkTimer.time(5, () -> OpenCvUtils.matMaxima(result, rangeMin, mmr.maxVal));
+        BenchmarkTimer.log("matMaxima %dx%d: Mat.get() %.2f ms, float[] %.2f ms", result.cols(),
+                result.rows(), original, bulk);
+        result.release();
+    }
+}
@@ -0,0 +1,142 @@
+package org.openpnp.util;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+public class OpenCvUtilsTest {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * matMaxima() must find the same maxima, in the same order, as the original implementation.
+     * Template match results are smooth, so quantized noise is used as well to exercise the
+     * plateau handling.
+     */
+    @Test
+    public void testMatMaximaMatchesOriginal() {
+        Random random = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            Mat result = createTemplateMatchResult(random, 160 + i, 120 + i);
+            assertSameMaxima(result, 0.0, 1.0);
+            MinMaxLocResult mmr = Core.minMaxLoc(result);
+            assertSameMaxima(result, Math.max(0.7, 0.85 * mmr.maxVal), mmr.maxVal);
+            result.release();
+
+            Mat quantized = new Mat(50 + i, 70 + i, CvType.CV_32FC1);
+            float[] data = new float[quantized.rows() * quantized.cols()];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = random.nextInt(4);
+            }
+            quantized.put(0, 0, data);
+            assertSameMaxima(quantized, 1, 3);
+            quantized.release();
+        }
+    }
+
+    private static void assertSameMaxima(Mat mat, double rangeMin, double rangeMax) {
+        Assert.assertEquals(matMaximaWithGet(mat, rangeMin, rangeMax),
+                OpenCvUtils.matMaxima(mat, rangeMin, rangeMax));
+    }
+
+    /**
+     * Match a 32x32 piece of a blurred noise image against the whole image.
+     */
+    static Mat createTemplateMatchResult(Random random, int width, int height) {
+        Mat image = new Mat(height, width, CvType.CV_8UC1);
+        byte[] data = new byte[width * height];
+        random.nextBytes(data);
+        image.put(0, 0, data);
+        Imgproc.GaussianBlur(image, image, new Size(9, 9), 0);
+        Mat template = new Mat(image, new Rect(width / 3, height / 3, 32, 32)).clone();
+        Mat result = new Mat();
+        Imgproc.matchTemplate(image, template, result, Imgproc.TM_CCOEFF_NORMED);
+        image.release();
+        template.release();
+        return result;
+    }
+
+    enum MinMaxState {
+        BEFORE_INFLECTION, AFTER_INFLECTION
+    }
+
+    /**
+     * The original implementation of OpenCvVisionProvider.matMaxima().
+     */
+    static List<Point> matMaximaWithGet(Mat mat, double rangeMin, double rangeMax) {
+        List<Point> locations = new ArrayList<>();
+
+        int rEnd = mat.rows() - 1;
+        int cEnd = mat.cols() - 1;
+
+        for (int r = 0; r <= rEnd; r++) {
+            MinMaxState state = MinMaxState.BEFORE_INFLECTION;
+            double curVal = mat.get(r, 0)[0];
+            for (int c = 1; c <= cEnd; c++) {
+                double val = mat.get(r, c)[0];
+
+                if (val == curVal) {
+                    continue;
+                }
+                else if (curVal < val) {
+                    state = MinMaxState.BEFORE_INFLECTION;
+                }
+                else {
+                    if (state == MinMaxState.BEFORE_INFLECTION) {
+                        if (rangeMin <= curVal && curVal <= rangeMax) {
+                            if (0 < r && (mat.get(r - 1, c - 1)[0] >= curVal
+                                    || mat.get(r - 1, c)[0] >= curVal)) {
+                            }
+                            else if (r < rEnd && (mat.get(r + 1, c - 1)[0] > curVal
+                                    || mat.get(r + 1, c)[0] > curVal)) {
+                            }
+                            else if (1 < c && (0 < r && mat.get(r - 1, c - 2)[0] >= curVal
+                                    || mat.get(r, c - 2)[0] > curVal
+                                    || r < rEnd && mat.get(r + 1, c - 2)[0] > curVal)) {
+                            }
+                            else {
+                                locations.add(new Point(c - 1, r));
+                            }
+                        }
+                        state = MinMaxState.AFTER_INFLECTION;
+                    }
+                }
+
+                curVal = val;
+            }
+
+            if (state == MinMaxState.BEFORE_INFLECTION) {
+                if (rangeMin <= curVal && curVal <= rangeMax) {
+                    if (0 < r && (mat.get(r - 1, cEnd - 1)[0] >= curVal
+                            || mat.get(r - 1, cEnd)[0] >= curVal)) {
+                    }
+                    else if (r < rEnd && (mat.get(r + 1, cEnd - 1)[0] > curVal
+                            || mat.get(r + 1, cEnd)[0] > curVal)) {
+                    }
+                    else if (1 < r && mat.get(r - 1, cEnd - 2)[0] >= curVal
+                            || mat.get(r, cEnd - 2)[0] > curVal
+                            || r < rEnd && mat.get(r + 1, cEnd - 2)[0] > curVal) {
+                    }
+                    else {
+                        locations.add(new Point(cEnd, r));
+                    }
+                }
+            }
+        }
+
+        return locations;
+    }
+}
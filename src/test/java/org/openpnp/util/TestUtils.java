@@ -0,0 +1,65 @@
+package org.openpnp.util;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Placement;
+
+import com.google.common.io.Files;
+
+/**
+ * Shared fixtures for tests that need a machine configuration or a job.
+ */
+public class TestUtils {
+    /**
+     * Copy the BasicJobTest machine, packages and parts to a new temporary directory and load
+     * them as the Configuration.
+     */
+    public static void loadBasicJobTestConfiguration() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/machine.xml"),
+                new File(workingDirectory, "machine.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/packages.xml"),
+                new File(workingDirectory, "packages.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/parts.xml"),
+                new File(workingDirectory, "parts.xml"));
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+    }
+
+    public static Placement createPlacement(String id, String partId, double x, double y, double z,
+            double rotation, Side side) {
+        Placement placement = new Placement(id);
+        placement.setPart(Configuration.get().getPart(partId));
+        placement.setLocation(new Location(LengthUnit.Millimeters, x, y, z, rotation));
+        placement.setSide(side);
+        return placement;
+    }
+
+    /**
+     * A job with one board at the origin, top side up, with placements of the part at (10, 10),
+     * (20, 20) and so on.
+     */
+    public static Job createJob(String partId, int placementCount) {
+        Board board = new Board();
+        board.setName("test");
+        for (int i = 1; i <= placementCount; i++) {
+            board.addPlacement(
+                    createPlacement("R" + i, partId, 10 * i, 10 * i, 0, 0, Side.Top));
+        }
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        boardLocation.setSide(Side.Top);
+        Job job = new Job();
+        job.addBoardLocation(boardLocation);
+        return job;
+    }
+}
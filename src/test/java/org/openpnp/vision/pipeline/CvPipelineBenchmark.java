@@ -0,0 +1,50 @@
+package org.openpnp.vision.pipeline;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.openpnp.util.BenchmarkTimer;
+
+public class CvPipelineBenchmark {
+    /**
+     * Time full and lean processing of a short pipeline on a 1920x1080 image.
+     */
+    @Test
+    public void benchmarkLeanProcess() throws Exception {
+        CvPipeline pipeline = CvPipelineTest.createPipeline(1920, 1080);
+        double full = BenchmarkTimer.time(10, () -> pipeline.process());
+        double lean = BenchmarkTimer.time(10, () -> pipeline.process(Collections.emptySet()));
+        BenchmarkTimer.log("CvPipeline 1920x1080: full %.2f ms, lean %.2f ms", full, lean);
+        pipeline.release();
+    }
+
+    /**
+     * Time serial and parallel processing of a pipeline with three independent branches on a
+     * 1920x1080 image.
+     */
+    @Test
+    public void benchmarkParallelProcess() throws Exception {
+        CvPipeline pipeline = CvPipelineTest.createBranchedPipeline(1920, 1080);
+        pipeline.setParallel(false);
+        double serial = BenchmarkTimer.time(10, () -> pipeline.process(Collections.emptySet()));
+        pipeline.setParallel(true);
+        double parallel =
+                BenchmarkTimer.time(10, () -> pipeline.process(Collections.emptySet()));
+        BenchmarkTimer.log("CvPipeline 3 branches 1920x1080: serial %.2f ms, parallel %.2f ms",
+                serial, parallel);
+        pipeline.release();
+    }
+
+    /**
+     * Time getting a copy of a pipeline with clone() and from a pool.
+     */
+    @Test
+    public void benchmarkBorrow() throws Exception {
+        CvPipeline pipeline = CvPipelinePoolTest.createPipeline();
+        CvPipelinePool pool = new CvPipelinePool();
+        double clone = BenchmarkTimer.time(100, () -> pipeline.clone());
+        double borrow =
+                BenchmarkTimer.time(100, () -> pool.giveBack(pipeline, pool.borrow(pipeline)));
+        BenchmarkTimer.log("CvPipeline copy: clone() %.3f ms, pool %.3f ms", clone, borrow);
+    }
+}
@@ -0,0 +1,52 @@
+package org.openpnp.vision.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.vision.pipeline.stages.BlurGaussian;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+import org.openpnp.vision.pipeline.stages.Threshold;
+
+public class CvPipelinePoolTest {
+    @Test
+    public void testBorrowAndGiveBack() throws Exception {
+        CvPipeline pipeline = createPipeline();
+        CvPipelinePool pool = new CvPipelinePool();
+
+        CvPipeline a = pool.borrow(pipeline);
+        CvPipeline b = pool.borrow(pipeline);
+        Assert.assertNotSame(pipeline, a);
+        Assert.assertNotSame(a, b);
+        Assert.assertEquals(pipeline.toXmlString(), a.toXmlString());
+
+        // Copies that are given back are reused.
+        pool.giveBack(pipeline, a);
+        Assert.assertSame(a, pool.borrow(pipeline));
+
+        // Copies of an old version of the pipeline are dropped, also when only a property of a
+        // stage has changed.
+        pool.giveBack(pipeline, a);
+        ((BlurGaussian) pipeline.getStage("blur")).setKernelSize(9);
+        CvPipeline c = pool.borrow(pipeline);
+        Assert.assertNotSame(a, c);
+        Assert.assertEquals(9, ((BlurGaussian) c.getStage("blur")).getKernelSize());
+        pool.giveBack(pipeline, b);
+        Assert.assertNotSame(b, pool.borrow(pipeline));
+
+        // So are copies of the version before a stage was added.
+        pool.giveBack(pipeline, c);
+        pipeline.add("blur2", new BlurGaussian());
+        CvPipeline d = pool.borrow(pipeline);
+        Assert.assertNotSame(c, d);
+        Assert.assertNotNull(d.getStage("blur2"));
+    }
+
+    static CvPipeline createPipeline() {
+        CvPipeline pipeline = new CvPipeline();
+        pipeline.add("blur", new BlurGaussian());
+        pipeline.add("threshold", new Threshold());
+        ImageRecall recall = new ImageRecall();
+        recall.setImageStageName("blur");
+        pipeline.add("recall", recall);
+        return pipeline;
+    }
+}
@@ -0,0 +1,148 @@
+package org.openpnp.vision.pipeline;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.BlurGaussian;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+import org.openpnp.vision.pipeline.stages.Threshold;
+
+public class CvPipelineTest {
+    /**
+     * A lean process() must produce the same models and working image as a full one, and keep
+     * only the images that were asked for or that other stages read.
+     */
+    @Test
+    public void testLeanProcessMatchesFull() {
+        CvPipeline pipeline = createPipeline(640, 480);
+        pipeline.process();
+        Object fullModel = pipeline.getResult("count").model;
+        Mat fullImage = pipeline.getWorkingImage().clone();
+        for (CvStage stage : pipeline.getStages()) {
+            Assert.assertNotNull(pipeline.getResult(stage).image);
+        }
+
+        pipeline.process(Collections.singleton("threshold"));
+        Assert.assertEquals(fullModel, pipeline.getResult("count").model);
+        Assert.assertEquals(0, Core.countNonZero(diff(fullImage, pipeline.getWorkingImage())));
+        // Read by the recall stage.
+        Assert.assertNotNull(pipeline.getResult("source").image);
+        Assert.assertNotNull(pipeline.getResult("threshold").image);
+        Assert.assertNull(pipeline.getResult("blur1").image);
+        Assert.assertNull(pipeline.getResult("count").image);
+
+        fullImage.release();
+        pipeline.release();
+    }
+
+    /**
+     * A parallel pipeline must produce the same results as processing it in series.
+     */
+    @Test
+    public void testParallelMatchesSerial() {
+        CvPipeline pipeline = createBranchedPipeline(640, 480);
+        pipeline.process();
+        Map<String, Object> models = new HashMap<>();
+        Map<String, Mat> images = new HashMap<>();
+        for (CvStage stage : pipeline.getStages()) {
+            models.put(stage.getName(), pipeline.getResult(stage).model);
+            images.put(stage.getName(), pipeline.getResult(stage).image.clone());
+        }
+        Mat workingImage = pipeline.getWorkingImage().clone();
+
+        pipeline.setParallel(true);
+        for (int i = 0; i < 5; i++) {
+            pipeline.process();
+            for (CvStage stage : pipeline.getStages()) {
+                Result result = pipeline.getResult(stage);
+                Assert.assertEquals(models.get(stage.getName()), result.model);
+                Assert.assertEquals(0,
+                        Core.countNonZero(diff(images.get(stage.getName()), result.image)));
+            }
+            Assert.assertEquals(0,
+                    Core.countNonZero(diff(workingImage, pipeline.getWorkingImage())));
+        }
+        pipeline.release();
+    }
+
+    private static Mat diff(Mat a, Mat b) {
+        Mat diff = new Mat();
+        Core.absdiff(a, b, diff);
+        return diff;
+    }
+
+    /**
+     * Noise, a few blurs and a threshold, then recall the source and count its non zero pixels.
+     */
+    static CvPipeline createPipeline(int width, int height) {
+        CvPipeline pipeline = new CvPipeline();
+        pipeline.add("source", createSourceStage(width, height));
+        for (int i = 1; i <= 3; i++) {
+            BlurGaussian blur = new BlurGaussian();
+            blur.setKernelSize(5);
+            pipeline.add("blur" + i, blur);
+        }
+        Threshold threshold = new Threshold();
+        threshold.setThreshold(128);
+        pipeline.add("threshold", threshold);
+        ImageRecall recall = new ImageRecall();
+        recall.setImageStageName("source");
+        pipeline.add("recall", recall);
+        pipeline.add("count", createCountStage());
+        return pipeline;
+    }
+
+    /**
+     * Noise, then three branches that each recall it, blur and threshold it with different
+     * settings and count the non zero pixels.
+     */
+    static CvPipeline createBranchedPipeline(int width, int height) {
+        CvPipeline pipeline = new CvPipeline();
+        pipeline.add("source", createSourceStage(width, height));
+        for (int i = 0; i < 3; i++) {
+            ImageRecall recall = new ImageRecall();
+            recall.setImageStageName("source");
+            pipeline.add("recall" + i, recall);
+            for (int j = 0; j < 3; j++) {
+                BlurGaussian blur = new BlurGaussian();
+                blur.setKernelSize(5 + 4 * i);
+                pipeline.add("blur" + i + j, blur);
+            }
+            Threshold threshold = new Threshold();
+            threshold.setThreshold(110 + 10 * i);
+            pipeline.add("threshold" + i, threshold);
+            pipeline.add("count" + i, createCountStage());
+        }
+        return pipeline;
+    }
+
+    private static CvStage createSourceStage(int width, int height) {
+        Mat source = new Mat(height, width, CvType.CV_8UC1);
+        byte[] data = new byte[width * height];
+        new Random(0).nextBytes(data);
+        source.put(0, 0, data);
+        return new CvStage() {
+            @Override
+            public Result process(CvPipeline pipeline) throws Exception {
+                return new Result(source.clone());
+            }
+        };
+    }
+
+    private static CvStage createCountStage() {
+        return new CvStage() {
+            @Override
+            public Result process(CvPipeline pipeline) throws Exception {
+                return new Result(null, Core.countNonZero(pipeline.getWorkingImage()));
+            }
+        };
+    }
+}